@@ -0,0 +1,108 @@
+/*
+NET-Simulator -- Network simulator.
+Copyright (C) 2006 Maxim Tereshin <maxim-tereshin@yandex.ru>
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along
+with this program; if not, write to the Free Software Foundation,
+Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+*/
+
+
+package org.netsimulator.benchmarks;
+
+import org.netsimulator.net.ARPCache;
+import org.netsimulator.net.IP4Address;
+import org.netsimulator.net.MACAddress;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ARPCache} lookups by the forwarding threads while ARP replies
+ * keep refreshing the cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ARPCacheBenchmark {
+
+    private static final int ADDRESSES_MASK = 255;
+
+    @Param({"16", "256"})
+    public int addresses;
+
+    private ARPCache cache;
+    private IP4Address[] keys;
+    private MACAddress[] values;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cache = new ARPCache(3600);
+        keys = new IP4Address[ADDRESSES_MASK + 1];
+        values = new MACAddress[ADDRESSES_MASK + 1];
+        for (int i = 0; i != keys.length; i++) {
+            keys[i] = new IP4Address(0x0A000000 + i % addresses);
+            values[i] = new MACAddress(0x020000000000L + i % addresses);
+            cache.put(keys[i], values[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cache.clear();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public MACAddress get(Cursor cursor) {
+        return cache.get(keys[cursor.next++ & ADDRESSES_MASK]);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public MACAddress contendedGet(Cursor cursor) {
+        return cache.get(keys[cursor.next++ & ADDRESSES_MASK]);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void contendedPut(Cursor cursor) {
+        int i = cursor.next++ & ADDRESSES_MASK;
+        cache.put(keys[i], values[i]);
+    }
+}
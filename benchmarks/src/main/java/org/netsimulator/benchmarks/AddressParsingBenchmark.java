@@ -0,0 +1,66 @@
+/*
+NET-Simulator -- Network simulator.
+Copyright (C) 2006 Maxim Tereshin <maxim-tereshin@yandex.ru>
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along
+with this program; if not, write to the Free Software Foundation,
+Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+*/
+
+
+package org.netsimulator.benchmarks;
+
+import org.netsimulator.net.AddressException;
+import org.netsimulator.net.IP4Address;
+import org.netsimulator.net.MACAddress;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the addresses typed in the CLI and read from the project files.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AddressParsingBenchmark {
+
+    public String ip4Address = "192.168.100.254";
+    public String macAddress = "00:1A:2B:3C:4D:5E";
+
+    @Benchmark
+    public IP4Address parseIP4Address() throws AddressException {
+        return new IP4Address(ip4Address);
+    }
+
+    @Benchmark
+    public MACAddress parseMACAddress() throws AddressException {
+        return new MACAddress(macAddress);
+    }
+
+    @Benchmark
+    public String formatIP4Address() throws AddressException {
+        return new IP4Address(ip4Address).toString();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+NET-Simulator -- Network simulator.
+Copyright (C) 2006 Maxim Tereshin <maxim-tereshin@yandex.ru>
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along
+with this program; if not, write to the Free Software Foundation,
+Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+*/
+package org.netsimulator.benchmarks;
+
+import org.netsimulator.net.AddressException;
+import org.netsimulator.net.ICMPEchoPacket;
+import org.netsimulator.net.IP4Address;
+import org.netsimulator.net.Layer2Packet;
+import org.netsimulator.net.MACAddress;
+import org.netsimulator.net.Protocols;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wire encoding of an ICMP echo frame into a reused buffer, the way
+ * captures write the packets, and decoding it back.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketEncodingBenchmark {
+
+    @Param({"64", "1500"})
+    public int size;
+
+    private Layer2Packet frame;
+    private ByteBuffer buffer;
+    private ByteBuffer encoded;
+
+    @Setup
+    public void setUp() throws AddressException {
+        ICMPEchoPacket echo = new ICMPEchoPacket(Protocols.ICMPEcho, 1, 1, size, 64,
+                new IP4Address("10.0.0.1"), new IP4Address("10.0.0.2"), 0, null);
+        frame = new Layer2Packet(new MACAddress(1), new MACAddress(2), Protocols.IP, echo);
+        buffer = ByteBuffer.allocateDirect(Layer2Packet.MAX_SIZE);
+        encoded = ByteBuffer.wrap(frame.toBytesArray());
+    }
+
+    @Benchmark
+    public int encode() {
+        buffer.clear();
+        return frame.encode(buffer);
+    }
+
+    @Benchmark
+    public Layer2Packet decode() {
+        encoded.clear();
+        return Layer2Packet.decode(encoded);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+NET-Simulator -- Network simulator.
+Copyright (C) 2006 Maxim Tereshin <maxim-tereshin@yandex.ru>
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along
+with this program; if not, write to the Free Software Foundation,
+Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+*/
+
+package org.netsimulator.benchmarks;
+
+import org.netsimulator.net.EthernetInterface;
+import org.netsimulator.net.ICMPEchoPacket;
+import org.netsimulator.net.IP4Address;
+import org.netsimulator.net.IP4Router;
+import org.netsimulator.net.Interface;
+import org.netsimulator.net.Media;
+import org.netsimulator.net.Network;
+import org.netsimulator.net.NetworkDeviceHolder;
+import org.netsimulator.net.Protocols;
+import org.netsimulator.sim.EventScheduler;
+import org.netsimulator.sim.ParallelSimulator;
+import org.netsimulator.util.IdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every router of a long chain pings its right neighbour at once, the
+ * chain is partitioned into regions which run in parallel. The links
+ * have a 1 ms delay, it is the lookahead of the regions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PartitionedNetworkBenchmark {
+
+    @Param({"2048"})
+    public int routers;
+
+    @Param({"1", "2", "4", "8"})
+    public int regions;
+
+    private Network network;
+    private ParallelSimulator simulator;
+    private IP4Router[] chain;
+    private EventScheduler[] schedulers;
+    private int seq;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        IdGenerator idGenerator = new IdGenerator();
+        network = new Network(idGenerator, new EventScheduler());
+        chain = new IP4Router[routers];
+        for (int i = 0; i != routers; i++) {
+            chain[i] = new IP4Router(idGenerator, 2);
+            network.addDevice("R" + i, chain[i]);
+        }
+        for (int k = 0; k != routers - 1; k++) {
+            EthernetInterface left = (EthernetInterface) chain[k].getInterface(1);
+            EthernetInterface right = (EthernetInterface) chain[k + 1].getInterface(0);
+            Media media = new Media(idGenerator.getNextId(), network.getScheduler());
+            media.setDelay(TimeUnit.MILLISECONDS.toNanos(1));
+            media.connectToDevice(left);
+            media.connectToDevice(right);
+            network.addMedia(media);
+            configure(left, link(k, 1));
+            configure(right, link(k, 2));
+        }
+        simulator = network.partition(regions);
+        schedulers = new EventScheduler[routers];
+        for (int i = 0; i != routers; i++) {
+            schedulers[i] = network.getScheduler(chain[i]);
+        }
+    }
+
+    private static IP4Address link(int k, int host) {
+        return new IP4Address(0x0A000000 | (k << 8) | host);
+    }
+
+    private static void configure(EthernetInterface eth, IP4Address address) throws Exception {
+        eth.setInetAddress(address);
+        eth.setNetmaskAddress(new IP4Address(0xFFFFFF00));
+        eth.setStatus(Interface.UP);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (NetworkDeviceHolder device : network.getDevices().values()) {
+            device.dispose();
+        }
+    }
+
+    @Benchmark
+    public long pingNeighbours() {
+        int n = seq++;
+        for (int i = 0; i != routers - 1; i++) {
+            IP4Router router = chain[i];
+            IP4Address destination = link(i, 2);
+            schedulers[i].schedule(0, () -> {
+                try {
+                    router.routePacket(new ICMPEchoPacket(Protocols.ICMPEcho, 1, n, 64,
+                            ICMPEchoPacket.DEFAULT_TTL, null, destination, 0, null));
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+        return simulator.run();
+    }
+}
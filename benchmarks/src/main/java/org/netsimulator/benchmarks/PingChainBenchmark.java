@@ -0,0 +1,127 @@
+/*
+NET-Simulator -- Network simulator.
+Copyright (C) 2006 Maxim Tereshin <maxim-tereshin@yandex.ru>
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along
+with this program; if not, write to the Free Software Foundation,
+Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+*/
+
+
+package org.netsimulator.benchmarks;
+
+import org.netsimulator.net.EthernetInterface;
+import org.netsimulator.net.ICMPEchoPacket;
+import org.netsimulator.net.IP4Address;
+import org.netsimulator.net.IP4Router;
+import org.netsimulator.net.Interface;
+import org.netsimulator.net.Media;
+import org.netsimulator.net.Protocols;
+import org.netsimulator.sim.EventScheduler;
+import org.netsimulator.util.IdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A ping from one end of a chain of routers to the other and back. The
+ * chain runs on its own event scheduler as fast as possible, so a round
+ * trip is all the routing, ARP and media work of every hop.
+ * <p>
+ * The link k connects the router k (10.0.k.1) and the router k+1
+ * (10.0.k.2). Every router forwards to the right by the default route
+ * and back to the left by the route to the first link.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PingChainBenchmark {
+
+    @Param({"1", "4", "16"})
+    public int hops;
+
+    private EventScheduler scheduler;
+    private IP4Router[] routers;
+    private IP4Address destination;
+    private int replies;
+    private int seq;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        IdGenerator idGenerator = new IdGenerator();
+        scheduler = new EventScheduler();
+        routers = new IP4Router[hops + 1];
+        for (int i = 0; i != routers.length; i++) {
+            routers[i] = new IP4Router(idGenerator, 2);
+        }
+
+        for (int k = 0; k != hops; k++) {
+            EthernetInterface left = (EthernetInterface) routers[k].getInterface(1);
+            EthernetInterface right = (EthernetInterface) routers[k + 1].getInterface(0);
+            Media media = new Media(idGenerator.getNextId(), scheduler);
+            media.connectToDevice(left);
+            media.connectToDevice(right);
+            configure(left, link(k, 1));
+            configure(right, link(k, 2));
+
+            routers[k].getRoutingTable().addRoute(new IP4Address(0), new IP4Address(0),
+                    link(k, 2), 0, left);
+            if (k > 0) {
+                routers[k + 1].getRoutingTable().addRoute(link(0, 0), new IP4Address(0xFFFFFF00),
+                        link(k, 1), 0, right);
+            }
+        }
+        destination = link(hops - 1, 2);
+        routers[0].addICMPEchoReplayListener(packet -> replies++);
+    }
+
+    private static IP4Address link(int k, int host) {
+        return new IP4Address(0x0A000000 | (k << 8) | host);
+    }
+
+    private static void configure(EthernetInterface eth, IP4Address address) throws Exception {
+        eth.setInetAddress(address);
+        eth.setNetmaskAddress(new IP4Address(0xFFFFFF00));
+        eth.setStatus(Interface.UP);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (IP4Router router : routers) {
+            router.dispose();
+        }
+    }
+
+    @Benchmark
+    public int ping() throws Exception {
+        routers[0].routePacket(new ICMPEchoPacket(Protocols.ICMPEcho, 1, seq++, 64,
+                ICMPEchoPacket.DEFAULT_TTL, null, destination, 0, null));
+        scheduler.run();
+        return replies;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+NET-Simulator -- Network simulator.
+Copyright (C) 2006 Maxim Tereshin <maxim-tereshin@yandex.ru>
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along
+with this program; if not, write to the Free Software Foundation,
+Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+*/
+
+
+package org.netsimulator.benchmarks;
+
+import org.netsimulator.net.IP4Address;
+import org.netsimulator.net.RoutingTable;
+import org.netsimulator.net.RoutingTableRow;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Longest prefix match lookups of {@link RoutingTable#route(IP4Address)}.
+ * Half of the looked up destinations fall into the installed prefixes,
+ * the rest hit whatever matches them, if anything. Also the installation
+ * of the routes in bulk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutingTableBenchmark {
+
+    private static final int DESTINATIONS = 1024;
+
+    @Param({"10", "1000", "100000"})
+    public int routes;
+
+    private RoutingTable table;
+    private List<RoutingTableRow> rows;
+    private IP4Address[] destinations;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Random random = new Random(2006);
+        table = new RoutingTable();
+        rows = new ArrayList<>();
+        int[] targets = new int[routes];
+        for (int i = 0; i != routes; i++) {
+            int length = 8 + random.nextInt(25);
+            int netmask = -1 << (32 - length);
+            targets[i] = random.nextInt() & netmask;
+            rows.add(new RoutingTableRow(new IP4Address(targets[i]), new IP4Address(netmask),
+                    null, random.nextInt(4), null));
+        }
+        table.addRoutes(rows);
+
+        destinations = new IP4Address[DESTINATIONS];
+        for (int i = 0; i != DESTINATIONS; i++) {
+            int address = random.nextInt();
+            if (i % 2 == 0) {
+                address = targets[random.nextInt(routes)] | (address & 0xFF);
+            }
+            destinations[i] = new IP4Address(address);
+        }
+    }
+
+    @Benchmark
+    public RoutingTableRow route() {
+        return table.route(destinations[next++ & (DESTINATIONS - 1)]);
+    }
+
+    /**
+     * Installation of all the routes into an empty table, the way
+     * a project is loaded.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public RoutingTable install() {
+        RoutingTable installed = new RoutingTable();
+        installed.addRoutes(rows);
+        return installed;
+    }
+}
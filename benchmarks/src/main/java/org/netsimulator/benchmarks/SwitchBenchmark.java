@@ -0,0 +1,115 @@
+/*
+NET-Simulator -- Network simulator.
+Copyright (C) 2006 Maxim Tereshin <maxim-tereshin@yandex.ru>
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along
+with this program; if not, write to the Free Software Foundation,
+Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+*/
+
+
+package org.netsimulator.benchmarks;
+
+import org.netsimulator.net.AddressException;
+import org.netsimulator.net.Layer2Packet;
+import org.netsimulator.net.MACAddress;
+import org.netsimulator.net.Switch;
+import org.netsimulator.util.IdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Switch#transportPacket} with the MAC addresses learning and
+ * lookup, and with flooding. The ports are not connected, so nothing
+ * but the switch itself is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SwitchBenchmark {
+
+    private static final int PACKETS = 1024;
+
+    @Param({"8", "48"})
+    public int ports;
+
+    @Param({"16", "4096"})
+    public int hosts;
+
+    private Switch sw;
+    private Layer2Packet[] unicast;
+    private Layer2Packet[] broadcast;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws AddressException {
+        sw = new Switch(new IdGenerator(), ports);
+        unicast = new Layer2Packet[PACKETS];
+        broadcast = new Layer2Packet[PACKETS];
+        for (int i = 0; i != PACKETS; i++) {
+            MACAddress src = host(i % hosts);
+            MACAddress dst = host((i + 1) % hosts);
+            unicast[i] = new Layer2Packet(src, dst, 0, null);
+            broadcast[i] = new Layer2Packet(src, MACAddress.BROADCAST, 0, null);
+        }
+        // every host has been seen once, unicasts are switched, not flooded
+        for (int i = 0; i != hosts; i++) {
+            sw.transportPacket(sw.getPort(i % ports),
+                    new Layer2Packet(host(i), MACAddress.BROADCAST, 0, null));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sw.dispose();
+    }
+
+    private static MACAddress host(int i) {
+        return new MACAddress(0x020000000000L + i);
+    }
+
+    /**
+     * @return the port the source host of the i-th packet is behind.
+     */
+    private int port(int i) {
+        return (i % hosts) % ports;
+    }
+
+    @Benchmark
+    public void learnAndForward() {
+        int i = next++ & (PACKETS - 1);
+        sw.transportPacket(sw.getPort(port(i)), unicast[i]);
+    }
+
+    @Benchmark
+    public void flood() {
+        int i = next++ & (PACKETS - 1);
+        sw.transportPacket(sw.getPort(port(i)), broadcast[i]);
+    }
+}
@@ -0,0 +1,578 @@
+/*
+NET-Simulator -- Network simulator.
+Copyright (C) 2006 Maxim Tereshin <maxim-tereshin@yandex.ru>
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+            
+This program is distributed in the hope that it will be useful, but 
+WITHOUT ANY WARRANTY; without even the implied warranty of 
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU 
+General Public License for more details.
+            
+You should have received a copy of the GNU General Public License along 
+with this program; if not, write to the Free Software Foundation, 
+Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA 
+*/
+
+
+package org.netsimulator;
+
+import org.apache.commons.cli.*;
+import org.netsimulator.net.*;
+import org.netsimulator.sim.EventScheduler;
+import org.netsimulator.sim.ParallelSimulator;
+import org.netsimulator.term.ArpCLICommand;
+import org.netsimulator.term.CaptureCLICommand;
+import org.netsimulator.term.CLICommand;
+import org.netsimulator.term.IfconfigCLICommand;
+import org.netsimulator.term.PingCLICommand;
+import org.netsimulator.term.RouteCLICommand;
+import org.netsimulator.term.ShowMACAddressesTableCLICommand;
+import org.netsimulator.term.SpanningTreeCLICommand;
+import org.netsimulator.util.Histogram;
+import org.xml.sax.SAXException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs a project without the UI. The project is loaded into the devices
+ * only, the packets are delivered by an event scheduler as fast as
+ * possible, so the simulated time does not depend on the wall clock.
+ * With <code>-p</code> the network is partitioned into regions which
+ * run on their own threads, see {@link Network#partition(int)}.
+ * <p>
+ * The traffic is driven by a script, one command per line:
+ * <pre>
+ * # a comment
+ * ping &lt;device&gt; &lt;destination&gt; [count]   send echo requests one second apart
+ * flow [options] &lt;device&gt; &lt;destination&gt;  start a traffic flow, see {@link #FLOW_USAGE}
+ * flows                                  print statistics of the traffic flows
+ * run [seconds]                          advance the simulated time, until idle by default
+ * stats                                  print counters of all interfaces and ports
+ * &lt;device&gt; &lt;command&gt; [args]              run a terminal command (arp, ifconfig, route, mactable, stp, capture)
+ * </pre>
+ * Without a script the network is run until idle. The counters are
+ * printed at the end.
+ * <p>
+ * A network with the spanning tree enabled on a switch is never idle,
+ * the hello timer ticks forever. There "until idle" means for the time
+ * the spanning trees take to converge, run it for seconds explicitly to
+ * go on.
+ */
+public class HeadlessNetsimulator {
+
+    private static final Logger logger = Logger.getLogger(HeadlessNetsimulator.class.getName());
+
+    static final long PING_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+    static final long PING_TIMEOUT = TimeUnit.SECONDS.toNanos(5);
+    static final long FLOW_DURATION = TimeUnit.SECONDS.toNanos(10);
+    /** The spanning trees converge from scratch in max age and twice the forward delay. */
+    static final long SPANNING_TREE_CONVERGENCE = SpanningTree.DEFAULT_MAX_AGE + 2 * SpanningTree.DEFAULT_FORWARD_DELAY;
+    static final String FLOW_USAGE = "flow [-i] [-m constant|poisson|burst] [-r <pps>] [-s <bytes>] "
+            + "[-b <packets>] [-c <count>] [-t <seconds>] [-p <port>] <device> <destination>";
+    private static final Options flowOptions = new Options();
+
+    static {
+        flowOptions.addOption("i", false, "send ICMP echo requests, UDP datagrams by default");
+        flowOptions.addOption("m", true, "pattern of the flow, constant by default");
+        flowOptions.addOption("r", true, "packets per second, " + (int) TrafficFlow.DEFAULT_RATE + " by default");
+        flowOptions.addOption("s", true, "total length of the IP packets, " + TrafficFlow.DEFAULT_PACKET_SIZE + " by default");
+        flowOptions.addOption("b", true, "packets of a burst, " + TrafficFlow.DEFAULT_BURST_SIZE + " by default");
+        flowOptions.addOption("c", true, "number of packets to send");
+        flowOptions.addOption("t", true, "seconds to send for, " + TimeUnit.NANOSECONDS.toSeconds(FLOW_DURATION)
+                + " unless the count is given");
+        flowOptions.addOption("p", true, "UDP port, " + TrafficFlow.DEFAULT_PORT + " by default");
+    }
+
+    private final Network network;
+    private final ParallelSimulator simulator;
+    private final PrintWriter out;
+    private final Map<String, Map<String, CLICommand>> commands =
+            new HashMap<String, Map<String, CLICommand>>();
+    private final List<Ping> pings = new ArrayList<Ping>();
+    private final List<TrafficSink> flows = new ArrayList<TrafficSink>();
+
+    /**
+     * Echo requests sent by the script and replies to them.
+     */
+    private final class Ping {
+        final IP4Router router;
+        final IP4Address destination;
+        final int identifier;
+        final int count;
+        final EventScheduler scheduler;
+        final long lastSendTime;
+        final Histogram rtts = new Histogram();
+        final List<CompletableFuture<ICMPEchoPacket>> replays = new ArrayList<CompletableFuture<ICMPEchoPacket>>();
+
+        Ping(IP4Router router, IP4Address destination, int count) {
+            this.router = router;
+            this.destination = destination;
+            this.identifier = router.getICMPEchoCorrelator().nextIdentifier();
+            this.count = count;
+            this.scheduler = network.getScheduler(router);
+            this.lastSendTime = scheduler.getTime() + (count - 1) * PING_INTERVAL;
+        }
+
+        void start() {
+            out.println("PING " + destination + " " + PingCLICommand.DEFAULT_SIZE + "("
+                    + (IP4Packet.HEADER_SIZE + ICMPEchoPacket.HEADER_SIZE + PingCLICommand.DEFAULT_SIZE)
+                    + ") bytes of data.");
+            for (int i = 0; i != count; i++) {
+                final int seq = i;
+                scheduler.schedule(i * PING_INTERVAL, () -> send(seq));
+            }
+        }
+
+        private void send(int seq) {
+            // the replays are awaited in the simulated time, see isFinished()
+            CompletableFuture<ICMPEchoPacket> replay = router.getICMPEchoCorrelator()
+                    .expect(identifier, seq, 0, TimeUnit.NANOSECONDS);
+            replay.thenAccept(this::processICMPEchoReplay);
+            replays.add(replay);
+            try {
+                router.routePacket(new ICMPEchoPacket(
+                        Protocols.ICMPEcho,
+                        identifier,
+                        seq,
+                        IP4Packet.HEADER_SIZE + ICMPEchoPacket.HEADER_SIZE + PingCLICommand.DEFAULT_SIZE,
+                        ICMPEchoPacket.DEFAULT_TTL,
+                        null,
+                        destination,
+                        scheduler.getTime(),
+                        null));
+            } catch (AddressException ae) {
+                logger.log(Level.SEVERE, "Unexpected exception.", ae);
+            }
+        }
+
+        private void processICMPEchoReplay(ICMPEchoPacket packet) {
+            long rtt = scheduler.getTime() - packet.getTimestamp();
+            rtts.record(rtt);
+            out.printf("%d bytes from %s: icmp_seq=%d ttl=%d time=%.3f ms%n",
+                    packet.getTotalLength() - IP4Packet.HEADER_SIZE, packet.getSourceAddress(), packet.getSequenceNumber(), packet.getTTL(), rtt / 1e6);
+        }
+
+        boolean isFinished() {
+            return rtts.getCount() == count || scheduler.getTime() >= lastSendTime + PING_TIMEOUT;
+        }
+
+        void finish() {
+            for (CompletableFuture<ICMPEchoPacket> replay : replays) {
+                replay.cancel(false);
+            }
+            long received = rtts.getCount();
+            out.printf("--- %s ping statistics ---%n%d packets transmitted, %d received, %d%% packet loss%n",
+                    destination, count, received, (count - received) * 100 / count);
+            if (received > 0) {
+                out.printf("rtt min/avg/max/mdev = %.3f/%.3f/%.3f/%.3f ms%n",
+                        rtts.getMin() / 1e6, rtts.getMean() / 1e6, rtts.getMax() / 1e6, rtts.getStdDeviation() / 1e6);
+                out.printf("rtt p50/p99 = %.3f/%.3f ms%n",
+                        rtts.getPercentile(50) / 1e6, rtts.getPercentile(99) / 1e6);
+            }
+        }
+    }
+
+    public HeadlessNetsimulator(Network network, PrintWriter out) {
+        this.network = network;
+        this.simulator = network.getSimulator();
+        this.out = out;
+    }
+
+    public static void main(String argv[]) {
+        Options options = new Options();
+        options.addOption("h", false, "display this help");
+        options.addOption("s", true, "run the commands of the script file");
+        options.addOption("p", true, "partition the network into the number of regions run in parallel");
+
+        CommandLine cmd;
+        try {
+            cmd = new GnuParser().parse(options, argv);
+        } catch (ParseException pe) {
+            System.err.println("Error: " + pe.getMessage());
+            System.exit(2);
+            return;
+        }
+        if (cmd.hasOption("h") || cmd.getArgs().length != 1) {
+            new HelpFormatter().printHelp("HeadlessNetsimulator [-h] [-s <script>] [-p <regions>] <project.xml>", options);
+            System.exit(cmd.hasOption("h") ? 0 : 2);
+        }
+
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out), true);
+        Network network;
+        try {
+            network = new NetworkXMLLoader(new EventScheduler()).load(new File(cmd.getArgs()[0]));
+        } catch (IOException | SAXException e) {
+            System.err.println("Error: can not load the project: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        if (cmd.hasOption("p")) {
+            try {
+                ParallelSimulator simulator = network.partition(Integer.parseInt(cmd.getOptionValue("p")));
+                logger.log(Level.INFO, "The network is partitioned into {0} regions.",
+                        simulator.getRegions().size());
+            } catch (IllegalArgumentException iae) {
+                System.err.println("Error: bad number of regions " + cmd.getOptionValue("p"));
+                System.exit(2);
+                return;
+            }
+        }
+
+        HeadlessNetsimulator simulator = new HeadlessNetsimulator(network, out);
+        boolean ok = true;
+        try {
+            if (cmd.hasOption("s")) {
+                BufferedReader script = new BufferedReader(new FileReader(cmd.getOptionValue("s")));
+                try {
+                    ok = simulator.runScript(script);
+                } finally {
+                    script.close();
+                }
+            } else {
+                simulator.run(Long.MAX_VALUE);
+            }
+            simulator.printStats();
+        } catch (IOException ioe) {
+            System.err.println("Error: can not read the script: " + ioe.getMessage());
+            ok = false;
+        } finally {
+            CaptureCLICommand.stopAll();
+            network.dispose();
+            out.flush();
+        }
+        System.exit(ok ? 0 : 1);
+    }
+
+    /**
+     * Executes the script line by line.
+     * @return false if any of the commands has failed.
+     */
+    public boolean runScript(BufferedReader script) throws IOException {
+        boolean ok = true;
+        String line;
+        int lineNumber = 0;
+        while ((line = script.readLine()) != null) {
+            lineNumber++;
+            if (!execute(line)) {
+                out.println("Error at line " + lineNumber + ": " + line);
+                ok = false;
+            }
+        }
+        finishPings(true);
+        if (!flows.isEmpty()) {
+            printFlows();
+        }
+        for (TrafficSink sink : flows) {
+            sink.getFlow().stop();
+            sink.close();
+        }
+        flows.clear();
+        return ok;
+    }
+
+    /**
+     * Executes a single script command.
+     * @return false if the command has failed.
+     */
+    public boolean execute(String line) {
+        line = line.trim();
+        if (line.length() == 0 || line.startsWith("#")) {
+            return true;
+        }
+        StringTokenizer t = new StringTokenizer(line);
+        String command = t.nextToken();
+        String argv[] = new String[t.countTokens()];
+        for (int i = 0; i != argv.length; i++) {
+            argv[i] = t.nextToken();
+        }
+
+        try {
+            if (command.equals("ping")) {
+                return ping(argv);
+            }
+            if (command.equals("flow")) {
+                return flow(argv);
+            }
+            if (command.equals("flows")) {
+                printFlows();
+                return true;
+            }
+            if (command.equals("run")) {
+                run(argv.length == 0
+                        ? Long.MAX_VALUE
+                        : (long) (Double.parseDouble(argv[0]) * TimeUnit.SECONDS.toNanos(1)));
+                return true;
+            }
+            if (command.equals("stats")) {
+                printStats();
+                return true;
+            }
+        } catch (NumberFormatException nfe) {
+            out.println("Error: bad number " + nfe.getMessage());
+            return false;
+        }
+        return runTerminalCommand(command, argv, line);
+    }
+
+    private boolean ping(String argv[]) throws NumberFormatException {
+        if (argv.length < 2) {
+            out.println("Error: ping <device> <destination> [count]");
+            return false;
+        }
+        NetworkDeviceHolder device = network.getDevice(argv[0]);
+        if (!(device instanceof IP4Router)) {
+            out.println("Error: unknown router " + argv[0]);
+            return false;
+        }
+        IP4Address destination;
+        try {
+            destination = new IP4Address(argv[1]);
+        } catch (AddressException ae) {
+            out.println("Error: Unknown host " + argv[1]);
+            return false;
+        }
+        int count = argv.length > 2 ? Integer.parseInt(argv[2]) : 1;
+        if (count <= 0) {
+            out.println("Error: bad count " + count);
+            return false;
+        }
+        Ping ping = new Ping((IP4Router) device, destination, count);
+        pings.add(ping);
+        ping.start();
+        return true;
+    }
+
+    private boolean flow(String argv[]) throws NumberFormatException {
+        CommandLine cmd;
+        try {
+            cmd = new GnuParser().parse(flowOptions, argv);
+        } catch (ParseException pe) {
+            out.println("Error: " + pe.getMessage());
+            return false;
+        }
+        if (cmd.getArgs().length != 2) {
+            out.println("Error: " + FLOW_USAGE);
+            return false;
+        }
+        NetworkDeviceHolder device = network.getDevice(cmd.getArgs()[0]);
+        if (!(device instanceof IP4Router)) {
+            out.println("Error: unknown router " + cmd.getArgs()[0]);
+            return false;
+        }
+        IP4Address destination;
+        try {
+            destination = new IP4Address(cmd.getArgs()[1]);
+        } catch (AddressException ae) {
+            out.println("Error: Unknown host " + cmd.getArgs()[1]);
+            return false;
+        }
+
+        IP4Router router = (IP4Router) device;
+        TrafficFlow flow = new TrafficFlow(router, destination, network.getScheduler(router));
+        // malformed numbers go to the caller, the values are checked below
+        Double rate = cmd.hasOption("r") ? Double.valueOf(cmd.getOptionValue("r")) : null;
+        Integer size = cmd.hasOption("s") ? Integer.valueOf(cmd.getOptionValue("s")) : null;
+        Integer burst = cmd.hasOption("b") ? Integer.valueOf(cmd.getOptionValue("b")) : null;
+        try {
+            if (cmd.hasOption("m")) {
+                flow.setPattern(TrafficFlow.Pattern.valueOf(cmd.getOptionValue("m").toUpperCase()));
+            }
+            if (rate != null) {
+                flow.setRate(rate);
+            }
+            if (size != null) {
+                flow.setPacketSize(size);
+            }
+            if (burst != null) {
+                flow.setBurstSize(burst);
+            }
+        } catch (IllegalArgumentException iae) {
+            out.println("Error: " + iae.getMessage());
+            return false;
+        }
+        if (cmd.hasOption("c")) {
+            flow.setCount(Long.parseLong(cmd.getOptionValue("c")));
+        }
+        if (cmd.hasOption("t") || !cmd.hasOption("c")) {
+            flow.setDuration(cmd.hasOption("t")
+                    ? (long) (Double.parseDouble(cmd.getOptionValue("t")) * TimeUnit.SECONDS.toNanos(1))
+                    : FLOW_DURATION);
+        }
+
+        TrafficSink sink;
+        if (cmd.hasOption("i")) {
+            flow.setProtocol(TrafficFlow.Protocol.ICMP);
+            sink = new TrafficSink(flow);
+        } else {
+            if (cmd.hasOption("p")) {
+                flow.setDestinationPort(Integer.parseInt(cmd.getOptionValue("p")));
+            }
+            IP4Router receiver = findRouter(destination);
+            if (receiver == null) {
+                out.println("Error: no router has the address " + destination);
+                return false;
+            }
+            sink = new TrafficSink(flow, receiver, network.getScheduler(receiver));
+        }
+        try {
+            sink.open();
+        } catch (IllegalStateException ise) {
+            out.println("Error: " + ise.getMessage());
+            return false;
+        }
+        flows.add(sink);
+        flow.start();
+        return true;
+    }
+
+    /**
+     * @return the router which has an interface of the address.
+     */
+    private IP4Router findRouter(IP4Address address) {
+        for (NetworkDeviceHolder device : network.getDevices().values()) {
+            if (!(device instanceof IP4Router)) {
+                continue;
+            }
+            for (Interface ifs : ((IP4Router) device).getInterfaces()) {
+                if (ifs instanceof IP4EnabledInterface
+                        && address.equals(((IP4EnabledInterface) ifs).getInetAddress())) {
+                    return (IP4Router) device;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Prints throughput, loss and latency of every flow started.
+     */
+    public void printFlows() {
+        for (TrafficSink sink : flows) {
+            out.println(sink);
+        }
+        out.flush();
+    }
+
+    /**
+     * Advances the simulated time.
+     * @param nanos period to run, Long.MAX_VALUE to run until there
+     * are no more events.
+     */
+    public void run(long nanos) {
+        if (nanos == Long.MAX_VALUE && hasSpanningTree()) {
+            simulator.runUntil(simulator.getTime() + SPANNING_TREE_CONVERGENCE);
+        } else if (nanos == Long.MAX_VALUE) {
+            simulator.run();
+        } else {
+            simulator.runUntil(simulator.getTime() + nanos);
+        }
+        finishPings(false);
+    }
+
+    private boolean hasSpanningTree() {
+        for (NetworkDeviceHolder device : network.getDevices().values()) {
+            if (device instanceof Switch && ((Switch) device).getSpanningTree() != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void finishPings(boolean all) {
+        for (Iterator<Ping> i = pings.iterator(); i.hasNext();) {
+            Ping ping = i.next();
+            if (all || ping.isFinished()) {
+                ping.finish();
+                i.remove();
+            }
+        }
+    }
+
+    private boolean runTerminalCommand(String deviceName, String argv[], String cl) {
+        NetworkDeviceHolder device = network.getDevice(deviceName);
+        if (device == null) {
+            out.println("Error: Unknown command or device " + deviceName);
+            return false;
+        }
+        if (argv.length == 0) {
+            out.println("Error: Missing command for " + deviceName);
+            return false;
+        }
+        CLICommand command = getTerminalCommands(deviceName, device).get(argv[0]);
+        if (command == null) {
+            out.println("Error: Unknown command " + argv[0] + " for " + deviceName);
+            return false;
+        }
+        String args[] = new String[argv.length - 1];
+        System.arraycopy(argv, 1, args, 0, args.length);
+        command.setInvocationContext(args, cl.substring(deviceName.length()).trim());
+        command.run();
+        out.flush();
+        return true;
+    }
+
+    private Map<String, CLICommand> getTerminalCommands(String deviceName, NetworkDeviceHolder device) {
+        Map<String, CLICommand> res = commands.get(deviceName);
+        if (res == null) {
+            res = new HashMap<String, CLICommand>();
+            List<CLICommand> list = new ArrayList<CLICommand>();
+            if (device instanceof IP4Router) {
+                IP4Router router = (IP4Router) device;
+                list.add(new ArpCLICommand(router));
+                list.add(new IfconfigCLICommand(router));
+                list.add(new RouteCLICommand(router));
+                list.add(new CaptureCLICommand(router, network.getScheduler(router)));
+            } else if (device instanceof Switch) {
+                list.add(new ShowMACAddressesTableCLICommand((Switch) device));
+                list.add(new SpanningTreeCLICommand((Switch) device, network.getScheduler(device)));
+                list.add(new CaptureCLICommand(device, network.getScheduler(device)));
+            }
+            for (CLICommand command : list) {
+                command.setOutputWriter(out);
+                res.put(command.getName(), command);
+            }
+            commands.put(deviceName, res);
+        }
+        return res;
+    }
+
+    /**
+     * Prints counters of every interface and port of the network.
+     */
+    public void printStats() {
+        out.printf("Simulated time: %.3f s%n", simulator.getTime() / 1e9);
+        for (Map.Entry<String, NetworkDeviceHolder> e : network.getDevices().entrySet()) {
+            out.println(e.getKey() + ":");
+            int n = 0;
+            for (NetworkDevice dev : Network.getNetworkDevices(e.getValue())) {
+                String name = dev instanceof Interface ? ((Interface) dev).getName() : "port" + n;
+                DeviceCounters.Snapshot stats = dev.getStatistics();
+                out.printf("  %-8s RX packets:%d errors:%d dropped:%d bytes:%d  TX packets:%d errors:%d dropped:%d bytes:%d%n",
+                        name,
+                        stats.getRXPackets(), stats.getRXPacketsErrors(), stats.getRXDroped(), stats.getRXBytes(),
+                        stats.getTXPackets(), stats.getTXPacketsErrors(), stats.getTXDroped(), stats.getTXBytes());
+                n++;
+            }
+        }
+        out.flush();
+    }
+}
@@ -16,6 +16,7 @@ Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
 package org.netsimulator.gui;
 
 import org.netsimulator.net.*;
+import org.netsimulator.sim.EventScheduler;
 import org.netsimulator.term.*;
 import org.netsimulator.util.ShapeInfo;
 
@@ -92,6 +93,7 @@ public class DesktopNetworkShape
         for( Interface ifs : router.getInterfaces() ) {
             if( ifs instanceof NetworkDevice ) {
                 socket = new SocketNetworkShape( (NetworkDevice) ifs, panel );
+                placeSocket();
                 panel.putOnSocketLayer( socket );
                 break; // we need only one interface, use the first
             }
@@ -107,6 +109,8 @@ public class DesktopNetworkShape
                 addCommand( new RouteCLICommand( router ) );
         terminalDialog.getTerminal().
                 addCommand( new PingCLICommand( router ) );
+        terminalDialog.getTerminal().
+                addCommand( new CaptureCLICommand( router, EventScheduler.getDefault() ) );
     }
 
     public DesktopNetworkShape( NetworkPanel panel, Router router, int id )
@@ -133,6 +137,8 @@ public class DesktopNetworkShape
                 addCommand( new RouteCLICommand( this.router ) );
         terminalDialog.getTerminal().
                 addCommand( new PingCLICommand( this.router ) );
+        terminalDialog.getTerminal().
+                addCommand( new CaptureCLICommand( this.router, EventScheduler.getDefault() ) );
 
     }
 
@@ -142,20 +148,42 @@ public class DesktopNetworkShape
 
     public void show( Graphics2D g2d ) {
         if( isSelected ) {
-            g2d.drawImage( selectedImage, x, y, null );
+            drawSprite( g2d, selectedImage, x, y );
         }
         if( !isSelected ) {
-            g2d.drawImage( image, x, y, null );
+            drawSprite( g2d, image, x, y );
         }
 
+        if( isDetailed( g2d ) ) {
+            if( socket != null ) {
+                socket.show( g2d );
+            }
+            drawLabel( g2d, name, x, y - 5 );
+        }
+    }
+
+    @Override
+    public void setLocation( int x, int y ) {
+        super.setLocation( x, y );
+        placeSocket();
+    }
+
+    @Override
+    public void setBounds( int x, int y, int width, int height ) {
+        super.setBounds( x, y, width, height );
+        placeSocket();
+    }
+
+    /**
+     * Puts the socket on the desktop, it follows the moves whether the
+     * desktop is painted or not.
+     */
+    private void placeSocket() {
         if( socket != null ) {
             socket.setLocation(
                     x + shapeInfo.getSocketsX(),
                     y + shapeInfo.getSocketsY() );
-            socket.show( g2d );
         }
-
-        g2d.drawString( name, x, y - 5 );
     }
 
     public void mousePressed( MouseEvent e ) {
@@ -191,7 +219,7 @@ public class DesktopNetworkShape
             selectedShape.setLocation( e.getX() + last_x,
                     e.getY() + last_y );
 
-            for( NetworkShape dev : panel.getDevicesLayer() ) {
+            for( NetworkShape dev : panel.getDevicesAt( this ) ) {
                 if( !this.equals( dev ) && intersects( dev ) ) {
                     isIntersects = true;
                 }
@@ -231,6 +259,7 @@ public class DesktopNetworkShape
 
     public void addSocket( SocketNetworkShape shape ) {
         socket = shape;
+        placeSocket();
         panel.putOnSocketLayer( shape );
     }
 
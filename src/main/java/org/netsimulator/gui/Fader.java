@@ -24,67 +24,120 @@
  */
 package org.netsimulator.gui;
 
+import javax.swing.Timer;
 import java.awt.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-public class Fader implements Runnable {
+/**
+ * Fades the color of a {@link Faderable} to black. All the fades in
+ * progress are advanced by a single clock, which runs only while there
+ * is something to fade. A fader belongs to its faderable and is started
+ * again and again, the fading colors are computed once per initial
+ * color, so nothing is allocated per fade.
+ */
+public class Fader {
 
     private static final Logger logger
             = Logger.getLogger("org.netsimulator.gui.Fader");
-    private final Color from;
-    private Color current;
-    private Faderable faderable;
-    private volatile boolean stop;
     private static final int STEP = 8;
     private static final int DELAY = 50;
 
+    /** Fades in progress, guarded by itself. */
+    private static final List<Fader> fading = new ArrayList<Fader>();
+    /** Colors a fade goes through by its initial color. */
+    private static final Map<Color, Color[]> ramps = new HashMap<Color, Color[]>();
+    private static final Timer clock = new Timer(DELAY, e -> tick());
+
+    private final Faderable faderable;
+    private Color[] ramp;
+    private int step;
+    private boolean running;
+    private boolean queued;
+
     /**
-     * Creates a new instance of PatchcordFader
+     * Creates a new instance of Fader
      */ 
-    public Fader(Color from, Faderable faderable) {
-        this.from = from;
+    public Fader(Faderable faderable) {
         this.faderable = faderable;
-        this.stop = false;
-
-        logger.fine("Fader was instantiated");
     }
 
-    @Override
-    public void run() {
-        logger.fine("Fader was started");
-        current = from;
-        int r = 0, g = 0, b = 0;
+    /**
+     * Starts fading from the color, the fade in progress starts anew.
+     */
+    public void start(Color from) {
+        synchronized (fading) {
+            ramp = rampOf(from);
+            step = 0;
+            running = ramp.length != 0;
+            if (running && !queued) {
+                queued = true;
+                fading.add(this);
+                if (!clock.isRunning()) {
+                    clock.start();
+                    logger.fine("Fader clock was started");
+                }
+            }
+        }
+    }
 
-        while (!(current.equals(Color.BLACK) || stop)) {
-            logger.log(Level.FINEST, "Fader iteration r={0} g={1} b={2}", new Object[]{current.getRed(), current.getGreen(), current.getBlue()});
+    public void cancel() {
+        synchronized (fading) {
+            running = false;
+        }
+    }
 
-            r = (current.getRed() - STEP) < 0 ? 0 : (current.getRed() - STEP);
-            g = (current.getGreen() - STEP) < 0 ? 0 : (current.getGreen() - STEP);
-            b = (current.getBlue() - STEP) < 0 ? 0 : (current.getBlue() - STEP);
-            current = new Color(r, g, b);
-            if (faderable != null) {
-                faderable.setCurrentColor(current);
-            } else {
-                break;
+    /**
+     * Advances all the fades by a step, the ones which are over or
+     * canceled are dropped.
+     */
+    private static void tick() {
+        synchronized (fading) {
+            int i = 0;
+            while (i < fading.size()) {
+                Fader fader = fading.get(i);
+                if (fader.running) {
+                    Color current = fader.ramp[fader.step++];
+                    logger.log(Level.FINEST, "Fader step {0}", current);
+                    fader.faderable.setCurrentColor(current);
+                    fader.running = fader.step != fader.ramp.length;
+                }
+                if (fader.running) {
+                    i++;
+                } else {
+                    fader.queued = false;
+                    Fader last = fading.remove(fading.size() - 1);
+                    if (i < fading.size()) {
+                        fading.set(i, last);
+                    }
+                }
             }
-
-            try {
-                Thread.sleep(DELAY);
-            } catch (InterruptedException ie) {
-                stop = true;
-                Thread.currentThread().interrupt();
-                logger.log(Level.FINE, "Fader thread was interrupted", ie);
+            if (fading.isEmpty()) {
+                clock.stop();
+                logger.fine("Fader clock was stopped");
             }
         }
-        faderable = null;
-        logger.fine("Fader was stopped");
     }
 
-    public void cancel() {
-        faderable = null;
-        stop = true;
-        logger.fine("Fader was canceled");
+    private static Color[] rampOf(Color from) {
+        Color[] ramp = ramps.get(from);
+        if (ramp == null) {
+            List<Color> colors = new ArrayList<Color>();
+            Color current = from;
+            while (!current.equals(Color.BLACK)) {
+                current = new Color(
+                        Math.max(0, current.getRed() - STEP),
+                        Math.max(0, current.getGreen() - STEP),
+                        Math.max(0, current.getBlue() - STEP));
+                colors.add(current);
+            }
+            ramp = colors.toArray(new Color[colors.size()]);
+            ramps.put(from, ramp);
+        }
+        return ramp;
     }
-
 }
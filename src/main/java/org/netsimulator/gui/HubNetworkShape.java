@@ -73,6 +73,7 @@ public class HubNetworkShape
             sockets.add(socket);
             panel.putOnSocketLayer(socket);
         }
+        placeSockets();
     }
 
 
@@ -119,18 +120,43 @@ public class HubNetworkShape
 
 
     public void show(Graphics2D g2d) {
-        if (isSelected) g2d.drawImage(selectedImage, x, y, null);
-        if (!isSelected) g2d.drawImage(image, x, y, null);
+        if (isSelected) drawSprite(g2d, selectedImage, x, y);
+        if (!isSelected) drawSprite(g2d, image, x, y);
 
+        if (isDetailed(g2d)) {
+            for (SocketNetworkShape buf : sockets) {
+                buf.show(g2d);
+            }
+            drawLabel(g2d, name, x, y - 5);
+        }
+    }
+
+    @Override
+    public void setLocation(int x, int y) {
+        super.setLocation(x, y);
+        placeSockets();
+    }
+
+    @Override
+    public void setBounds(int x, int y, int width, int height) {
+        super.setBounds(x, y, width, height);
+        placeSockets();
+    }
+
+    /**
+     * Puts the sockets in a row on the hub, they follow its moves whether
+     * the hub is painted or not.
+     */
+    private void placeSockets() {
+        if (sockets == null) {
+            return; // called by the constructor
+        }
         int j = 0;
         for (SocketNetworkShape buf : sockets) {
             buf.setLocation(
                     x + shapeInfo.getSocketsX() + shapeInfo.getSocketsStep() * j++,
                     y + shapeInfo.getSocketsY());
-            buf.show(g2d);
         }
-
-        g2d.drawString(name, x, y - 5);
     }
 
 
@@ -164,7 +190,7 @@ public class HubNetworkShape
             selectedShape.setLocation(e.getX() + last_x,
                     e.getY() + last_y);
 
-            for (NetworkShape dev : panel.getDevicesLayer()) {
+            for (NetworkShape dev : panel.getDevicesAt(this)) {
                 if (!this.equals(dev) && intersects(dev)) {
                     isIntersects = true;
                 }
@@ -203,6 +229,7 @@ public class HubNetworkShape
 
     public void addSocket(SocketNetworkShape shape) {
         sockets.add(shape);
+        placeSockets();
         panel.putOnSocketLayer(shape);
     }
 
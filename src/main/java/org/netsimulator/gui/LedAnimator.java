@@ -0,0 +1,180 @@
+/*
+NET-Simulator -- Network simulator.
+Copyright (C) 2006 Maxim Tereshin <maxim-tereshin@yandex.ru>
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along
+with this program; if not, write to the Free Software Foundation,
+Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+*/
+
+package org.netsimulator.gui;
+
+import javax.swing.Timer;
+import java.util.Arrays;
+
+/**
+ * Blinks the lights of all the sockets. A packet only records its time
+ * in the slot of the light, the blinking is computed from those times
+ * once per frame, so it keeps up with any packet rate. A light goes
+ * dark for {@link #BLINK_TIMEOUT} on a packet and then stays lit for
+ * that long at least, so it blinks while the traffic goes on. The frame
+ * clock runs only while some light is blinking.
+ * <p>
+ * The times are written by the threads delivering packets, the rest is
+ * used on the event dispatching thread only.
+ */
+final class LedAnimator {
+
+    static final int RX = 0;
+    static final int TX = 1;
+
+    /** How long the light is dark, and lit at least, in nanoseconds. */
+    static final long BLINK_TIMEOUT = 100000000L;
+    /** Delay of a frame in milliseconds. */
+    static final int FRAME_DELAY = 20;
+
+    private static final Object lock = new Object();
+    private static final Timer clock = new Timer(FRAME_DELAY, e -> frame());
+    /** The last packet time of a light, two lights per socket. */
+    private static volatile long[] lastPacket = new long[0];
+    /** When the light has gone dark or lit. */
+    private static long[] since = new long[0];
+    /** The last packet time the light has blinked for. */
+    private static long[] seen = new long[0];
+    private static boolean[] dark = new boolean[0];
+    private static SocketNetworkShape[] sockets = new SocketNetworkShape[0];
+    private static int free;
+    private static volatile boolean running;
+    private static volatile boolean pending;
+
+    private LedAnimator() {
+    }
+
+    /**
+     * @return slot of the lights of the socket.
+     */
+    static int register(SocketNetworkShape socket) {
+        synchronized (lock) {
+            while (free < sockets.length && sockets[free] != null) {
+                free++;
+            }
+            int slot = free;
+            if (slot == sockets.length) {
+                int size = Math.max(16, sockets.length * 2);
+                sockets = Arrays.copyOf(sockets, size);
+                since = Arrays.copyOf(since, size * 2);
+                seen = Arrays.copyOf(seen, size * 2);
+                dark = Arrays.copyOf(dark, size * 2);
+                lastPacket = Arrays.copyOf(lastPacket, size * 2);
+            }
+            sockets[slot] = socket;
+            long now = System.nanoTime();
+            for (int k = slot * 2; k != slot * 2 + 2; k++) {
+                lastPacket[k] = now;
+                seen[k] = now;
+                since[k] = now - BLINK_TIMEOUT;
+                dark[k] = false;
+            }
+            free = slot + 1;
+            return slot;
+        }
+    }
+
+    static void unregister(int slot) {
+        synchronized (lock) {
+            sockets[slot] = null;
+            free = Math.min(free, slot);
+        }
+    }
+
+    /**
+     * Records a packet, it may be called from any thread.
+     * @param light RX or TX.
+     */
+    static void packet(int slot, int light) {
+        lastPacket[slot * 2 + light] = System.nanoTime();
+        pending = true;
+        if (!running) {
+            wake();
+        }
+    }
+
+    /**
+     * @param light RX or TX.
+     * @return true while the light blinks dark.
+     */
+    static boolean isDark(int slot, int light) {
+        synchronized (lock) {
+            return dark[slot * 2 + light];
+        }
+    }
+
+    private static void wake() {
+        synchronized (lock) {
+            running = true;
+            if (!clock.isRunning()) {
+                clock.start();
+            }
+        }
+    }
+
+    /**
+     * Moves every light on by the time which has passed, the sockets
+     * whose lights have changed are repainted.
+     */
+    private static void frame() {
+        // reading it makes the recorded packet times visible
+        boolean active = pending;
+        pending = false;
+        synchronized (lock) {
+            long now = System.nanoTime();
+            long[] last = lastPacket;
+            for (int slot = 0; slot != sockets.length; slot++) {
+                if (sockets[slot] == null) {
+                    continue;
+                }
+                boolean changed = false;
+                for (int k = slot * 2; k != slot * 2 + 2; k++) {
+                    if (dark[k]) {
+                        if (now - since[k] >= BLINK_TIMEOUT) {
+                            // the packets while dark do not count
+                            dark[k] = false;
+                            since[k] = now;
+                            seen[k] = last[k];
+                            changed = true;
+                        }
+                    } else if (last[k] != seen[k] && now - since[k] >= BLINK_TIMEOUT) {
+                        dark[k] = true;
+                        since[k] = now;
+                        seen[k] = last[k];
+                        changed = true;
+                    }
+                    active |= dark[k] || last[k] != seen[k];
+                }
+                if (changed) {
+                    sockets[slot].repaintLights();
+                }
+            }
+            if (!active) {
+                // a packet recorded meanwhile either sees the clock
+                // stopped or is seen here
+                running = false;
+                if (pending) {
+                    running = true;
+                } else {
+                    clock.stop();
+                }
+            }
+        }
+    }
+}
@@ -18,6 +18,7 @@
  */
 package org.netsimulator.gui;
 
+import org.netsimulator.term.CaptureCLICommand;
 import org.netsimulator.util.*;
 import org.xml.sax.ErrorHandler;
 import org.xml.sax.SAXException;
@@ -510,7 +511,10 @@ public class MainFrame
     }
 
     private void closeProject() {
+        // the captures are buffered, they are complete once stopped
+        CaptureCLICommand.stopAll();
         removeNetworkPanel(networkPanel);
+        networkPanel.dispose();
         networkPanel = null;
         currentFile = null;
         setCurrentProjectDependentMenuItemsEnable(false);
@@ -38,6 +38,8 @@ public abstract class NetworkLink
     protected int x1, x2, y1, y2;
     protected int gap;
     protected int id;
+    /** Index of the layer the link is on, it follows the moves. */
+    volatile ShapeIndex<?> index;
 
     protected static NetworkLink selectedLink;
 
@@ -99,6 +101,7 @@ public abstract class NetworkLink
         this.y1 = (int) Y1;
         this.x2 = (int) X2;
         this.y2 = (int) Y2;
+        moved();
     }
 
     public void setLine(int X1, int Y1, int X2, int Y2) {
@@ -106,11 +109,13 @@ public abstract class NetworkLink
         this.y1 = Y1;
         this.x2 = X2;
         this.y2 = Y2;
+        moved();
     }
 
     @Override
     public Rectangle2D getBounds2D() {
-        return new Rectangle(x1, y1, x2, y2);
+        return new Rectangle(Math.min(x1, x2), Math.min(y1, y2),
+                Math.abs(x2 - x1), Math.abs(y2 - y1));
     }
 
     @Override
@@ -126,11 +131,29 @@ public abstract class NetworkLink
     public void setP1(int x, int y) {
         this.x1 = x;
         this.y1 = y;
+        moved();
     }
 
     public void setP2(int x, int y) {
         this.x2 = x;
         this.y2 = y;
+        moved();
+    }
+
+    private void moved() {
+        ShapeIndex<?> i = index;
+        if (i != null) {
+            i.moved(this);
+        }
+    }
+
+    /**
+     * @return the area where the link takes the mouse.
+     */
+    Rectangle getHitBounds() {
+        Rectangle bounds = getBounds();
+        bounds.grow(gap, gap);
+        return bounds;
     }
 
     public boolean contains(int x, int y) {
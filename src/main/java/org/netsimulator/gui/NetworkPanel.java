@@ -26,25 +26,55 @@ import java.awt.*;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.List;
 
 public class NetworkPanel
 extends JPanel
-implements MouseListener, Runnable
+implements MouseListener
 {
     private Frame mainFrame;
     private IdGenerator idGenerator;
     private boolean isSaved = false;
-    private boolean requestForRepaint = true;
+    private final RepaintScheduler repaintScheduler = new RepaintScheduler(this);
+    /** How far out of their bounds the shapes draw (labels, lights). */
+    private static final int PAINT_MARGIN = 128;
     
     String description = "";
     String author = "";
     String createDate = "";    
     
-    ArrayList<NetworkShape>             devicesLayer = new ArrayList<NetworkShape>();
-    ArrayList<NetworkLink>              linksLayer   = new ArrayList<NetworkLink>();
-    ArrayList<PlugNetworkShape>         plugsLayer   = new ArrayList<PlugNetworkShape>();
-    ArrayList<SocketNetworkShape>       socketsLayer = new ArrayList<SocketNetworkShape>();
+    /*
+     * The layers are never changed in place. A change makes new layers
+     * which replace the old ones in one write, so the painting (and any
+     * other reader) always works with a consistent snapshot.
+     *
+     * The indexes below are the published state too, the painting and
+     * the mouse look the shapes up in them. They are changed on the event
+     * dispatch thread only, together with the layers (see
+     * onEventDispatchThread()), and the shapes move in them on that
+     * thread as well, so a paint never sees an index ahead of or behind
+     * the layers.
+     */
+    private volatile Layers layers = new Layers();
+    private final Object layersLock = new Object();
+    /** Thread loading a project, its shapes go to the loaded layers. */
+    private volatile Thread loadingThread;
+    private Layers loaded;
+
+    private final ShapeIndex<NetworkShape> devicesIndex =
+            new ShapeIndex<NetworkShape>(shape -> shape.getBounds());
+    private final ShapeIndex<NetworkLink> linksIndex =
+            new ShapeIndex<NetworkLink>(link -> link.getHitBounds());
+    private final ShapeIndex<PlugNetworkShape> plugsIndex =
+            new ShapeIndex<PlugNetworkShape>(shape -> shape.getBounds());
+    private final ShapeIndex<SocketNetworkShape> socketsIndex =
+            new ShapeIndex<SocketNetworkShape>(shape -> shape.getBounds());
+    /** Selected or highlighted shapes, they take the mouse events
+     * wherever the cursor is. */
+    private final Set<Object> activeShapes =
+            Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
 
     
     public NetworkPanel(Frame mainFrame)
@@ -54,8 +84,6 @@ implements MouseListener, Runnable
         enableEvents(AWTEvent.MOUSE_EVENT_MASK | 
                      AWTEvent.MOUSE_MOTION_EVENT_MASK);
         idGenerator = new IdGenerator();
-        
-        new Thread(this).start();               
     }
 
 
@@ -65,35 +93,47 @@ implements MouseListener, Runnable
 
         Graphics2D g2d = (Graphics2D) g;
 
+        // Scaled down the details are skipped and smoothing is not seen
         g2d.addRenderingHints(
                 new RenderingHints(RenderingHints.KEY_ANTIALIASING,
-                                   RenderingHints.VALUE_ANTIALIAS_ON));
+                                   NetworkShape.isDetailed(g2d)
+                                   ? RenderingHints.VALUE_ANTIALIAS_ON
+                                   : RenderingHints.VALUE_ANTIALIAS_OFF));
 
         //System.out.println("size="+g2d.getRenderingHints().size());
 
-        try
+        Layers current = layers;
+
+        /*
+         * Only the shapes in the clip (the visible part of the scrolled
+         * panel or the repainted area) are drawn. The clip is grown since
+         * the labels and the lights are drawn out of the shapes bounds.
+         */
+        Rectangle clip = g2d.getClipBounds();
+        Iterable<NetworkShape> devices = current.devices;
+        Iterable<NetworkLink> links = current.links;
+        Iterable<PlugNetworkShape> plugs = current.plugs;
+        if( clip != null )
         {
-            for( NetworkShape shape : devicesLayer )
-            {
-                shape.show(g2d);
-            }
+            clip.grow(PAINT_MARGIN, PAINT_MARGIN);
+            devices = devicesIndex.query(clip);
+            links = linksIndex.query(clip);
+            plugs = plugsIndex.query(clip);
+        }
 
-            for( NetworkLink link : linksLayer )
-            {
-                link.show(g2d);
-            }
+        for( NetworkShape shape : devices )
+        {
+            shape.show(g2d);
+        }
 
-            for( NetworkShape shape : plugsLayer )
-            {
-                shape.show(g2d);
-            }
-        }catch(ConcurrentModificationException cme)
+        for( NetworkLink link : links )
+        {
+            link.show(g2d);
+        }
+
+        for( NetworkShape shape : plugs )
         {
-            /*
-             * The ConcurrentModificationException can rise here
-             * during loading a project. When new devices are being added on
-             * the panel and the panel is painting them at the same time.
-             */ 
+            shape.show(g2d);
         }
     }
 
@@ -124,9 +164,9 @@ implements MouseListener, Runnable
         {
             ie.printStackTrace();
         }
-        devicesLayer.add(new_shape);
+        putOnDevicesLayer(new_shape);
         
-        new_shape.setName("Desktop "+devicesLayer.indexOf(new_shape));
+        new_shape.setName("Desktop "+layers.devices.indexOf(new_shape));
 
         repaint();
         isSaved = false;
@@ -149,8 +189,8 @@ implements MouseListener, Runnable
         {
             ie.printStackTrace();
         }
-        devicesLayer.add(new_shape);
-        new_shape.setName("HUB "+devicesLayer.indexOf(new_shape));
+        putOnDevicesLayer(new_shape);
+        new_shape.setName("HUB "+layers.devices.indexOf(new_shape));
         repaint();
         isSaved = false;
     }
@@ -173,8 +213,8 @@ implements MouseListener, Runnable
         {
             ie.printStackTrace();
         }
-        devicesLayer.add(new_shape);
-        new_shape.setName("Switch "+devicesLayer.indexOf(new_shape));
+        putOnDevicesLayer(new_shape);
+        new_shape.setName("Switch "+layers.devices.indexOf(new_shape));
         repaint();
         isSaved = false;
     }    
@@ -198,9 +238,9 @@ implements MouseListener, Runnable
         {
             ie.printStackTrace();
         }
-        devicesLayer.add(new_shape);
+        putOnDevicesLayer(new_shape);
         
-        new_shape.setName("Router "+devicesLayer.indexOf(new_shape));
+        new_shape.setName("Router "+layers.devices.indexOf(new_shape));
         repaint();
         isSaved = false;
     }    
@@ -211,16 +251,67 @@ implements MouseListener, Runnable
     
     public void deleteDeviceShape(NetworkShape shape)
     {
-        devicesLayer.remove(shape);
+        if(shape instanceof SocketsHolder)
+        {
+            ((SocketsHolder)shape).getNetworkDeviceHolder().dispose();
+        }
+        onEventDispatchThread(() ->
+        {
+            shape.index = null;
+            devicesIndex.remove(shape);
+            activeShapes.remove(shape);
+            synchronized(layersLock)
+            {
+                layers = layers.withDevices(without(layers.devices, shape));
+            }
+        });
         isSaved = false;
         repaint();
     }
     
     
 
+    /**
+     * Releases what the shapes hold outside the panel (the lights of the
+     * sockets), so a closed project can be garbage collected.
+     */
+    public void dispose()
+    {
+        onEventDispatchThread(() ->
+        {
+            Layers current;
+            synchronized(layersLock)
+            {
+                current = layers;
+                layers = new Layers();
+            }
+            for(SocketNetworkShape shape : current.sockets)
+            {
+                shape.index = null;
+                shape.dispose();
+            }
+            devicesIndex.clear();
+            linksIndex.clear();
+            plugsIndex.clear();
+            socketsIndex.clear();
+            activeShapes.clear();
+        });
+    }
+
+
+
     public void deleteSocketShape(SocketNetworkShape shape)
     {
-        socketsLayer.remove(shape);
+        onEventDispatchThread(() ->
+        {
+            shape.index = null;
+            shape.dispose();
+            socketsIndex.remove(shape);
+            synchronized(layersLock)
+            {
+                layers = layers.withSockets(without(layers.sockets, shape));
+            }
+        });
         isSaved = false;
         repaint();
     }
@@ -238,7 +329,16 @@ implements MouseListener, Runnable
     
     public void deleteMedia(NetworkLink link)
     {
-        linksLayer.remove(link);
+        onEventDispatchThread(() ->
+        {
+            link.index = null;
+            linksIndex.remove(link);
+            activeShapes.remove(link);
+            synchronized(layersLock)
+            {
+                layers = layers.withLinks(without(layers.links, link));
+            }
+        });
         isSaved = false;
         repaint();
     }
@@ -248,7 +348,16 @@ implements MouseListener, Runnable
     
     public void deletePlug(PlugNetworkShape plug)
     {
-        plugsLayer.remove(plug);
+        onEventDispatchThread(() ->
+        {
+            plug.index = null;
+            plugsIndex.remove(plug);
+            activeShapes.remove(plug);
+            synchronized(layersLock)
+            {
+                layers = layers.withPlugs(without(layers.plugs, plug));
+            }
+        });
         isSaved = false;
         repaint();
     }
@@ -265,59 +374,30 @@ implements MouseListener, Runnable
     
     protected void processMouseEvent(MouseEvent e)
     {
-        for(Iterator i=plugsLayer.iterator(); i.hasNext(); )
-        {
-            MouseListener listener = (MouseListener)i.next();
-            switch(e.getID())
-            {
-                case MouseEvent.MOUSE_PRESSED:
-                    listener.mousePressed(e);
-                    break;
-                case MouseEvent.MOUSE_CLICKED:
-                    listener.mouseClicked(e);
-                    break;
-                case MouseEvent.MOUSE_RELEASED:
-                    listener.mouseReleased(e);
-                    break;
-            }
-
-        }
-
-        for(Iterator i=linksLayer.iterator(); i.hasNext(); )
-        {
-            MouseListener listener = (MouseListener)i.next();
-            switch(e.getID())
-            {
-                case MouseEvent.MOUSE_PRESSED:
-                    listener.mousePressed(e);
-                    break;
-                case MouseEvent.MOUSE_CLICKED:
-                    listener.mouseClicked(e);
-                    break;
-                case MouseEvent.MOUSE_RELEASED:
-                    listener.mouseReleased(e);
-                    break;
-            }
-
-        }
-
-        for(Iterator i=devicesLayer.iterator(); i.hasNext(); )
+        switch(e.getID())
         {
-            MouseListener listener = (MouseListener)i.next();
-
-            switch(e.getID())
-            {
-                case MouseEvent.MOUSE_PRESSED:
-                    listener.mousePressed(e);
-                    break;
-                case MouseEvent.MOUSE_CLICKED:
-                    listener.mouseClicked(e);
-                    break;
-                case MouseEvent.MOUSE_RELEASED:
-                    listener.mouseReleased(e);
-                    break;
-            }
-
+            case MouseEvent.MOUSE_PRESSED:
+            case MouseEvent.MOUSE_CLICKED:
+            case MouseEvent.MOUSE_RELEASED:
+                List<Object> targets = getMouseTargets(e);
+                for(Object target : targets)
+                {
+                    MouseListener listener = (MouseListener)target;
+                    switch(e.getID())
+                    {
+                        case MouseEvent.MOUSE_PRESSED:
+                            listener.mousePressed(e);
+                            break;
+                        case MouseEvent.MOUSE_CLICKED:
+                            listener.mouseClicked(e);
+                            break;
+                        case MouseEvent.MOUSE_RELEASED:
+                            listener.mouseReleased(e);
+                            break;
+                    }
+                }
+                updateActiveShapes(targets);
+                break;
         }
         
         super.processMouseEvent(e);
@@ -328,9 +408,10 @@ implements MouseListener, Runnable
     
     protected void processMouseMotionEvent(MouseEvent e)
     {
-        for(Iterator i=plugsLayer.iterator(); i.hasNext(); )
+        List<Object> targets = getMouseTargets(e);
+        for(Object target : targets)
         {
-            MouseMotionListener listener = (MouseMotionListener)i.next();
+            MouseMotionListener listener = (MouseMotionListener)target;
             switch(e.getID())
             {
                 case MouseEvent.MOUSE_DRAGGED:
@@ -341,37 +422,174 @@ implements MouseListener, Runnable
                     break;
             }
         }
+        updateActiveShapes(targets);
+        
+        super.processMouseMotionEvent(e);
+        repaint();
+    }
+
 
-        for(Iterator i=linksLayer.iterator(); i.hasNext(); )
+    /**
+     * The shapes under the cursor and the selected or highlighted ones
+     * take the mouse event, the rest of the shapes would ignore it. They
+     * are in the order of the layers, plugs, links and devices.
+     */
+    private List<Object> getMouseTargets(MouseEvent e)
+    {
+        Rectangle at = new Rectangle(e.getX(), e.getY(), 0, 0);
+        List<Object> targets = new ArrayList<Object>();
+        targets.addAll(plugsIndex.query(at, activeShapes));
+        targets.addAll(linksIndex.query(at, activeShapes));
+        targets.addAll(devicesIndex.query(at, activeShapes));
+        return targets;
+    }
+
+
+    private void updateActiveShapes(List<Object> targets)
+    {
+        for(Object target : targets)
         {
-            MouseMotionListener listener = (MouseMotionListener)i.next();
-            switch(e.getID())
+            boolean active;
+            if(target instanceof NetworkShape)
             {
-                case MouseEvent.MOUSE_DRAGGED:
-                    listener.mouseDragged(e);
-                    break;
-                case MouseEvent.MOUSE_MOVED:
-                    listener.mouseMoved(e);
-                    break;
+                NetworkShape shape = (NetworkShape)target;
+                active = shape.isSelected || shape.isHighlighted;
+            }else
+            {
+                NetworkLink link = (NetworkLink)target;
+                active = link.isSelected() || link.isHilighted();
+            }
+            if(active)
+            {
+                activeShapes.add(target);
+            }else
+            {
+                activeShapes.remove(target);
             }
         }
-        
-        for(Iterator i=devicesLayer.iterator(); i.hasNext(); )
+    }
+
+
+    /**
+     * @return copy of the layer without the shape (found by identity,
+     * the shapes are rectangles equal by value).
+     */
+    private static <T> List<T> without(List<T> layer, Object shape)
+    {
+        List<T> res = new ArrayList<T>(layer);
+        for(Iterator<T> i = res.iterator(); i.hasNext(); )
         {
-            MouseMotionListener listener = (MouseMotionListener)i.next();
-            switch(e.getID())
+            if(i.next() == shape)
             {
-                case MouseEvent.MOUSE_DRAGGED:
-                    listener.mouseDragged(e);
-                    break;
-                case MouseEvent.MOUSE_MOVED:
-                    listener.mouseMoved(e);
-                    break;
+                i.remove();
+                break;
             }
         }
-        
-        super.processMouseMotionEvent(e);
-        repaint();
+        return res;
+    }
+
+
+    private static <T> List<T> with(List<T> layer, T shape)
+    {
+        List<T> res = new ArrayList<T>(layer.size() + 1);
+        res.addAll(layer);
+        res.add(shape);
+        return res;
+    }
+
+
+    private static <T> List<T> joined(List<T> layer, List<T> shapes)
+    {
+        List<T> res = new ArrayList<T>(layer.size() + shapes.size());
+        res.addAll(layer);
+        res.addAll(shapes);
+        return res;
+    }
+
+
+    /**
+     * Makes the shapes the current thread puts on the layers to be kept
+     * aside until {@link #endLoading()}, nobody sees a project half loaded.
+     */
+    public void startLoading()
+    {
+        loaded = new Layers();
+        loadingThread = Thread.currentThread();
+    }
+
+
+    /**
+     * Publishes the shapes put on the layers since {@link #startLoading()}
+     * at once.
+     */
+    public void endLoading()
+    {
+        if(loadingThread != Thread.currentThread())
+        {
+            return;
+        }
+        final Layers batch = loaded;
+        loaded = null;
+        loadingThread = null;
+
+        onEventDispatchThread(() ->
+        {
+            synchronized(layersLock)
+            {
+                layers = new Layers(
+                        joined(layers.devices, batch.devices),
+                        joined(layers.links, batch.links),
+                        joined(layers.plugs, batch.plugs),
+                        joined(layers.sockets, batch.sockets));
+            }
+            for(NetworkShape shape : batch.devices)
+            {
+                devicesIndex.add(shape);
+            }
+            for(NetworkLink link : batch.links)
+            {
+                linksIndex.add(link);
+            }
+            for(PlugNetworkShape shape : batch.plugs)
+            {
+                plugsIndex.add(shape);
+            }
+            for(SocketNetworkShape shape : batch.sockets)
+            {
+                socketsIndex.add(shape);
+            }
+            repaint();
+        });
+    }
+
+
+    /**
+     * Runs the change of the layers and the indexes on the event dispatch
+     * thread, where they are painted, and waits for it.
+     */
+    private void onEventDispatchThread(Runnable change)
+    {
+        if(SwingUtilities.isEventDispatchThread())
+        {
+            change.run();
+            return;
+        }
+        try
+        {
+            SwingUtilities.invokeAndWait(change);
+        }catch(InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+        }catch(InvocationTargetException ite)
+        {
+            throw new IllegalStateException(ite.getCause());
+        }
+    }
+
+
+    private boolean isLoading()
+    {
+        return loadingThread == Thread.currentThread();
     }
 
     
@@ -385,49 +603,119 @@ implements MouseListener, Runnable
     
     public Collection<NetworkShape> getDevicesLayer()
     {
-        return devicesLayer;
+        return Collections.unmodifiableList(layers.devices);
     }
 
 
     public void putOnDevicesLayer(NetworkShape shape)
     {
-        devicesLayer.add(shape);
+        shape.index = devicesIndex;
+        if(isLoading())
+        {
+            loaded.devices.add(shape);
+            return;
+        }
+        onEventDispatchThread(() ->
+        {
+            synchronized(layersLock)
+            {
+                layers = layers.withDevices(with(layers.devices, shape));
+            }
+            devicesIndex.add(shape);
+        });
+    }
+
+
+    /**
+     * @return devices whose bounds overlap the area.
+     */
+    public Collection<NetworkShape> getDevicesAt(Rectangle area)
+    {
+        return devicesIndex.query(area);
     }
 
         
     public Collection<NetworkLink> getLinksLayer()
     {
-        return linksLayer;
+        return Collections.unmodifiableList(layers.links);
     }
 
 
     public void putOnLinkLayer(NetworkLink link)
     {
-        linksLayer.add(link);
+        link.index = linksIndex;
+        if(isLoading())
+        {
+            loaded.links.add(link);
+            return;
+        }
+        onEventDispatchThread(() ->
+        {
+            synchronized(layersLock)
+            {
+                layers = layers.withLinks(with(layers.links, link));
+            }
+            linksIndex.add(link);
+        });
     }
 
     
     public Collection<PlugNetworkShape> getPlugsLayer()
     {
-        return plugsLayer;
+        return Collections.unmodifiableList(layers.plugs);
     }
 
     
     public void putOnPlugLayer(PlugNetworkShape shape)
     {
-        plugsLayer.add(shape);
+        shape.index = plugsIndex;
+        if(isLoading())
+        {
+            loaded.plugs.add(shape);
+            return;
+        }
+        onEventDispatchThread(() ->
+        {
+            synchronized(layersLock)
+            {
+                layers = layers.withPlugs(with(layers.plugs, shape));
+            }
+            plugsIndex.add(shape);
+        });
     }
     
     
     public Collection<SocketNetworkShape> getSocketsLayer()
     {
-        return socketsLayer;
+        return Collections.unmodifiableList(layers.sockets);
     }
     
     
     public void putOnSocketLayer(SocketNetworkShape shape)
     {
-        socketsLayer.add(shape);
+        shape.index = socketsIndex;
+        if(isLoading())
+        {
+            loaded.sockets.add(shape);
+            return;
+        }
+        onEventDispatchThread(() ->
+        {
+            synchronized(layersLock)
+            {
+                layers = layers.withSockets(with(layers.sockets, shape));
+            }
+            socketsIndex.add(shape);
+        });
+    }
+
+
+    /**
+     * @return sockets whose bounds overlap the area.
+     */
+    public Collection<SocketNetworkShape> getSocketsAt(Rectangle area)
+    {
+        return socketsIndex.query(area);
     }
     
 
@@ -480,13 +768,23 @@ implements MouseListener, Runnable
     
     public SocketNetworkShape getSocketById(int id)
     {
-        for(SocketNetworkShape socket : getSocketsLayer())
+        for(SocketNetworkShape socket : layers.sockets)
         {
             if(socket.getId() == id)
             {
                 return socket;
             }
         }
+        if(isLoading())
+        {
+            for(SocketNetworkShape socket : loaded.sockets)
+            {
+                if(socket.getId() == id)
+                {
+                    return socket;
+                }
+            }
+        }
         return null;
     }
     
@@ -494,41 +792,42 @@ implements MouseListener, Runnable
     
     public int getDevicesCount()
     {
-        return devicesLayer.size();
+        return layers.devices.size();
     }
 
 
 
     public int getLinksCount()
     {
-        return linksLayer.size();
+        return layers.links.size();
     }
 
     
-    public void run()
+    /**
+     * Requests the whole panel to be repainted with the next frame, it may
+     * be called from any thread.
+     */
+    public void repaint()
     {
-        while(true)
+        if(repaintScheduler == null)
         {
-            if(requestForRepaint)
-            {
-                super.repaint();
-                requestForRepaint = false;
-            }
-            
-            try
-            {
-                Thread.sleep(20);
-            }catch(InterruptedException ie)
-            {
-                ie.printStackTrace();
-            }
+            // called by the super constructor
+            super.repaint();
+        }else
+        {
+            repaintScheduler.request();
         }
     }
 
-    
-    public void repaint()
+
+    /**
+     * Requests the area of a changed shape to be repainted with the next
+     * frame, it may be called from any thread.
+     * @param area in the panel coordinates.
+     */
+    public void repaintArea(Rectangle area)
     {
-        requestForRepaint = true;
+        repaintScheduler.request(area);
     }
     
     
@@ -585,4 +884,56 @@ implements MouseListener, Runnable
         return new Dimension( bounds.x + bounds.width, bounds.y + bounds.height );
     }
 
+
+
+    /**
+     * Shapes of all the layers. Published layers are never changed, the
+     * loaded ones are filled by the loading thread only.
+     */
+    private static final class Layers
+    {
+        final List<NetworkShape> devices;
+        final List<NetworkLink> links;
+        final List<PlugNetworkShape> plugs;
+        final List<SocketNetworkShape> sockets;
+
+        Layers()
+        {
+            this(new ArrayList<NetworkShape>(),
+                 new ArrayList<NetworkLink>(),
+                 new ArrayList<PlugNetworkShape>(),
+                 new ArrayList<SocketNetworkShape>());
+        }
+
+        Layers(List<NetworkShape> devices,
+               List<NetworkLink> links,
+               List<PlugNetworkShape> plugs,
+               List<SocketNetworkShape> sockets)
+        {
+            this.devices = devices;
+            this.links = links;
+            this.plugs = plugs;
+            this.sockets = sockets;
+        }
+
+        Layers withDevices(List<NetworkShape> devices)
+        {
+            return new Layers(devices, links, plugs, sockets);
+        }
+
+        Layers withLinks(List<NetworkLink> links)
+        {
+            return new Layers(devices, links, plugs, sockets);
+        }
+
+        Layers withPlugs(List<PlugNetworkShape> plugs)
+        {
+            return new Layers(devices, links, plugs, sockets);
+        }
+
+        Layers withSockets(List<SocketNetworkShape> sockets)
+        {
+            return new Layers(devices, links, plugs, sockets);
+        }
+    }
 }
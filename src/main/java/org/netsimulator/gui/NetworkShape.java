@@ -24,7 +24,11 @@ import java.awt.*;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.awt.image.BufferedImage;
 import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.logging.Logger;
 
 public abstract class NetworkShape
@@ -33,11 +37,24 @@ public abstract class NetworkShape
 
     private static final Logger logger = Logger.getLogger(NetworkShape.class.getName());
 
+    /** Below this scale the sockets and the labels are not drawn. */
+    static final double DETAIL_SCALE = 0.5;
+
+    /** Images converted into ones the screen draws fast, shared by the shapes. */
+    private static final Map<Image, BufferedImage> sprites =
+            Collections.synchronizedMap(new WeakHashMap<Image, BufferedImage>());
 
     protected static NetworkShape selectedShape;
     protected int id;
     protected boolean isSelected;
     protected boolean isHighlighted;
+    /** Index of the layer the shape is on, it follows the moves. */
+    volatile ShapeIndex<?> index;
+    private BufferedImage label;
+    private String labelText;
+    private Font labelFont;
+    private Color labelColor;
+    private int labelAscent;
 
     public int getId() {
         return id;
@@ -57,6 +74,97 @@ public abstract class NetworkShape
 
     public abstract void show(Graphics2D g2d);
 
+    @Override
+    public void setLocation(int x, int y) {
+        super.setLocation(x, y);
+        moved();
+    }
+
+    @Override
+    public void setBounds(int x, int y, int width, int height) {
+        super.setBounds(x, y, width, height);
+        moved();
+    }
+
+    private void moved() {
+        ShapeIndex<?> i = index;
+        if (i != null) {
+            i.moved(this);
+        }
+    }
+
+    /**
+     * @return false if the graphics is scaled down so much that the details
+     * (sockets, labels) would not be seen anyway.
+     */
+    static boolean isDetailed(Graphics2D g2d) {
+        return g2d.getTransform().getScaleX() >= DETAIL_SCALE;
+    }
+
+    /**
+     * Draws the image through its copy made once in the screen format,
+     * it stays in the video memory and is drawn without any conversion.
+     */
+    static void drawSprite(Graphics2D g2d, Image image, int x, int y) {
+        g2d.drawImage(getSprite(image), x, y, null);
+    }
+
+    static Image getSprite(Image image) {
+        BufferedImage sprite = sprites.get(image);
+        if (sprite != null) {
+            return sprite;
+        }
+        int width = image.getWidth(null);
+        int height = image.getHeight(null);
+        if (width <= 0 || height <= 0) {
+            return image; // it's not loaded yet
+        }
+        if (GraphicsEnvironment.isHeadless()) {
+            sprite = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        } else {
+            sprite = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                    .getDefaultScreenDevice().getDefaultConfiguration()
+                    .createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+        }
+        Graphics2D g = sprite.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        sprites.put(image, sprite);
+        return sprite;
+    }
+
+    /**
+     * Draws the text with its baseline at the point. The antialiased text
+     * is rendered once into an image which is redrawn until the text,
+     * the font or the color change.
+     */
+    protected void drawLabel(Graphics2D g2d, String text, int x, int y) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        Font font = g2d.getFont();
+        Color color = g2d.getColor();
+        if (label == null || !text.equals(labelText)
+                || !font.equals(labelFont) || !color.equals(labelColor)) {
+            FontMetrics metrics = g2d.getFontMetrics(font);
+            label = new BufferedImage(
+                    Math.max(1, metrics.stringWidth(text)),
+                    Math.max(1, metrics.getAscent() + metrics.getDescent()),
+                    BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = label.createGraphics();
+            g.setRenderingHints(g2d.getRenderingHints());
+            g.setFont(font);
+            g.setColor(color);
+            g.drawString(text, 0, metrics.getAscent());
+            g.dispose();
+            labelText = text;
+            labelFont = font;
+            labelColor = color;
+            labelAscent = metrics.getAscent();
+        }
+        g2d.drawImage(label, x, y - labelAscent, null);
+    }
+
     public void mouseClicked(MouseEvent e) {
     }
 
@@ -21,7 +21,6 @@ package org.netsimulator.gui;
 import org.netsimulator.net.Media;
 import org.netsimulator.net.Packet;
 import org.netsimulator.net.TransferPacketListener;
-import org.netsimulator.util.ConfigurableThreadFactory;
 
 import javax.swing.*;
 import java.awt.*;
@@ -30,17 +29,11 @@ import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
 import java.util.Locale;
 import java.util.ResourceBundle;
-import java.util.concurrent.Executor;
-import java.util.concurrent.SynchronousQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 public class PatchcordNetworkLink
         extends NetworkLink
         implements Faderable, TransferPacketListener, ActionListener {
 
-    private static final Executor exec = 
-            new ThreadPoolExecutor(20, 1000, 180L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ConfigurableThreadFactory("Fader-"));   
     private static final ResourceBundle rsc = ResourceBundle.getBundle("netsimulator", Locale.getDefault());
     private static BasicStroke stroke;
     private static BasicStroke selectedStroke;
@@ -52,7 +45,7 @@ public class PatchcordNetworkLink
     private PlugNetworkShape plug2;
     private Media media;
     private volatile Color currentColor;
-    private Fader fader;
+    private final Fader fader = new Fader(this);
     private boolean popupShown = false;
 
     private int dx1 = 0, dy1 = 0, dx2 = 0, dy2 = 0;
@@ -132,7 +125,21 @@ public class PatchcordNetworkLink
     @Override
     public void setCurrentColor(Color currentColor) {
         this.currentColor = currentColor;
-        panel.repaint();
+        panel.repaintArea(getDirtyBounds());
+    }
+
+    /**
+     * @return the area the patchcord is drawn in, with its plugs.
+     */
+    private Rectangle getDirtyBounds() {
+        Rectangle bounds = getBounds();
+        int width = (int) Math.ceil(selectedStroke.getLineWidth());
+        bounds.grow(width, width);
+        if (plug1 != null && plug2 != null) {
+            bounds.add(plug1);
+            bounds.add(plug2);
+        }
+        return bounds;
     }
 
     public PlugNetworkShape getPlug1() {
@@ -226,10 +233,7 @@ public class PatchcordNetworkLink
         // Race condition is possible but it does not cause errors so ignore it.
         if(!highlighted) {
             highlighted = true;
-            if (fader != null) {
-                fader.cancel();
-                fader = null;
-            }
+            fader.cancel();
             currentColor = HILIGHTED_COLOR;
         }
     }
@@ -239,12 +243,7 @@ public class PatchcordNetworkLink
         // Race condition is possible but it does not cause errors so ignore it.
         if(highlighted) {
             highlighted = false;
-            if (fader != null) {
-                fader.cancel();
-                fader = null;
-            }
-            fader = new Fader(currentColor, this);
-            exec.execute(fader);
+            fader.start(currentColor);
         }
     }
 
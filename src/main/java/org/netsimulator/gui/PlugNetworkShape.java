@@ -71,8 +71,8 @@ public class PlugNetworkShape extends NetworkShape {
     }
 
     public void show(Graphics2D g2d) {
-        if (isSelected) g2d.drawImage(selectedImage, x, y, null);
-        if (!isSelected) g2d.drawImage(image, x, y, null);
+        if (isSelected) drawSprite(g2d, selectedImage, x, y);
+        if (!isSelected) drawSprite(g2d, image, x, y);
     }
 
 
@@ -103,7 +103,7 @@ public class PlugNetworkShape extends NetworkShape {
                     break;
             }
 
-            for (SocketNetworkShape socket : panel.getSocketsLayer()) {
+            for (SocketNetworkShape socket : panel.getSocketsAt(this)) {
                 //System.out.println("in sokets loop");
                 if (intersects(socket) && !socket.isConnected()) {
                     //   System.out.println("intersects!!!");
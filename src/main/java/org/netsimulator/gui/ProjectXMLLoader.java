@@ -27,6 +27,7 @@ package org.netsimulator.gui;
 
 
 import org.netsimulator.net.*;
+import org.netsimulator.sim.EventScheduler;
 import org.netsimulator.util.ResourceEntityResolverFactory;
 import org.netsimulator.util.XMLHelper;
 import org.xml.sax.*;
@@ -59,10 +60,12 @@ public class ProjectXMLLoader implements ContentHandler, Runnable {
     private SocketsHolder currentSocketsHolder;
     private RouterHolder currentRouterHolder;
     private RoutingTable currentRoutingTable;
+    private RoutingTable.Batch currentRoutes;
     private Concentrator currentConcentrator;
     private PatchcordNetworkLink currentPatchcord;
     private HubNetworkShape currentHubHolder;
     private SwitchNetworkShape currentSwitchHolder;
+    private boolean currentStp;
 
 
     /**
@@ -125,7 +128,6 @@ public class ProjectXMLLoader implements ContentHandler, Runnable {
     }
 
     public void endDocument() throws SAXException {
-        panel.repaint();
     }
 
     public void startPrefixMapping(String prefix, String uri) throws SAXException {
@@ -298,8 +300,6 @@ public class ProjectXMLLoader implements ContentHandler, Runnable {
             new_shape.setComment(description);
             new_shape.setLocation(x, y);
 
-            panel.repaint();
-
             currentSocketsHolder = new_shape;
             currentRouterHolder = new_shape;
 
@@ -349,8 +349,6 @@ public class ProjectXMLLoader implements ContentHandler, Runnable {
             new_shape.setComment(description);
             new_shape.setLocation(x, y);
 
-            panel.repaint();
-
             currentSocketsHolder = new_shape;
             currentRouterHolder = new_shape;
 
@@ -450,8 +448,6 @@ public class ProjectXMLLoader implements ContentHandler, Runnable {
             new_shape.setComment(description);
             new_shape.setLocation(x, y);
 
-            panel.repaint();
-
             currentSocketsHolder = new_shape;
             currentSwitchHolder = new_shape;
             LOGGER.log(Level.FINEST, "Start loading: {0}", currentSwitchHolder);
@@ -475,6 +471,7 @@ public class ProjectXMLLoader implements ContentHandler, Runnable {
         _switch_ = new Switch(panel.getIdGenerator(), 0, id);
         currentSwitchHolder.setSwitch(_switch_);
         currentConcentrator = _switch_;
+        currentStp = "1".equals(atts.getValue("stp"));
         LOGGER.log(Level.FINEST, "Start loading: {0}", currentConcentrator);
 
     }
@@ -482,6 +479,10 @@ public class ProjectXMLLoader implements ContentHandler, Runnable {
 
     private void endLoadingSwitch() {
         LOGGER.log(Level.FINEST, "End loading: {0}", currentConcentrator);
+        if (currentStp) {
+            ((Switch) currentConcentrator).enableSpanningTree(EventScheduler.getDefault());
+            currentStp = false;
+        }
         currentConcentrator = null;
     }
 
@@ -526,8 +527,6 @@ public class ProjectXMLLoader implements ContentHandler, Runnable {
             new_shape.setComment(description);
             new_shape.setLocation(x, y);
 
-            panel.repaint();
-
             currentSocketsHolder = new_shape;
             currentHubHolder = new_shape;
             LOGGER.log(Level.FINEST, "Start loading: {0}", currentHubHolder);
@@ -570,6 +569,7 @@ public class ProjectXMLLoader implements ContentHandler, Runnable {
 
     private void startLoadingRoutingTable(Attributes atts) {
         currentRoutingTable = currentRouter.getRoutingTable();
+        currentRoutes = currentRoutingTable.edit();
         LOGGER.log(Level.FINEST, "Start loading: {0}, current router: {1}", new Object[]{currentRoutingTable.hashCode() + "", currentRouter.hashCode() + ""});
     }
 
@@ -596,7 +596,9 @@ public class ProjectXMLLoader implements ContentHandler, Runnable {
 
 
     private void endLoadingRoutingTable() {
+        currentRoutes.commit();
         LOGGER.log(Level.FINEST, "End loading: {0}, current router: {1}", new Object[]{currentRoutingTable.hashCode() + "", currentRouter.hashCode() + ""});
+        currentRoutes = null;
         currentRoutingTable = null;
     }
 
@@ -742,6 +744,7 @@ public class ProjectXMLLoader implements ContentHandler, Runnable {
         }
 
         Media media = new Media(id);
+        NetworkXMLLoader.configureMedia(media, atts);
         currentPatchcord.setMedia(media);
     }
 
@@ -847,7 +850,7 @@ public class ProjectXMLLoader implements ContentHandler, Runnable {
         }
 
         try {
-            currentRoutingTable.addRoute(target, netmask, gateway, metric, iface);
+            currentRoutes.add(target, netmask, gateway, metric, iface);
         } catch (Exception e) {
             throw new SAXException(e);
         }
@@ -855,7 +858,12 @@ public class ProjectXMLLoader implements ContentHandler, Runnable {
     }
 
 
+    /**
+     * Loads the project. The shapes are kept aside and put on the panel
+     * all at once when the loading is over (or has failed).
+     */
     public void run() {
+        panel.startLoading();
         try {
             reader.parse(inputSource);
         } catch (IOException ioe) {
@@ -863,6 +871,7 @@ public class ProjectXMLLoader implements ContentHandler, Runnable {
         } catch (SAXException saxe) {
             LOGGER.log(Level.SEVERE, "Unexpected exception.", saxe);
         } finally {
+            panel.endLoading();
             for (Iterator<ProjectXMLLoadingCompleteListener> i = loadingListeners.iterator(); i.hasNext(); ) {
                 ProjectXMLLoadingCompleteListener l = i.next();
                 l.ProjectLoadingComplete();
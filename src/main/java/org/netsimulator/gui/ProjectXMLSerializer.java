@@ -186,7 +186,8 @@ public class ProjectXMLSerializer implements Runnable
     private void serializeSwitch(int indentSize, Switch _switch_)
     throws IOException
     {
-        write(indentSize, "<switch id=\""+_switch_.getId()+"\">");
+        write(indentSize, "<switch id=\""+_switch_.getId()+
+                (_switch_.getSpanningTree() == null ? "" : "\" stp=\"1")+"\">");
         serializePorts(indentSize+1, _switch_.getPorts());
         write(indentSize, "</switch>");
     }
@@ -272,8 +273,12 @@ public class ProjectXMLSerializer implements Runnable
     {
         write(indentSize, "<patchcord id=\""+link.getId()+"\">");
         
-        write(indentSize+1, "<media id=\""+link.getMedia().getId()+
-                "\" pointsCount=\""+link.getMedia().getPointsCount()+"\" />");
+        Media media = link.getMedia();
+        write(indentSize+1, "<media id=\""+media.getId()+
+                "\" pointsCount=\""+media.getPointsCount()+
+                "\" bandwidth=\""+media.getBandwidth()+
+                "\" delay=\""+media.getDelay()+
+                "\" queueSize=\""+media.getQueueSize()+"\" />");
         
         SocketNetworkShape socket =null;
         String str = null;
@@ -0,0 +1,109 @@
+/*
+NET-Simulator -- Network simulator.
+Copyright (C) 2006 Maxim Tereshin <maxim-tereshin@yandex.ru>
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along
+with this program; if not, write to the Free Software Foundation,
+Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+*/
+
+package org.netsimulator.gui;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+/**
+ * Coalesces repaint requests of a component into a repaint per frame at
+ * most. The requests are taken from any thread, the areas which must be
+ * redrawn are accumulated till the frame comes, so the component is
+ * repainted only where the shapes have changed. Nothing runs while there
+ * are no requests.
+ */
+final class RepaintScheduler implements ActionListener {
+
+    /** Delay of a frame in milliseconds. */
+    static final int FRAME_DELAY = 20;
+
+    private final JComponent component;
+    private final Timer timer;
+    private Rectangle dirty;
+    private boolean whole;
+    private boolean pending;
+
+    RepaintScheduler(JComponent component) {
+        this.component = component;
+        timer = new Timer(FRAME_DELAY, this);
+        timer.setRepeats(false);
+        timer.setCoalesce(true);
+    }
+
+    /**
+     * Requests the whole component to be repainted.
+     */
+    void request() {
+        synchronized (this) {
+            whole = true;
+            dirty = null;
+            if (pending) {
+                return;
+            }
+            pending = true;
+        }
+        timer.start();
+    }
+
+    /**
+     * Requests the area to be repainted.
+     * @param area in the component coordinates.
+     */
+    void request(Rectangle area) {
+        synchronized (this) {
+            if (!whole) {
+                if (dirty == null) {
+                    dirty = new Rectangle(area);
+                } else {
+                    dirty.add(area);
+                }
+            }
+            if (pending) {
+                return;
+            }
+            pending = true;
+        }
+        timer.start();
+    }
+
+    /**
+     * Repaints what has been requested since the former frame, it runs
+     * on the event dispatching thread.
+     */
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        Rectangle area;
+        boolean all;
+        synchronized (this) {
+            area = dirty;
+            all = whole;
+            dirty = null;
+            whole = false;
+            pending = false;
+        }
+        if (all) {
+            component.repaint(0, 0, 0, component.getWidth(), component.getHeight());
+        } else if (area != null) {
+            component.repaint(0, area.x, area.y, area.width, area.height);
+        }
+    }
+}
@@ -16,6 +16,7 @@ Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
 package org.netsimulator.gui;
 
 import org.netsimulator.net.*;
+import org.netsimulator.sim.EventScheduler;
 import org.netsimulator.term.*;
 import org.netsimulator.util.ShapeInfo;
 
@@ -100,6 +101,7 @@ public class RouterNetworkShape
                 panel.putOnSocketLayer(socket);
             }
         }
+        placeSockets();
 
         terminalDialog.getTerminal().
                 addCommand(new ArpCLICommand(router));
@@ -109,6 +111,8 @@ public class RouterNetworkShape
                 addCommand(new RouteCLICommand(router));
         terminalDialog.getTerminal().
                 addCommand(new PingCLICommand(router));
+        terminalDialog.getTerminal().
+                addCommand(new CaptureCLICommand(router, EventScheduler.getDefault()));
     }
 
     public RouterNetworkShape(NetworkPanel panel, Router router, int id)
@@ -135,27 +139,53 @@ public class RouterNetworkShape
                 addCommand(new RouteCLICommand(this.router));
         terminalDialog.getTerminal().
                 addCommand(new PingCLICommand(this.router));
+        terminalDialog.getTerminal().
+                addCommand(new CaptureCLICommand(this.router, EventScheduler.getDefault()));
 
     }
 
     public void show(Graphics2D g2d) {
         if (isSelected) {
-            g2d.drawImage(selectedImage, x, y, null);
+            drawSprite(g2d, selectedImage, x, y);
         }
         if (!isSelected) {
-            g2d.drawImage(image, x, y, null);
+            drawSprite(g2d, image, x, y);
         }
 
+        if (isDetailed(g2d)) {
+            for (SocketNetworkShape buf : sockets) {
+                buf.show(g2d);
+            }
+            drawLabel(g2d, name, x, y - 5);
+        }
+    }
+
+    @Override
+    public void setLocation(int x, int y) {
+        super.setLocation(x, y);
+        placeSockets();
+    }
+
+    @Override
+    public void setBounds(int x, int y, int width, int height) {
+        super.setBounds(x, y, width, height);
+        placeSockets();
+    }
+
+    /**
+     * Puts the sockets in a row on the device, they follow its moves
+     * whether the device is painted or not.
+     */
+    private void placeSockets() {
+        if (sockets == null) {
+            return; // called by the constructor
+        }
         int j = 0;
-        for (Iterator<SocketNetworkShape> i = sockets.iterator(); i.hasNext(); ) {
-            SocketNetworkShape buf = i.next();
+        for (SocketNetworkShape buf : sockets) {
             buf.setLocation(
                     x + shapeInfo.getSocketsX() + shapeInfo.getSocketsStep() * j++,
                     y + shapeInfo.getSocketsY());
-            buf.show(g2d);
         }
-
-        g2d.drawString(name, x, y - 5);
     }
 
     public void mousePressed(MouseEvent e) {
@@ -191,7 +221,7 @@ public class RouterNetworkShape
             selectedShape.setLocation(e.getX() + last_x,
                     e.getY() + last_y);
 
-            for (NetworkShape dev : panel.getDevicesLayer()) {
+            for (NetworkShape dev : panel.getDevicesAt(this)) {
                 if (!this.equals(dev) && intersects(dev)) {
                     isIntersects = true;
                 }
@@ -236,6 +266,7 @@ public class RouterNetworkShape
 
     public void addSocket(SocketNetworkShape shape) {
         sockets.add(shape);
+        placeSockets();
         panel.putOnSocketLayer(shape);
     }
 
@@ -0,0 +1,229 @@
+/*
+NET-Simulator -- Network simulator.
+Copyright (C) 2006 Maxim Tereshin <maxim-tereshin@yandex.ru>
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along
+with this program; if not, write to the Free Software Foundation,
+Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+*/
+
+package org.netsimulator.gui;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Uniform grid over the bounds of the shapes of a layer, so the shapes
+ * under the cursor are found without testing every shape of the panel.
+ * A shape is put into every cell its bounds overlap and moved between
+ * the cells when it {@link #moved(Object) moves}.
+ * <p>
+ * The shapes are identified by reference, shapes extending
+ * {@link Rectangle} are equal when their bounds are. The shapes found
+ * are in the order they were added, as they are in the layer.
+ */
+final class ShapeIndex<T> {
+
+    /** Cell size in pixels, about the size of a device shape. */
+    static final int CELL_SIZE = 64;
+
+    private static final class Entry {
+        final long order;
+        Rectangle bounds;
+        int col1, row1, col2, row2;
+
+        Entry(long order) {
+            this.order = order;
+        }
+    }
+
+    private final Function<T, Rectangle> boundsOf;
+    private final Map<Long, List<T>> cells = new HashMap<Long, List<T>>();
+    private final Map<T, Entry> entries = new IdentityHashMap<T, Entry>();
+    private long counter;
+
+    /**
+     * @param boundsOf gives the area the shape takes.
+     */
+    ShapeIndex(Function<T, Rectangle> boundsOf) {
+        this.boundsOf = boundsOf;
+    }
+
+    synchronized void add(T shape) {
+        if (entries.containsKey(shape)) {
+            return;
+        }
+        Entry entry = new Entry(counter++);
+        entries.put(shape, entry);
+        place(shape, entry);
+    }
+
+    synchronized void remove(Object shape) {
+        Entry entry = entries.remove(shape);
+        if (entry != null) {
+            unplace(shape, entry);
+        }
+    }
+
+    synchronized void clear() {
+        cells.clear();
+        entries.clear();
+    }
+
+    synchronized boolean contains(Object shape) {
+        return entries.containsKey(shape);
+    }
+
+    /**
+     * Takes the new bounds of the shape, it is ignored if the shape is
+     * not in the index.
+     */
+    @SuppressWarnings("unchecked")
+    synchronized void moved(Object shape) {
+        Entry entry = entries.get(shape);
+        if (entry == null) {
+            return;
+        }
+        Rectangle bounds = boundsOf.apply((T) shape);
+        if (bounds.equals(entry.bounds)) {
+            return;
+        }
+        if (col(bounds.x) == entry.col1 && row(bounds.y) == entry.row1
+                && col(bounds.x + bounds.width) == entry.col2
+                && row(bounds.y + bounds.height) == entry.row2) {
+            entry.bounds = bounds;
+            return;
+        }
+        unplace(shape, entry);
+        place((T) shape, entry);
+    }
+
+    /**
+     * @param area to look at.
+     * @param also shapes to add to what is found if they are in the index.
+     * @return shapes whose bounds overlap the area (touching counts), in
+     * the order they were added.
+     */
+    @SuppressWarnings("unchecked")
+    synchronized List<T> query(Rectangle area, Iterable<?> also) {
+        Map<T, Entry> found = new IdentityHashMap<T, Entry>();
+        for (int col = col(area.x); col <= col(area.x + area.width); col++) {
+            for (int row = row(area.y); row <= row(area.y + area.height); row++) {
+                List<T> cell = cells.get(key(col, row));
+                if (cell == null) {
+                    continue;
+                }
+                for (T shape : cell) {
+                    Entry entry = entries.get(shape);
+                    if (overlap(entry.bounds, area)) {
+                        found.put(shape, entry);
+                    }
+                }
+            }
+        }
+        if (also != null) {
+            for (Object shape : also) {
+                Entry entry = entries.get(shape);
+                if (entry != null) {
+                    found.put((T) shape, entry);
+                }
+            }
+        }
+        if (found.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final Map<T, Entry> order = found;
+        List<T> res = new ArrayList<T>(found.keySet());
+        if (res.size() > 1) {
+            Collections.sort(res, new Comparator<T>() {
+                public int compare(T a, T b) {
+                    return Long.compare(order.get(a).order, order.get(b).order);
+                }
+            });
+        }
+        return res;
+    }
+
+    synchronized List<T> query(Rectangle area) {
+        return query(area, null);
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private void place(T shape, Entry entry) {
+        Rectangle bounds = boundsOf.apply(shape);
+        entry.bounds = bounds;
+        entry.col1 = col(bounds.x);
+        entry.row1 = row(bounds.y);
+        entry.col2 = col(bounds.x + bounds.width);
+        entry.row2 = row(bounds.y + bounds.height);
+        for (int col = entry.col1; col <= entry.col2; col++) {
+            for (int row = entry.row1; row <= entry.row2; row++) {
+                Long key = key(col, row);
+                List<T> cell = cells.get(key);
+                if (cell == null) {
+                    cell = new ArrayList<T>(4);
+                    cells.put(key, cell);
+                }
+                cell.add(shape);
+            }
+        }
+    }
+
+    private void unplace(Object shape, Entry entry) {
+        for (int col = entry.col1; col <= entry.col2; col++) {
+            for (int row = entry.row1; row <= entry.row2; row++) {
+                Long key = key(col, row);
+                List<T> cell = cells.get(key);
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 0; i != cell.size(); i++) {
+                    if (cell.get(i) == shape) {
+                        cell.remove(i);
+                        break;
+                    }
+                }
+                if (cell.isEmpty()) {
+                    cells.remove(key);
+                }
+            }
+        }
+    }
+
+    private static boolean overlap(Rectangle a, Rectangle b) {
+        return a.x <= b.x + b.width && b.x <= a.x + a.width
+                && a.y <= b.y + b.height && b.y <= a.y + a.height;
+    }
+
+    private static int col(int x) {
+        return Math.floorDiv(x, CELL_SIZE);
+    }
+
+    private static int row(int y) {
+        return Math.floorDiv(y, CELL_SIZE);
+    }
+
+    private static long key(int col, int row) {
+        return (long) col << 32 | (row & 0xFFFFFFFFL);
+    }
+}
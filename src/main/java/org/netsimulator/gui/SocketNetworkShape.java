@@ -21,7 +21,6 @@ package org.netsimulator.gui;
 import org.netsimulator.net.*;
 
 import java.awt.*;
-import java.util.Timer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,11 +29,10 @@ public class SocketNetworkShape
         implements PhysicalLinkSetUpListener, TransferPacketListener {
 
     private static final Logger LOGGER
-            = Logger.getLogger(Blinker.class.getName());
-
-    private static final Timer TIMER = new Timer("BlinkerThread", true);
+            = Logger.getLogger(SocketNetworkShape.class.getName());
 
     private NetworkDevice device = null;
+    private final NetworkPanel panel;
 
     private static final Image IMAGE = createImageFromResource("/img/socket.gif");
     private static final Image HIGHLIGHTED_IMAGE = createImageFromResource("/img/socket_h.gif");
@@ -42,15 +40,10 @@ public class SocketNetworkShape
     private static final Image LIGHT_ON_IMAGE = createImageFromResource("/img/light_on.gif");
     private static final Image LIGHT_OFF_IMAGE = createImageFromResource("/img/light_off.gif");
 
-
-    /**
-     * During this timeout in milliseconds the light is dark
-     * when it is blinking.
-     */
-    private static final int BLINK_TIMEOUT = 100;
-
-    private boolean rxDark = true;
-    private boolean txDark = true;
+    /** The lights are on while the physical link is up. */
+    private volatile boolean lightsOn = false;
+    /** Slot of the lights in the {@link LedAnimator}. */
+    private final int ledSlot;
     private MediaTracker tracker;
     private PlugNetworkShape connectedPlug = null;
 
@@ -77,6 +70,7 @@ public class SocketNetworkShape
     public SocketNetworkShape(NetworkDevice device, NetworkPanel panel, int id)
             throws InterruptedException {
         this.id = id;
+        this.panel = panel;
 
         tracker = new MediaTracker(panel);
         tracker.addImage(IMAGE, 0);
@@ -88,6 +82,7 @@ public class SocketNetworkShape
         setSize(IMAGE.getWidth(null), IMAGE.getHeight(null));
         this.device = device;
 
+        ledSlot = LedAnimator.register(this);
         device.addTransferPacketListener(this);
     }
 
@@ -97,27 +92,29 @@ public class SocketNetworkShape
     }
 
     public void show(Graphics2D g2d) {
+        boolean rxDark = !lightsOn || LedAnimator.isDark(ledSlot, LedAnimator.RX);
+        boolean txDark = !lightsOn || LedAnimator.isDark(ledSlot, LedAnimator.TX);
         if (rxDark) {
-            g2d.drawImage(LIGHT_OFF_IMAGE, x, y - 5, null);
+            drawSprite(g2d, LIGHT_OFF_IMAGE, x, y - 5);
         } else {
-            g2d.drawImage(LIGHT_ON_IMAGE, x, y - 5, null);
+            drawSprite(g2d, LIGHT_ON_IMAGE, x, y - 5);
 
         }
 
         if (txDark) {
-            g2d.drawImage(LIGHT_OFF_IMAGE, x, y - 10, null);
+            drawSprite(g2d, LIGHT_OFF_IMAGE, x, y - 10);
         } else {
-            g2d.drawImage(LIGHT_ON_IMAGE, x, y - 10, null);
+            drawSprite(g2d, LIGHT_ON_IMAGE, x, y - 10);
 
         }
 
         if (isSelected) {
         }
         if (isHighlighted) {
-            g2d.drawImage(HIGHLIGHTED_IMAGE, x, y, null);
+            drawSprite(g2d, HIGHLIGHTED_IMAGE, x, y);
         }
         if (!isSelected && !isHighlighted) {
-            g2d.drawImage(IMAGE, x, y, null);
+            drawSprite(g2d, IMAGE, x, y);
         }
     }
 
@@ -139,8 +136,7 @@ public class SocketNetworkShape
     }
 
     public synchronized void disconnectPlug() {
-        rxDark = true;
-        txDark = true;
+        lightsOn = false;
         connectedPlug.getNetworkLink().getMedia().
                 removePhysicalLinkSetUpListener(this);
 
@@ -165,47 +161,44 @@ public class SocketNetworkShape
         return (connectedPlug != null);
     }
 
-    private void blinkRxLight() {
-        if (!rxDark && isConnected()) {
-            rxDark = true;
-            TIMER.schedule(new Blinker(this, Blinker.RX), BLINK_TIMEOUT);
-        }
-    }
-
-    private void blinkTxLight() {
-        if (!txDark && isConnected()) {
-            txDark = true;
-            TIMER.schedule(new Blinker(this, Blinker.TX), BLINK_TIMEOUT);
-        }
-    }
-
-    void switchRxLightOn() {
-        rxDark = false;
+    /**
+     * Repaints the lights above the socket.
+     */
+    void repaintLights() {
+        panel.repaintArea(new Rectangle(x, y - 10, width, 10));
     }
 
-    void switchTxLightOn() {
-        txDark = false;
+    /**
+     * Releases the lights and stops listening to the device.
+     */
+    void dispose() {
+        device.removeTransferPacketListener(this);
+        LedAnimator.unregister(ledSlot);
     }
 
     public void phisicalLinkSetUp() {
-        txDark = false;
-        rxDark = false;
+        lightsOn = true;
+        repaintLights();
     }
 
     public void phisicalLinkBrokenDown() {
-        txDark = true;
-        rxDark = true;
+        lightsOn = false;
+        repaintLights();
     }
 
     public void packetTransfered(Packet packet) {
     }
 
     public void packetTransmitted(Packet packet) {
-        blinkTxLight();
+        if (lightsOn) {
+            LedAnimator.packet(ledSlot, LedAnimator.TX);
+        }
     }
 
     public void packetReceived(Packet packet) {
-        blinkRxLight();
+        if (lightsOn) {
+            LedAnimator.packet(ledSlot, LedAnimator.RX);
+        }
     }
 
 }
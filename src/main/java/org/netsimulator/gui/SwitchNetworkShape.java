@@ -22,7 +22,10 @@ package org.netsimulator.gui;
 
 import org.netsimulator.net.NetworkDeviceHolder;
 import org.netsimulator.net.Switch;
+import org.netsimulator.sim.EventScheduler;
+import org.netsimulator.term.CaptureCLICommand;
 import org.netsimulator.term.ShowMACAddressesTableCLICommand;
+import org.netsimulator.term.SpanningTreeCLICommand;
 import org.netsimulator.term.TerminalDialog;
 import org.netsimulator.util.ShapeInfo;
 
@@ -84,9 +87,16 @@ public class SwitchNetworkShape
             sockets.add(socket);
             panel.putOnSocketLayer(socket);
         }        
+        placeSockets();
         
         terminalDialog.getTerminal().
-                addCommand(new ShowMACAddressesTableCLICommand(_switch_));        
+                addCommand(new ShowMACAddressesTableCLICommand(_switch_));
+
+        terminalDialog.getTerminal().
+                addCommand(new SpanningTreeCLICommand(_switch_, EventScheduler.getDefault()));
+
+        terminalDialog.getTerminal().
+                addCommand(new CaptureCLICommand(_switch_, EventScheduler.getDefault()));
     }
    
 
@@ -151,7 +161,11 @@ public class SwitchNetworkShape
         
         //terminalDialog = new TerminalDialog(panel.getMainFrame());
         terminalDialog.getTerminal().
-                addCommand(new ShowMACAddressesTableCLICommand(_switch_));        
+                addCommand(new ShowMACAddressesTableCLICommand(_switch_));
+        terminalDialog.getTerminal().
+                addCommand(new SpanningTreeCLICommand(_switch_, EventScheduler.getDefault()));
+        terminalDialog.getTerminal().
+                addCommand(new CaptureCLICommand(_switch_, EventScheduler.getDefault()));        
     }
     
     
@@ -161,20 +175,53 @@ public class SwitchNetworkShape
     
     public void show(Graphics2D g2d)
     {
-        if(isSelected) g2d.drawImage(selectedImage, x, y, null);
-        if(!isSelected) g2d.drawImage(image, x, y, null);
+        if(isSelected) drawSprite(g2d, selectedImage, x, y);
+        if(!isSelected) drawSprite(g2d, image, x, y);
         
+        if(isDetailed(g2d))
+        {
+            for(SocketNetworkShape buf : sockets)
+            {
+                buf.show(g2d);
+            }
+            drawLabel(g2d, name, x, y-5);
+        }
+    }
+    
+    
+    @Override
+    public void setLocation(int x, int y)
+    {
+        super.setLocation(x, y);
+        placeSockets();
+    }
+    
+    
+    @Override
+    public void setBounds(int x, int y, int width, int height)
+    {
+        super.setBounds(x, y, width, height);
+        placeSockets();
+    }
+    
+    
+    /**
+     * Puts the sockets in a row on the switch, they follow its moves
+     * whether the switch is painted or not.
+     */
+    private void placeSockets()
+    {
+        if(sockets == null)
+        {
+            return; // called by the constructor
+        }
         int j=0;
-        for(Iterator<SocketNetworkShape> i = sockets.iterator(); i.hasNext(); )
+        for(SocketNetworkShape buf : sockets)
         {
-            SocketNetworkShape buf = i.next();
             buf.setLocation(
                     x+shapeInfo.getSocketsX()+shapeInfo.getSocketsStep()*j++,
                     y+shapeInfo.getSocketsY());
-            buf.show(g2d);
         }
-        
-        g2d.drawString(name, x, y-5);
     }
     
     
@@ -221,7 +268,7 @@ public class SwitchNetworkShape
             selectedShape.setLocation(e.getX()+last_x,
                                       e.getY()+last_y);
 
-            for(NetworkShape dev : panel.getDevicesLayer())
+            for(NetworkShape dev : panel.getDevicesAt(this))
             {
                 if(!this.equals(dev) && intersects(dev))
                 {
@@ -306,6 +353,7 @@ public class SwitchNetworkShape
     public void addSocket(SocketNetworkShape shape)
     {
         sockets.add(shape);
+        placeSockets();
         panel.putOnSocketLayer(shape);
     }
            
@@ -18,83 +18,237 @@
  */
 package org.netsimulator.net;
 
-import java.util.*;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import org.netsimulator.util.TimingWheel;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * ARP cache of an interface. It is keyed on the primitive IPv4 address
+ * ({@link IP4Address#toIntValue()}).
+ * <p>
+ * Lookups are lock free and allocation free: they probe an open addressing
+ * table whose slots are only ever filled, so any number of threads may
+ * forward packets through the same interface and no lookup is ever lost.
+ * Refreshing an address is a compare and set of its time, adding an address
+ * takes a lock but copies nothing unless the table has to grow.
+ * <p>
+ * An entry is valid within the timeout since it was resolved, it is checked
+ * on every read. Expired entries are purged by the shared timing wheel: the
+ * entry is marked dead and stays in its slot until the table is rebuilt,
+ * resolving the same address again takes the slot over.
+ */
 public class ARPCache {
     
     private static final Logger logger = Logger.getLogger( ARPCache.class.getName() );
-    private final Map<IP4Address, ResolvedAddress> cache;
-    
-    private final Lock lock = new ReentrantLock();
+    private static final int INITIAL_CAPACITY = 16;
+    /** Resolved time of a purged entry. */
+    private static final long DEAD = Long.MIN_VALUE;
+
+    private final TimingWheel wheel;
+    private final long timeoutMillis;
+    private volatile Table table = new Table(INITIAL_CAPACITY);
+    // guarded by this
+    private int live;
+    private int used;
     
-    private static class ResolvedAddress {
-        final MACAddress resolvedAddress;
-        final long resolvedTime;
-        public ResolvedAddress(MACAddress resolvedAddress, long resolvedTime) {
+    /**
+     * The entry is aged by the timing wheel. Refreshing the entry only
+     * updates the time, on expiry the entry is rescheduled if it has been
+     * refreshed since.
+     */
+    private final class ResolvedAddress extends TimingWheel.Timeout {
+        final int key;
+        volatile MACAddress resolvedAddress;
+        final AtomicLong resolvedTime;
+        public ResolvedAddress(int key, MACAddress resolvedAddress, long resolvedTime) {
+            this.key = key;
             this.resolvedAddress = resolvedAddress;
-            this.resolvedTime = resolvedTime;
+            this.resolvedTime = new AtomicLong(resolvedTime);
+        }
+
+        /**
+         * @return false if the entry is dead, it's never refreshed then.
+         */
+        boolean refresh(MACAddress address, long now) {
+            while (true) {
+                long time = resolvedTime.get();
+                if (time == DEAD) {
+                    return false;
+                }
+                resolvedAddress = address;
+                if (resolvedTime.compareAndSet(time, now)) {
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        protected void expire() {
+            ARPCache.this.expire(this);
         }
     }
 
-    private final int timeout;
+    /**
+     * Open addressing table of the entries. Its slots are filled or taken
+     * over by a new entry of the same address under the cache lock, never
+     * emptied.
+     */
+    private static final class Table {
+        final AtomicReferenceArray<ResolvedAddress> entries;
+        final int mask;
+
+        Table(int capacity) {
+            entries = new AtomicReferenceArray<ResolvedAddress>(capacity);
+            mask = capacity - 1;
+        }
+
+        /**
+         * @return slot of the address or the empty slot it would take.
+         */
+        int slot(int key) {
+            int slot = hash(key) & mask;
+            ResolvedAddress entry;
+            while ((entry = entries.get(slot)) != null && entry.key != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        ResolvedAddress find(int key) {
+            return entries.get(slot(key));
+        }
+
+        private static int hash(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
 
     /**
      * Creates a new instance of ARPCache. It is thread safe.
      *
      * @param timeout in seconds. Within this period of time since putting to the cache
-     * entities will remain in the cache. If this timeout is exceeded for an entity
-     * it becomes available for purging from the cache during {@link clean()} invocation.
+     * entities will remain in the cache. Then they are purged from the cache
+     * by the shared timing wheel.
      */
     public ARPCache(int timeout) {
-        cache = new HashMap<IP4Address, ResolvedAddress>();
-        this.timeout = timeout;
+        this(timeout, TimingWheel.getDefault());
+    }
+
+    public ARPCache(int timeout, TimingWheel wheel) {
+        this.timeoutMillis = TimeUnit.SECONDS.toMillis(timeout);
+        this.wheel = wheel;
     }
 
     public void put(IP4Address key, MACAddress value) {
-        if(lock.tryLock()) {
-            try{
-                cache.put(key, new ResolvedAddress(value, System.currentTimeMillis()));
-            } finally {
-                lock.unlock();
+        long now = System.currentTimeMillis();
+        ResolvedAddress addr = table.find(key.toIntValue());
+        if (addr != null && addr.refresh(value, now)) {
+            return;
+        }
+        synchronized (this) {
+            Table t = table;
+            int slot = t.slot(key.toIntValue());
+            addr = t.entries.get(slot);
+            if (addr != null && addr.refresh(value, now)) {
+                return;
+            }
+            ResolvedAddress fresh = new ResolvedAddress(key.toIntValue(), value, now);
+            live++;
+            if (addr == null) {
+                used++;
             }
+            if (used * 2 > t.mask + 1) {
+                rebuild(fresh);
+            } else {
+                t.entries.set(slot, fresh);
+            }
+            wheel.schedule(fresh, timeoutMillis, TimeUnit.MILLISECONDS);
         }
     }
 
+    /**
+     * Copies the live entries (and the new one) into a new table, dead
+     * entries are dropped. It is sized for the live entries only.
+     */
+    private void rebuild(ResolvedAddress add) {
+        int capacity = INITIAL_CAPACITY;
+        while (live * 4 > capacity) {
+            capacity *= 2;
+        }
+        Table old = table;
+        Table t = new Table(capacity);
+        for (int i = 0; i <= old.mask; i++) {
+            ResolvedAddress entry = old.entries.get(i);
+            if (entry != null && entry.resolvedTime.get() != DEAD && entry.key != add.key) {
+                t.entries.set(t.slot(entry.key), entry);
+            }
+        }
+        t.entries.set(t.slot(add.key), add);
+        used = live;
+        table = t;
+    }
+
     public MACAddress get(IP4Address key) {
-        MACAddress resolvedAddress = null;
-        if(lock.tryLock()) {
-            try {
-                resolvedAddress = cache.get(key) == null ? null : cache.get(key).resolvedAddress;
-            } finally {
-                lock.unlock();
+        return get(key.toIntValue());
+    }
+
+    /**
+     * @param key IPv4 address.
+     * @return resolved address or null if it is not resolved or expired.
+     */
+    public MACAddress get(int key) {
+        ResolvedAddress addr = table.find(key);
+        if (addr == null) {
+            return null;
+        }
+        long time = addr.resolvedTime.get();
+        if (time == DEAD || System.currentTimeMillis() - time >= timeoutMillis) {
+            return null;
+        }
+        return addr.resolvedAddress;
+    }
+
+    private synchronized void expire(ResolvedAddress addr) {
+        while (true) {
+            long time = addr.resolvedTime.get();
+            if (time == DEAD) {
+                return; // cleared meanwhile
+            }
+            long age = System.currentTimeMillis() - time;
+            if (age < timeoutMillis) {
+                wheel.schedule(addr, timeoutMillis - age, TimeUnit.MILLISECONDS);
+                return;
+            }
+            // a refresh racing with it either wins or sees the entry dead
+            if (addr.resolvedTime.compareAndSet(time, DEAD)) {
+                logger.log(Level.FINEST, "{0} -> {1} time sinse has been resolved {2} ms, going to be removed.", new Object[]{new IP4Address(addr.key), addr.resolvedAddress, age});
+                live--;
+                return;
             }
         }
-        return resolvedAddress;
     }
 
     /**
-     * Clean records
+     * Removes all the records and releases their timing wheel slots.
      */
-    public void clean() {
-        if(lock.tryLock()) {
-            logger.finest("Clean ARP cache job is running.");
-            try {
-                for (IP4Address ip4Address: cache.keySet()) {               
-                    ResolvedAddress addr = cache.get(ip4Address);
-                    long offset = (System.currentTimeMillis() - addr.resolvedTime) / 1000;
-                    if (offset > timeout) {
-                        logger.log(Level.FINEST, "{0} -> {1} time sinse has been resolved {2}, going to be removed.", new Object[]{ip4Address, addr.resolvedAddress, offset});
-                        cache.remove(ip4Address);
-                    }
-                }
-            } finally {
-                lock.unlock();
+    public synchronized void clear() {
+        Table t = table;
+        for (int i = 0; i <= t.mask; i++) {
+            ResolvedAddress addr = t.entries.get(i);
+            if (addr != null && addr.resolvedTime.getAndSet(DEAD) != DEAD) {
+                wheel.cancel(addr);
             }
         }
+        table = new Table(INITIAL_CAPACITY);
+        live = 0;
+        used = 0;
     }
 
     /**
@@ -102,12 +256,18 @@ public class ARPCache {
      * @return resolved addresses.
      */    
     public List<IP4Address> getAddresses() {
-        List<IP4Address> res = Collections.EMPTY_LIST;
-        lock.lock();
-        try {
-            res = new LinkedList<IP4Address>(cache.keySet());
-        } finally {
-            lock.unlock();
+        List<IP4Address> res = new LinkedList<IP4Address>();
+        long now = System.currentTimeMillis();
+        Table t = table;
+        for (int i = 0; i <= t.mask; i++) {
+            ResolvedAddress addr = t.entries.get(i);
+            if (addr == null) {
+                continue;
+            }
+            long time = addr.resolvedTime.get();
+            if (time != DEAD && now - time < timeoutMillis) {
+                res.add(new IP4Address(addr.key));
+            }
         }
         return res;
     }
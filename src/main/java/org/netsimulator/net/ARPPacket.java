@@ -19,6 +19,8 @@ Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
 
 package org.netsimulator.net;
 
+import java.nio.ByteBuffer;
+
 /**
  * The class implements ARP packet. 
  *
@@ -28,6 +30,11 @@ public class ARPPacket implements Content
 {
     public static final int REQUEST = 1;
     public static final int REPLAY  = 2;
+
+    /** Size of an ARP packet for IPv4 over Ethernet. */
+    public static final int SIZE = 28;
+    /** Hardware type of Ethernet. */
+    public static final int HARDWARE_ETHERNET = 1;
     
     private MACAddress sourceMacAddress;
     private MACAddress resolvedAddress;
@@ -81,7 +88,80 @@ public class ARPPacket implements Content
     
     public byte[] toBytesArray()
     {
-        return null;
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+        encode(buffer);
+        return buffer.array();
+    }
+
+
+    public int getSize()
+    {
+        return SIZE;
+    }
+
+
+    /**
+     * Writes the packet as it is described in RFC 826. A request goes
+     * from the sender to the target whose IP address is to be resolved,
+     * a replay goes from the resolved one back to the sender of the request.
+     * Protocol addresses the packet does not keep are zeros.
+     */
+    public int encode(ByteBuffer buffer)
+    {
+        boolean replay = operation == REPLAY;
+        buffer.putShort((short)HARDWARE_ETHERNET)
+              .putShort((short)Protocols.IP)
+              .put((byte)6)
+              .put((byte)4)
+              .putShort((short)operation);
+        MACAddress.encode(replay ? resolvedAddress : sourceMacAddress, buffer);
+        putIP4Address(buffer, replay ? addressToResolve : null);
+        MACAddress.encode(replay ? sourceMacAddress : null, buffer);
+        putIP4Address(buffer, replay ? null : addressToResolve);
+        return SIZE;
+    }
+
+
+    /**
+     * Reads an ARP packet for IPv4 over Ethernet.
+     * @throws IllegalArgumentException if the packet is of another kind.
+     */
+    public static ARPPacket decode(ByteBuffer buffer)
+    {
+        int hardware = buffer.getShort() & 0xFFFF;
+        int protocol = buffer.getShort() & 0xFFFF;
+        int hardwareSize = buffer.get();
+        int protocolSize = buffer.get();
+        int operation = buffer.getShort() & 0xFFFF;
+        if(hardware != HARDWARE_ETHERNET || protocol != Protocols.IP ||
+           hardwareSize != 6 || protocolSize != 4 ||
+           (operation != REQUEST && operation != REPLAY))
+        {
+            throw new IllegalArgumentException("Unsupported ARP packet.");
+        }
+        MACAddress senderMac = MACAddress.decode(buffer);
+        IP4Address senderIP = new IP4Address(buffer.getInt());
+        MACAddress targetMac = MACAddress.decode(buffer);
+        IP4Address targetIP = new IP4Address(buffer.getInt());
+        try
+        {
+            if(operation == REQUEST)
+            {
+                return new ARPPacket(senderMac, targetIP, REQUEST);
+            }
+            ARPPacket packet = new ARPPacket(targetMac, senderIP, REPLAY);
+            packet.setResolvedAddress(senderMac);
+            return packet;
+        }catch(AddressException ae)
+        {
+            throw new IllegalArgumentException(ae);
+        }
+    }
+
+
+    private static void putIP4Address(ByteBuffer buffer, IP4Address address)
+    {
+        buffer.putInt(address == null ? 0 : address.toIntValue());
     }
 
     
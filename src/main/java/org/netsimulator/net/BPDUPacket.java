@@ -0,0 +1,213 @@
+/*
+NET-Simulator -- Network simulator.
+Copyright (C) 2006 Maxim Tereshin <maxim-tereshin@yandex.ru>
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along
+with this program; if not, write to the Free Software Foundation,
+Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+*/
+
+package org.netsimulator.net;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Bridge protocol data unit of the spanning tree protocol (IEEE 802.1D).
+ * On the wire it is an LLC frame (DSAP and SSAP 0x42) addressed to
+ * {@link #GROUP_ADDRESS}, the ether type of the frame is its length.
+ * The times are in 1/256 of a second, as on the wire.
+ */
+public class BPDUPacket implements Content {
+
+    /** All the bridges listen to it. */
+    public static final MACAddress GROUP_ADDRESS = new MACAddress(0x0180C2000000L);
+
+    public static final int CONFIG = 0x00;
+    public static final int TOPOLOGY_CHANGE_NOTIFICATION = 0x80;
+
+    /** Flags of the configuration BPDU. */
+    public static final int TOPOLOGY_CHANGE = 0x01;
+    public static final int TOPOLOGY_CHANGE_ACK = 0x80;
+
+    /** Time units per second. */
+    public static final int TIME_UNITS = 256;
+
+    static final int LLC_SAP = 0x42;
+    static final int LLC_UI = 0x03;
+    static final int LLC_SIZE = 3;
+    static final int CONFIG_SIZE = 35;
+    static final int TCN_SIZE = 4;
+
+    private final int type;
+    private final int flags;
+    private final long rootId;
+    private final int rootPathCost;
+    private final long bridgeId;
+    private final int portId;
+    private final int messageAge;
+    private final int maxAge;
+    private final int helloTime;
+    private final int forwardDelay;
+
+    /**
+     * Creates a topology change notification.
+     */
+    public BPDUPacket() {
+        this(TOPOLOGY_CHANGE_NOTIFICATION, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Creates a configuration BPDU.
+     */
+    public BPDUPacket(int flags, long rootId, int rootPathCost, long bridgeId, int portId,
+            int messageAge, int maxAge, int helloTime, int forwardDelay) {
+        this(CONFIG, flags, rootId, rootPathCost, bridgeId, portId,
+                messageAge, maxAge, helloTime, forwardDelay);
+    }
+
+    private BPDUPacket(int type, int flags, long rootId, int rootPathCost, long bridgeId, int portId,
+            int messageAge, int maxAge, int helloTime, int forwardDelay) {
+        this.type = type;
+        this.flags = flags;
+        this.rootId = rootId;
+        this.rootPathCost = rootPathCost;
+        this.bridgeId = bridgeId;
+        this.portId = portId;
+        this.messageAge = messageAge;
+        this.maxAge = maxAge;
+        this.helloTime = helloTime;
+        this.forwardDelay = forwardDelay;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    public long getRootId() {
+        return rootId;
+    }
+
+    public int getRootPathCost() {
+        return rootPathCost;
+    }
+
+    public long getBridgeId() {
+        return bridgeId;
+    }
+
+    public int getPortId() {
+        return portId;
+    }
+
+    public int getMessageAge() {
+        return messageAge;
+    }
+
+    public int getMaxAge() {
+        return maxAge;
+    }
+
+    public int getHelloTime() {
+        return helloTime;
+    }
+
+    public int getForwardDelay() {
+        return forwardDelay;
+    }
+
+    @Override
+    public byte[] toBytesArray() {
+        ByteBuffer buffer = ByteBuffer.allocate(getSize());
+        encode(buffer);
+        return buffer.array();
+    }
+
+    /**
+     * @return size of the BPDU with the LLC header.
+     */
+    @Override
+    public int getSize() {
+        return LLC_SIZE + (type == CONFIG ? CONFIG_SIZE : TCN_SIZE);
+    }
+
+    @Override
+    public int encode(ByteBuffer buffer) {
+        buffer.put((byte) LLC_SAP)
+                .put((byte) LLC_SAP)
+                .put((byte) LLC_UI)
+                .putShort((short) 0)        // protocol identifier
+                .put((byte) 0)              // version
+                .put((byte) type);
+        if (type == CONFIG) {
+            buffer.put((byte) flags)
+                    .putLong(rootId)
+                    .putInt(rootPathCost)
+                    .putLong(bridgeId)
+                    .putShort((short) portId)
+                    .putShort((short) messageAge)
+                    .putShort((short) maxAge)
+                    .putShort((short) helloTime)
+                    .putShort((short) forwardDelay);
+        }
+        return getSize();
+    }
+
+    /**
+     * Reads the BPDU which follows the header of an 802.3 frame.
+     * @param length of the frame data.
+     * @throws IllegalArgumentException if it is not a BPDU.
+     */
+    static BPDUPacket decode(ByteBuffer buffer, int length) {
+        int start = buffer.position();
+        if (length < LLC_SIZE + TCN_SIZE || length > buffer.remaining()
+                || (buffer.get(start) & 0xFF) != LLC_SAP
+                || (buffer.get(start + 1) & 0xFF) != LLC_SAP
+                || (buffer.get(start + 2) & 0xFF) != LLC_UI
+                || buffer.getShort(start + LLC_SIZE) != 0) {
+            throw new IllegalArgumentException("Unsupported LLC frame.");
+        }
+        int type = buffer.get(start + LLC_SIZE + 3) & 0xFF;
+        if (type == TOPOLOGY_CHANGE_NOTIFICATION) {
+            buffer.position(start + LLC_SIZE + TCN_SIZE);
+            return new BPDUPacket();
+        }
+        if (type != CONFIG || length < LLC_SIZE + CONFIG_SIZE) {
+            throw new IllegalArgumentException("Unsupported BPDU type " + type + ".");
+        }
+        buffer.position(start + LLC_SIZE + TCN_SIZE);
+        BPDUPacket bpdu = new BPDUPacket(
+                buffer.get() & 0xFF,
+                buffer.getLong(),
+                buffer.getInt(),
+                buffer.getLong(),
+                buffer.getShort() & 0xFFFF,
+                buffer.getShort() & 0xFFFF,
+                buffer.getShort() & 0xFFFF,
+                buffer.getShort() & 0xFFFF,
+                buffer.getShort() & 0xFFFF);
+        return bpdu;
+    }
+
+    @Override
+    public String toString() {
+        if (type == TOPOLOGY_CHANGE_NOTIFICATION) {
+            return "BPDU TCN";
+        }
+        return "BPDU root " + SpanningTree.toString(rootId) + " cost " + rootPathCost
+                + " bridge " + SpanningTree.toString(bridgeId) + " port " + Integer.toHexString(portId);
+    }
+}
@@ -19,6 +19,7 @@ Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
 
 package org.netsimulator.net;
 
+import java.nio.ByteBuffer;
 
 /**
  * Version 1, 2004-06-30
@@ -29,4 +30,19 @@ package org.netsimulator.net;
 public interface Content
 {
     byte[] toBytesArray();
+
+    /**
+     * @return size in bytes the content takes on the wire.
+     */
+    int getSize();
+
+    /**
+     * Writes the content the way it goes over the wire at the position of
+     * the buffer and moves the position past it. The buffer must be in
+     * network byte order (big endian, the default of ByteBuffer) and have
+     * at least {@link #getSize()} bytes remaining. Nothing is allocated.
+     * @param buffer to write to.
+     * @return number of written bytes, it is {@link #getSize()}.
+     */
+    int encode(ByteBuffer buffer);
 }
\ No newline at end of file
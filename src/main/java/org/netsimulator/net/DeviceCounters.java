@@ -0,0 +1,137 @@
+/*
+NET-Simulator -- Network simulator.
+Copyright (C) 2006 Maxim Tereshin <maxim-tereshin@yandex.ru>
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along
+with this program; if not, write to the Free Software Foundation,
+Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+*/
+
+
+package org.netsimulator.net;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Packet and byte counters of a network device. They are striped 64-bit
+ * counters, so the forwarding threads updating them don't contend with
+ * each other, and a {@link #snapshot()} taken by the UI doesn't block them.
+ */
+public final class DeviceCounters {
+
+    private final LongAdder rxPackets = new LongAdder();
+    private final LongAdder rxBytes = new LongAdder();
+    private final LongAdder rxErrors = new LongAdder();
+    private final LongAdder rxDropped = new LongAdder();
+    private final LongAdder txPackets = new LongAdder();
+    private final LongAdder txBytes = new LongAdder();
+    private final LongAdder txErrors = new LongAdder();
+    private final LongAdder txDropped = new LongAdder();
+
+    /**
+     * Values of the counters at some moment. Every value is exact, though
+     * the values are read one after another while the device may be
+     * counting.
+     */
+    public static final class Snapshot {
+        private final long rxPackets;
+        private final long rxBytes;
+        private final long rxErrors;
+        private final long rxDropped;
+        private final long txPackets;
+        private final long txBytes;
+        private final long txErrors;
+        private final long txDropped;
+
+        private Snapshot(DeviceCounters c) {
+            rxPackets = c.rxPackets.sum();
+            rxBytes = c.rxBytes.sum();
+            rxErrors = c.rxErrors.sum();
+            rxDropped = c.rxDropped.sum();
+            txPackets = c.txPackets.sum();
+            txBytes = c.txBytes.sum();
+            txErrors = c.txErrors.sum();
+            txDropped = c.txDropped.sum();
+        }
+
+        public long getRXPackets() {
+            return rxPackets;
+        }
+
+        public long getRXBytes() {
+            return rxBytes;
+        }
+
+        public long getRXPacketsErrors() {
+            return rxErrors;
+        }
+
+        public long getRXDroped() {
+            return rxDropped;
+        }
+
+        public long getTXPackets() {
+            return txPackets;
+        }
+
+        public long getTXBytes() {
+            return txBytes;
+        }
+
+        public long getTXPacketsErrors() {
+            return txErrors;
+        }
+
+        public long getTXDroped() {
+            return txDropped;
+        }
+    }
+
+    /**
+     * Counts a received packet.
+     * @param bytes size of the packet.
+     */
+    public void received(int bytes) {
+        rxPackets.increment();
+        rxBytes.add(bytes);
+    }
+
+    /**
+     * Counts a transmitted packet.
+     * @param bytes size of the packet.
+     */
+    public void transmitted(int bytes) {
+        txPackets.increment();
+        txBytes.add(bytes);
+    }
+
+    public void rxError() {
+        rxErrors.increment();
+    }
+
+    public void txError() {
+        txErrors.increment();
+    }
+
+    public void rxDropped() {
+        rxDropped.increment();
+    }
+
+    public void txDropped(int packets) {
+        txDropped.add(packets);
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+}
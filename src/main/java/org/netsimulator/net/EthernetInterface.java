@@ -20,13 +20,13 @@ Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
 package org.netsimulator.net;
 
 
-import org.netsimulator.util.ConfigurableThreadFactory;
 import org.netsimulator.util.IdGenerator;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -38,11 +38,8 @@ public class EthernetInterface
             Logger.getLogger(EthernetInterface.class.getName());
 
     public static final int ARP_CACHE_CLEAN_TIMEOUT = 10; // 10 sec.    
-    
-    // 10 threads for all the NetSimulator. 
-    // Probaly it makes sense to have 1 thread per router?
-    private static final ScheduledExecutorService arpCacheCleanExecutorService = 
-                                  Executors.newScheduledThreadPool(10, new ConfigurableThreadFactory("ArpCacheCleanup-"));
+    public static final int ARP_RESOLVE_TIMEOUT = 1; // 1 sec.
+    public static final int ARP_PENDING_QUEUE_SIZE = 64; // packets per destination
     
     private int id;
     private IdGenerator idGenerator;   
@@ -55,18 +52,27 @@ public class EthernetInterface
     private int status;
     private int bandwidth;
     private String encap;
-    private int rxBytes;
-    private int txBytes;
-    private int rxPackets;
-    private int txPackets;
-    private int rxPacketsErrors;
-    private int txPacketsErrors;
-    private int rxDroped;
-    private int txDroped;
+    private final DeviceCounters counters = new DeviceCounters();
     private ARPCache arpCache;
+    private final Map<Integer, PendingPackets> pending;
     private String name;
     private ArrayList<TransferPacketListener> transferPacketListeners;
 
+    /**
+     * Packets waiting for the next hop address to be resolved.
+     * Once the queue is closed (resolved or expired) nothing can be
+     * added to it.
+     */
+    private static final class PendingPackets {
+        final IP4Address address;
+        final ArrayDeque<IP4Packet> packets = new ArrayDeque<>();
+        boolean closed;
+
+        PendingPackets(IP4Address address) {
+            this.address = address;
+        }
+    }
+
     
     public EthernetInterface(
             IdGenerator idGenerator, 
@@ -96,13 +102,7 @@ public class EthernetInterface
         status = Interface.DOWN;
         
         arpCache = new ARPCache(ARP_CACHE_CLEAN_TIMEOUT);
-        
-        arpCacheCleanExecutorService.scheduleAtFixedRate(new Runnable() {
-            @Override
-            public void run() {
-                arpCache.clean();
-            }
-        }, ARP_CACHE_CLEAN_TIMEOUT, ARP_CACHE_CLEAN_TIMEOUT, TimeUnit.SECONDS);
+        pending = new ConcurrentHashMap<>();
         
         transferPacketListeners = new ArrayList<TransferPacketListener>();
     }
@@ -158,7 +158,7 @@ public class EthernetInterface
         if(router == null /*||
            !(packet instanceof Layer2Packet)*/)
         {
-            rxDroped++;
+            counters.rxDropped();
             return;
         }
 
@@ -182,7 +182,7 @@ public class EthernetInterface
                             {
                                 ae.printStackTrace();
                             }
-                            rxPackets++;
+                            counters.received(l2packet.getSize());
                             break;
                         case ARPPacket.REPLAY :
                             try
@@ -192,20 +192,20 @@ public class EthernetInterface
                             {
                                 ae.printStackTrace();
                             }
-                            rxPackets++;
+                            counters.received(l2packet.getSize());
                             break;
                         default :
-                            rxPacketsErrors++;
+                            counters.rxError();
                     }
                     break;
                     
                 case Protocols.IP :
                     router.routePacket((Packet)l2packet.getData());
-                    rxPackets++;
+                    counters.received(l2packet.getSize());
                     break;
 
                 default :
-                    rxPacketsErrors++;
+                    counters.rxError();
             }
         }
         
@@ -224,8 +224,12 @@ public class EthernetInterface
         
         if(media != null)
         {
-            media.transmitPacket(this, packet);
-            txPackets++;
+            if(!media.transmitPacket(this, packet))
+            {
+                counters.txDropped(1);
+                return;
+            }
+            counters.transmitted(packet.getSize());
             for(Iterator<TransferPacketListener> i = transferPacketListeners.iterator(); i.hasNext(); )
             {
                 TransferPacketListener listener = i.next();
@@ -234,7 +238,7 @@ public class EthernetInterface
             }            
         }else
         {
-            txPacketsErrors++;
+            counters.txError();
         }
     }
 
@@ -410,45 +414,9 @@ public class EthernetInterface
         return encap;
     }
 
-    public int getRXBytes()
-    {
-        return rxBytes;
-    }
-
-    public int getRXDroped()
-    {
-        return rxDroped;
-    }
-
-    public int getRXPackets()
-    {
-        return rxPackets;
-    }
-
-    public int getRXPacketsErrors()
-    {
-        return rxPacketsErrors;
-    }
-    
-    
-    public int getTXBytes()
-    {
-        return txBytes;
-    }
-
-    public int getTXDroped()
-    {
-        return txDroped;
-    }
-
-    public int getTXPackets()
+    public DeviceCounters.Snapshot getStatistics()
     {
-        return txPackets;
-    }
-
-    public int getTXPacketsErrors()
-    {
-        return txPacketsErrors;
+        return counters.snapshot();
     }
     
     
@@ -459,25 +427,26 @@ public class EthernetInterface
 
     
     
+    /**
+     * Looks the address up in the ARP cache. It never blocks, if the
+     * address is not resolved yet an ARP request is sent (unless one is
+     * already outstanding) and null is returned.
+     * @param ip4address to resolve.
+     * @return resolved address or null.
+     */
     public MACAddress resolveAddress(IP4Address ip4address)
     {
         MACAddress macaddress = arpCache.get(ip4address);
         
-        if( macaddress == null )
+        if( macaddress == null && !pending.containsKey(ip4address.toIntValue()) )
         {
             try
             {
                 makeArpRequest(ip4address);
-                // Wait the response here?
-                Thread.sleep(100);
             }catch(AddressException ae)
             {
-                ae.printStackTrace();
-            }catch(InterruptedException ie)
-            {
-                ie.printStackTrace();
+                LOGGER.log(Level.SEVERE, "Unexpected exception.", ae);
             }
-            macaddress = arpCache.get(ip4address);
         }
 
         return macaddress;
@@ -534,6 +503,7 @@ public class EthernetInterface
     throws AddressException
     {
         arpCache.put (arpPacket.getAddressToResolve(), arpPacket.getResolvedAddress());
+        flushPendingPackets(arpPacket.getAddressToResolve(), arpPacket.getResolvedAddress());
     }
 
     
@@ -542,6 +512,15 @@ public class EthernetInterface
     {
         return arpCache;
     }
+
+
+    /**
+     * Releases resources held by the interface once it is deleted.
+     */
+    public void dispose()
+    {
+        arpCache.clear();
+    }
     
     
     
@@ -555,16 +534,30 @@ public class EthernetInterface
     
     
     
+    /**
+     * Sends the packet to the next hop. If the next hop address is not in
+     * the ARP cache the packet is parked until the ARP replay comes,
+     * it does not block the caller. Parked packets are dropped if the
+     * address is not resolved within {@link #ARP_RESOLVE_TIMEOUT}.
+     * @param packet to send.
+     * @param destination the next hop.
+     */
     public void transmitPacket(IP4Packet packet, IP4Address destination)
     {
-        MACAddress macAddress = resolveAddress(destination);
+        MACAddress macAddress = arpCache.get(destination);
         
         if(macAddress == null)
         {
-            LOGGER.info(getId()+" Can not resolv MACAddress for: "+destination);
+            enqueuePendingPacket(packet, destination);
             return;
         }
         
+        transmitPacket(packet, macAddress);
+    }
+
+
+    private void transmitPacket(IP4Packet packet, MACAddress macAddress)
+    {
         Layer2Packet l2packet = null;
         try
         {
@@ -581,6 +574,110 @@ public class EthernetInterface
         
         transmitPacket(l2packet);
     }
+
+
+    private void enqueuePendingPacket(IP4Packet packet, IP4Address destination)
+    {
+        Media m = media;
+        if(getStatus() == Interface.DOWN || m == null)
+        {
+            counters.txError();
+            return;
+        }
+
+        Integer key = destination.toIntValue();
+        PendingPackets queue;
+        boolean created;
+        while(true)
+        {
+            created = false;
+            queue = pending.get(key);
+            if(queue == null)
+            {
+                PendingPackets fresh = new PendingPackets(destination);
+                queue = pending.putIfAbsent(key, fresh);
+                if(queue == null)
+                {
+                    queue = fresh;
+                    created = true;
+                }
+            }
+            synchronized(queue)
+            {
+                if(queue.closed)
+                {
+                    continue; // resolved or expired just now
+                }
+                if(queue.packets.size() >= ARP_PENDING_QUEUE_SIZE)
+                {
+                    counters.txDropped(1);
+                    LOGGER.log(Level.FINE, "{0}: too many packets waiting for {1}, packet dropped", new Object[]{getName(), destination});
+                    return;
+                }
+                queue.packets.add(packet);
+            }
+            break;
+        }
+
+        if(created)
+        {
+            final PendingPackets expiring = queue;
+            m.getScheduler(this).schedule(ARP_RESOLVE_TIMEOUT, TimeUnit.SECONDS, () -> expirePendingPackets(key, expiring));
+            try
+            {
+                makeArpRequest(destination);
+            }catch(AddressException ae)
+            {
+                LOGGER.log(Level.SEVERE, "Unexpected exception.", ae);
+            }
+        }
+
+        // The replay might have come while the packet was being parked.
+        MACAddress resolved = arpCache.get(destination);
+        if(resolved != null)
+        {
+            flushPendingPackets(destination, resolved);
+        }
+    }
+
+
+    private void flushPendingPackets(IP4Address address, MACAddress resolved)
+    {
+        PendingPackets queue = pending.remove(address.toIntValue());
+        if(queue == null)
+        {
+            return;
+        }
+        IP4Packet packets[];
+        synchronized(queue)
+        {
+            queue.closed = true;
+            packets = queue.packets.toArray(new IP4Packet[queue.packets.size()]);
+            queue.packets.clear();
+        }
+        for(IP4Packet packet : packets)
+        {
+            transmitPacket(packet, resolved);
+        }
+    }
+
+
+    private void expirePendingPackets(Integer key, PendingPackets queue)
+    {
+        if(!pending.remove(key, queue))
+        {
+            return;
+        }
+        int dropped;
+        synchronized(queue)
+        {
+            queue.closed = true;
+            dropped = queue.packets.size();
+            queue.packets.clear();
+        }
+        counters.txDropped(dropped);
+        LOGGER.info(getId()+" Can not resolv MACAddress for: "+queue.address+", "+dropped+" packet(s) dropped");
+    }
    
     
     
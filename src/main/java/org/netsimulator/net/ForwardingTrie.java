@@ -0,0 +1,201 @@
+/*
+NET-Simulator -- Network simulator.
+Copyright (C) 2006 Maxim Tereshin <maxim-tereshin@yandex.ru>
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along
+with this program; if not, write to the Free Software Foundation,
+Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+*/
+
+package org.netsimulator.net;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable snapshot of a routing table: the rows in the order of their
+ * priority and a path compressed binary (Patricia) trie over them, keyed
+ * on {@link IP4Address#toIntValue()}. A lookup visits at most 33 nodes
+ * whatever the number of routes is, and it does not allocate.
+ * <p>
+ * Rows with a non contiguous netmask can't be put into the trie. They are
+ * kept aside and checked against the trie result, so the lookup returns
+ * exactly the first matching row of {@link #getRows()}.
+ */
+final class ForwardingTrie {
+
+    static final ForwardingTrie EMPTY =
+            new ForwardingTrie(Collections.<RoutingTableRow>emptyList());
+
+    private static final int NONE = -1;
+
+    private final List<RoutingTableRow> rows;
+    private final RoutingTableRow[] byIndex;
+    private final int[] prefix;
+    private final int[] mask;
+    private final int[] length;
+    private final int[] value;
+    private final int[] child;
+    private final int[] irregular;
+
+    private static final class Node {
+        final int prefix;
+        final int length;
+        int value = NONE;
+        final Node[] child = new Node[2];
+
+        Node(int prefix, int length) {
+            this.prefix = prefix & maskOf(length);
+            this.length = length;
+        }
+    }
+
+    /**
+     * @param sortedRows rows sorted with {@link RoutingTableRow#COMPARATOR}.
+     */
+    ForwardingTrie(List<RoutingTableRow> sortedRows) {
+        rows = Collections.unmodifiableList(new ArrayList<>(sortedRows));
+        byIndex = rows.toArray(new RoutingTableRow[rows.size()]);
+
+        Node root = new Node(0, 0);
+        int nodes = 1;
+        List<Integer> aside = new ArrayList<>();
+        for (int i = 0; i != byIndex.length; i++) {
+            IP4Address netmask = byIndex[i].getNetmask();
+            if (IP4Address.isNetmaskAddressValid(netmask)) {
+                nodes += insert(root, byIndex[i].getTarget().toIntValue(),
+                        Integer.bitCount(netmask.toIntValue()), i);
+            } else {
+                aside.add(i);
+            }
+        }
+
+        prefix = new int[nodes];
+        mask = new int[nodes];
+        length = new int[nodes];
+        value = new int[nodes];
+        child = new int[nodes * 2];
+        flatten(root, 0, 1);
+
+        irregular = new int[aside.size()];
+        for (int i = 0; i != irregular.length; i++) {
+            irregular[i] = aside.get(i);
+        }
+    }
+
+    /**
+     * Rows are inserted in the order of their priority, so the first one
+     * inserted for a prefix wins.
+     * @return number of created nodes.
+     */
+    private static int insert(Node root, int target, int len, int index) {
+        Node cur = root;
+        while (true) {
+            if (cur.length == len) {
+                if (cur.value == NONE) {
+                    cur.value = index;
+                }
+                return 0;
+            }
+            int bit = bitAt(target, cur.length);
+            Node next = cur.child[bit];
+            if (next == null) {
+                Node leaf = new Node(target, len);
+                leaf.value = index;
+                cur.child[bit] = leaf;
+                return 1;
+            }
+            int common = Math.min(
+                    Integer.numberOfLeadingZeros(next.prefix ^ target),
+                    Math.min(next.length, len));
+            if (common == next.length) {
+                cur = next;
+                continue;
+            }
+            Node split = new Node(target, common);
+            cur.child[bit] = split;
+            split.child[bitAt(next.prefix, common)] = next;
+            if (common == len) {
+                split.value = index;
+                return 1;
+            }
+            Node leaf = new Node(target, len);
+            leaf.value = index;
+            split.child[bitAt(target, common)] = leaf;
+            return 2;
+        }
+    }
+
+    /**
+     * Lays the nodes out into the arrays in depth first order.
+     * @return next free slot.
+     */
+    private int flatten(Node node, int slot, int free) {
+        prefix[slot] = node.prefix;
+        mask[slot] = maskOf(node.length);
+        length[slot] = node.length;
+        value[slot] = node.value;
+        for (int bit = 0; bit != 2; bit++) {
+            Node next = node.child[bit];
+            if (next == null) {
+                child[slot * 2 + bit] = NONE;
+            } else {
+                int nextSlot = free;
+                child[slot * 2 + bit] = nextSlot;
+                free = flatten(next, nextSlot, free + 1);
+            }
+        }
+        return free;
+    }
+
+    private static int bitAt(int address, int position) {
+        return (address >>> (31 - position)) & 1;
+    }
+
+    private static int maskOf(int length) {
+        return length == 0 ? 0 : -1 << (32 - length);
+    }
+
+    /**
+     * @return the row with the longest prefix matching the address or null.
+     */
+    RoutingTableRow lookup(IP4Address destination) {
+        int address = destination.toIntValue();
+        int best = Integer.MAX_VALUE;
+        int n = 0;
+        while (n != NONE && ((address ^ prefix[n]) & mask[n]) == 0) {
+            if (value[n] != NONE) {
+                best = value[n];
+            }
+            if (length[n] == 32) {
+                break;
+            }
+            n = child[n * 2 + bitAt(address, length[n])];
+        }
+        for (int i : irregular) {
+            if (i >= best) {
+                break;
+            }
+            if (byIndex[i].match(destination)) {
+                best = i;
+                break;
+            }
+        }
+        return best == Integer.MAX_VALUE ? null : byIndex[best];
+    }
+
+    List<RoutingTableRow> getRows() {
+        return rows;
+    }
+}
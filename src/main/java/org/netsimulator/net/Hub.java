@@ -21,14 +21,13 @@ package org.netsimulator.net;
 
 import org.netsimulator.util.IdGenerator;
 
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
 
 public class Hub implements Concentrator
 {
     private int id;
     private IdGenerator idGenerator;
-    private ArrayList<Port> ports;
+    private volatile Port[] ports;
 
 
     /** Create new hub with 16 ports.
@@ -54,25 +53,27 @@ public class Hub implements Concentrator
     {
         this.idGenerator = idGenerator;
         this.id = id;
-        ports = new ArrayList<Port>();
+        Port[] array = new Port[n];
         for(int i=0; i!=n; i++)
         {
-            ports.add(new Port(idGenerator, this));
+            array[i] = new Port(idGenerator, this);
+            array[i].setIndex(i);
         }
+        ports = array;
     }
     
     
     
     public int getPortsCount()
     {
-        return ports.size();
+        return ports.length;
     }
 
 
 
     public Port getPort(int port)
     {
-        return ports.get(port);
+        return ports[port];
     }
 
     
@@ -80,10 +81,8 @@ public class Hub implements Concentrator
     
     public Port getPortById(int id)
     {
-        Port port = null;
-        for(Iterator<Port> i = ports.iterator(); i.hasNext(); )
+        for(Port port : ports)
         {
-            port = i.next();
             if(port.getId() == id)
             {
                 return port;
@@ -103,25 +102,29 @@ public class Hub implements Concentrator
 
     
     
-    public void addPort(Port port)
+    /** The ports array is never changed once published, so the frames
+     * are repeated without a copy of it.
+     */
+    public synchronized void addPort(Port port)
     {
-        ports.add(port);
+        Port[] array = Arrays.copyOf(ports, ports.length + 1);
+        array[ports.length] = port;
         port.setConcentrator(this);
+        port.setIndex(ports.length);
+        ports = array;
     }
 
     
     public Port[] getPorts()
     {
-        Port[] array = new Port[ports.size()];
-	return ports.toArray(array);        
+        return ports.clone();
     }
     
 
     public void transportPacket(Port sourcePort, Layer2Packet packet)
     {
-        for(Iterator<Port> i=ports.iterator(); i.hasNext();)
+        for(Port port : ports)
         {
-            Port port = i.next();
             if(port != sourcePort)
             {
                 port.transmitPacket(packet);
@@ -148,4 +151,9 @@ public class Hub implements Concentrator
     }
     
     
+    public void dispose()
+    {
+    }
+    
+    
 }
@@ -0,0 +1,128 @@
+/*
+NET-Simulator -- Network simulator.
+Copyright (C) 2006 Maxim Tereshin <maxim-tereshin@yandex.ru>
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along
+with this program; if not, write to the Free Software Foundation,
+Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+*/
+
+package org.netsimulator.net;
+
+import org.netsimulator.util.TimingWheel;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Matches ICMP echo replays to the requests of a router. A request is
+ * expected by its identifier and sequence number, the replay completes
+ * the future of the request, so no matter how many requests are awaited
+ * a replay is matched in constant time.
+ * <p>
+ * Requests which are not replied within the timeout are completed
+ * exceptionally with {@link TimeoutException} by the shared timing
+ * wheel. Cancelling the future forgets the request.
+ * <p>
+ * It is thread safe.
+ */
+public class ICMPEchoCorrelator {
+
+    private final TimingWheel wheel;
+    private final AtomicInteger identifiers = new AtomicInteger(1);
+    private final ConcurrentHashMap<Integer, Request> requests =
+            new ConcurrentHashMap<Integer, Request>();
+
+    private final class Request extends TimingWheel.Timeout {
+        final int key;
+        final CompletableFuture<ICMPEchoPacket> replay = new CompletableFuture<ICMPEchoPacket>();
+
+        Request(int key) {
+            this.key = key;
+        }
+
+        @Override
+        protected void expire() {
+            if (requests.remove(key, this)) {
+                replay.completeExceptionally(new TimeoutException(
+                        "No replay to " + (key >>> 16) + ":" + (key & 0xFFFF)));
+            }
+        }
+    }
+
+    public ICMPEchoCorrelator() {
+        this(TimingWheel.getDefault());
+    }
+
+    public ICMPEchoCorrelator(TimingWheel wheel) {
+        this.wheel = wheel;
+    }
+
+    /**
+     * @return identifier for the requests of a new ping, they are unique
+     * until 65536 of them are taken.
+     */
+    public int nextIdentifier() {
+        return identifiers.getAndIncrement() & 0xFFFF;
+    }
+
+    /**
+     * Awaits the replay to a request, call it before the request is sent.
+     * @param timeout the replay is waited for, 0 to wait until the
+     * future is cancelled.
+     * @return future of the replay.
+     * @throws IllegalStateException if the replay is already awaited.
+     */
+    public CompletableFuture<ICMPEchoPacket> expect(int identifier, int sequenceNumber,
+            long timeout, TimeUnit unit) {
+        final Request request = new Request(key(identifier, sequenceNumber));
+        if (requests.putIfAbsent(request.key, request) != null) {
+            throw new IllegalStateException("The replay to " + identifier + ":" + sequenceNumber + " is already awaited");
+        }
+        request.replay.whenComplete((packet, e) -> {
+            requests.remove(request.key, request);
+            wheel.cancel(request);
+        });
+        if (timeout > 0 && !request.replay.isDone()) {
+            wheel.schedule(request, timeout, unit);
+        }
+        return request.replay;
+    }
+
+    /**
+     * Completes the future of the request the replay is to.
+     * @return false if the replay is not awaited.
+     */
+    public boolean complete(ICMPEchoPacket replay) {
+        Request request = requests.remove(key(replay.getIdentifier(), replay.getSequenceNumber()));
+        if (request == null) {
+            return false;
+        }
+        request.replay.complete(replay);
+        return true;
+    }
+
+    /**
+     * @return number of the requests which are awaited.
+     */
+    public int getPendingCount() {
+        return requests.size();
+    }
+
+    private static int key(int identifier, int sequenceNumber) {
+        return (identifier & 0xFFFF) << 16 | (sequenceNumber & 0xFFFF);
+    }
+}
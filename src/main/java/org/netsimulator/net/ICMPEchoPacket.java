@@ -18,6 +18,7 @@
  */
 package org.netsimulator.net;
 
+import java.nio.ByteBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -31,6 +32,10 @@ import java.util.logging.Logger;
 public class ICMPEchoPacket extends IP4Packet {
 
     public static final int DEFAULT_TTL = 64;
+    /** Size of the ICMP echo header. */
+    public static final int HEADER_SIZE = 8;
+    /** The timestamp is put first into the data, the way ping does. */
+    static final int TIMESTAMP_SIZE = 8;
 
     private static final Logger logger
             = Logger.getLogger(ICMPEchoPacket.class.getName());
@@ -80,6 +85,58 @@ public class ICMPEchoPacket extends IP4Packet {
         return timestamp;
     }
 
+    @Override
+    protected int getHeadersSize() {
+        return IP4Packet.HEADER_SIZE + HEADER_SIZE;
+    }
+
+    @Override
+    protected void encodePayload(ByteBuffer buffer, int size) {
+        int start = buffer.position();
+        buffer.put((byte) type)
+                .put((byte) 0)              // code
+                .putShort((short) 0)        // checksum
+                .putShort((short) identifier)
+                .putShort((short) sequenceNumber);
+        int data = size - HEADER_SIZE;
+        if (data >= TIMESTAMP_SIZE) {
+            buffer.putLong(timestamp);
+            data -= TIMESTAMP_SIZE;
+        }
+        Layer2Packet.putZeros(buffer, data);
+        buffer.putShort(start + 2, (short) checksum(buffer, start, buffer.position()));
+    }
+
+    /**
+     * Reads the ICMP part of an echo or echo replay packet.
+     * @param size of the IP packet.
+     * @return null if it is another ICMP message, the position is kept then.
+     * @throws IllegalArgumentException if the ICMP checksum is broken.
+     */
+    static ICMPEchoPacket decode(ByteBuffer buffer, int size, int ttl,
+            IP4Address srcAddress, IP4Address dstAddress) throws AddressException {
+        int start = buffer.position();
+        int end = start + size - IP4Packet.HEADER_SIZE;
+        if (end - start < HEADER_SIZE) {
+            return null;
+        }
+        int type = buffer.get(start) & 0xFF;
+        if ((type != Protocols.ICMPEcho && type != Protocols.ICMPEchoReply)
+                || buffer.get(start + 1) != 0) {
+            return null;
+        }
+        if (checksum(buffer, start, end) != 0) {
+            throw new IllegalArgumentException("Invalid ICMP checksum.");
+        }
+        int identifier = buffer.getShort(start + 4) & 0xFFFF;
+        int sequenceNumber = buffer.getShort(start + 6) & 0xFFFF;
+        long timestamp = end - start >= HEADER_SIZE + TIMESTAMP_SIZE
+                ? buffer.getLong(start + HEADER_SIZE) : 0;
+        buffer.position(end);
+        return new ICMPEchoPacket(type, identifier, sequenceNumber, size, ttl,
+                srcAddress, dstAddress, timestamp, null);
+    }
+
     /**
      * Generates replay to this packet.
      * @return Replay packet.
@@ -18,6 +18,7 @@
  */
 package org.netsimulator.net;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -26,13 +27,18 @@ import java.util.concurrent.atomic.AtomicInteger;
  * Version 1, 2004-06-30
  *
  * Some exceptions: a) not implements TOS b) not implements fragmentation c)
- * header checksum is never computed, it is 0 every time d) not implements
+ * header checksum is computed only when the packet is encoded d) not implements
  * Options (so we do not need Padding) e) version is always 4 f) Internet Header
  * Length is always 5
  *
  */
 public class IP4Packet implements Packet, Content {
 
+    /** Size of the header without options. */
+    public static final int HEADER_SIZE = 20;
+    /** The total length is a 16 bit field. */
+    public static final int MAX_SIZE = 65535;
+
     private final IP4Address dstAddress;
     private IP4Address srcAddress;
     private final byte version;
@@ -97,7 +103,119 @@ public class IP4Packet implements Packet, Content {
 
     @Override
     public byte[] toBytesArray() {
-        return null;
+        ByteBuffer buffer = ByteBuffer.allocate(getSize());
+        encode(buffer);
+        return buffer.array();
+    }
+
+    /**
+     * @return the total length, but not less than the headers take and
+     * not more than the total length field can hold.
+     */
+    @Override
+    public int getSize() {
+        return Math.min(MAX_SIZE, Math.max(getHeadersSize(), totalLength));
+    }
+
+    /**
+     * @return size of the IP header and the headers of the payload.
+     */
+    protected int getHeadersSize() {
+        return HEADER_SIZE;
+    }
+
+    @Override
+    public int encode(ByteBuffer buffer) {
+        int size = getSize();
+        int start = buffer.position();
+        buffer.put((byte) (version << 4 | ihl))
+                .put((byte) 0)              // type of service
+                .putShort((short) size)
+                .putShort((short) 0)        // identification
+                .putShort((short) 0)        // flags, fragment offset
+                .put((byte) getTTL())
+                .put((byte) protocol)
+                .putShort((short) 0)        // checksum
+                .putInt(srcAddress == null ? 0 : srcAddress.toIntValue())
+                .putInt(dstAddress.toIntValue());
+        buffer.putShort(start + 10, (short) checksum(buffer, start, start + HEADER_SIZE));
+        encodePayload(buffer, size - HEADER_SIZE);
+        return size;
+    }
+
+    /**
+     * Writes what follows the IP header, the packet itself carries
+     * no data so it is zeros.
+     * @param size of the payload.
+     */
+    protected void encodePayload(ByteBuffer buffer, int size) {
+        Layer2Packet.putZeros(buffer, size);
+    }
+
+    /**
+     * Reads an IPv4 packet, ICMP echo packets are decoded as
+     * {@link ICMPEchoPacket} and UDP datagrams as {@link UDPPacket}. The position is moved past the total length.
+     * @throws IllegalArgumentException if the packet has options or
+     *         its header is broken.
+     */
+    public static IP4Packet decode(ByteBuffer buffer) {
+        int start = buffer.position();
+        if ((buffer.get(start) & 0xFF) != 0x45) {
+            throw new IllegalArgumentException("Only IPv4 packets without options are supported.");
+        }
+        int totalLength = buffer.getShort(start + 2) & 0xFFFF;
+        if (totalLength < HEADER_SIZE || totalLength > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid total length " + totalLength + ".");
+        }
+        if (checksum(buffer, start, start + HEADER_SIZE) != 0) {
+            throw new IllegalArgumentException("Invalid header checksum.");
+        }
+        int ttl = buffer.get(start + 8) & 0xFF;
+        int protocol = buffer.get(start + 9) & 0xFF;
+        int src = buffer.getInt(start + 12);
+        IP4Address srcAddress = src == 0 ? null : new IP4Address(src);
+        IP4Address dstAddress = new IP4Address(buffer.getInt(start + 16));
+        buffer.position(start + HEADER_SIZE);
+        try {
+            IP4Packet packet = null;
+            if (protocol == Protocols.ICMP) {
+                packet = ICMPEchoPacket.decode(buffer, totalLength, ttl, srcAddress, dstAddress);
+            } else if (protocol == Protocols.UDP) {
+                packet = UDPPacket.decode(buffer, totalLength, ttl, srcAddress, dstAddress);
+            }
+            if (packet == null) {
+                packet = new IP4Packet(totalLength, ttl, protocol, srcAddress, dstAddress, null);
+            }
+            buffer.position(start + totalLength);
+            return packet;
+        } catch (AddressException ae) {
+            throw new IllegalArgumentException(ae);
+        }
+    }
+
+    /**
+     * @return the Internet checksum (RFC 1071) of the bytes in the range.
+     * It is zero over a range which includes its valid checksum.
+     */
+    static int checksum(ByteBuffer buffer, int from, int to) {
+        return checksum(buffer, from, to, 0);
+    }
+
+    /**
+     * @param sum of the bytes which precede the range, a pseudo header.
+     */
+    static int checksum(ByteBuffer buffer, int from, int to, int sum) {
+        int i = from;
+        for (; i + 1 < to; i += 2) {
+            sum += (buffer.get(i) & 0xFF) << 8 | buffer.get(i + 1) & 0xFF;
+        }
+        if (i < to) {
+            sum += (buffer.get(i) & 0xFF) << 8;
+        }
+        while ((sum >>> 16) != 0) {
+            sum = (sum & 0xFFFF) + (sum >>> 16);
+        }
+        return ~sum & 0xFFFF;
     }
 
     @Override
@@ -24,6 +24,10 @@ import org.netsimulator.util.IdGenerator;
 
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Logger;
 
 public class IP4Router implements Router {
@@ -32,7 +36,10 @@ public class IP4Router implements Router {
     private IdGenerator idGenerator;
     private ArrayList<Interface> interfaces;
     private RoutingTable routingTable;
-    private ArrayList<ICMPEchoReplayListener> icmpReplayListeners;
+    private List<ICMPEchoReplayListener> icmpReplayListeners;
+    private final ICMPEchoCorrelator icmpEchoCorrelator = new ICMPEchoCorrelator();
+    private final Map<Integer, UDPListener> udpListeners =
+            new ConcurrentHashMap<Integer, UDPListener>();
     private static final Logger logger =
             Logger.getLogger( "org.netsimulator.net.IP4Router" );
 
@@ -74,7 +81,7 @@ public class IP4Router implements Router {
         interfaces.add( new NullInterface( idGenerator, "null0" ) );
         
         routingTable = new RoutingTable();
-        icmpReplayListeners = new ArrayList<ICMPEchoReplayListener>();
+        icmpReplayListeners = new CopyOnWriteArrayList<ICMPEchoReplayListener>();
 
         logger.fine( hashCode() + ": IP4 router instantiated" );
     }
@@ -178,6 +185,16 @@ public class IP4Router implements Router {
         return routingTable;
     }
 
+    /** @return correlator of the echo requests sent by this router and
+     * the replays to them.
+     */
+    public ICMPEchoCorrelator getICMPEchoCorrelator() {
+        return icmpEchoCorrelator;
+    }
+
+    /** The listeners get the replays which are not awaited by
+     * the correlator.
+     */
     public void addICMPEchoReplayListener( ICMPEchoReplayListener listener ) {
         icmpReplayListeners.add( listener );
     }
@@ -186,12 +203,36 @@ public class IP4Router implements Router {
         icmpReplayListeners.remove( listener );
     }
 
+    /** Binds the listener to the UDP port.
+     * @throws IllegalStateException if the port is already bound.
+     */
+    public void addUDPListener( int port, UDPListener listener ) {
+        if( udpListeners.putIfAbsent( port, listener ) != null ) {
+            throw new IllegalStateException( "The UDP port " + port + " is already in use" );
+        }
+    }
+
+    public void removeUDPListener( int port ) {
+        udpListeners.remove( port );
+    }
+
     public void addInterface( Interface ifs ) {
         ifs.setRouter( this );
         interfaces.add( ifs );
     }
 
+    public void dispose() {
+        for( Interface ifs : interfaces ) {
+            if( ifs instanceof EthernetInterface ) {
+                ( (EthernetInterface) ifs ).dispose();
+            }
+        }
+    }
+
     private void processICMPEchoReplay( ICMPEchoPacket packet ) {
+        if( icmpEchoCorrelator.complete( packet ) ) {
+            return;
+        }
         for( Iterator<ICMPEchoReplayListener> i = icmpReplayListeners.iterator(); i.hasNext();) {
             ICMPEchoReplayListener listener = i.next();
             listener.processICMPEchoReplay( packet );
@@ -199,7 +240,18 @@ public class IP4Router implements Router {
     }
 
     private void processIP4Packet( IP4Packet packet ) {
-
+        if( !( packet instanceof UDPPacket ) ) {
+            logger.fine( getId() + ": the packet " + packet + " is not UDP datagram, packet dropped" );
+            return;
+        }
+        UDPPacket datagram = (UDPPacket) packet;
+        UDPListener listener = udpListeners.get( datagram.getDestinationPort() );
+        if( listener == null ) {
+            // make ICMP replay 'Port unreachable' here
+            logger.fine( getId() + ": port " + datagram.getDestinationPort() + " is unreachable, packet dropped" );
+            return;
+        }
+        listener.processUDPPacket( datagram );
     }
 
     private void goThroughRoutingTable( IP4Packet packet ) {
@@ -19,12 +19,25 @@ Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
 
 package org.netsimulator.net;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 /**
  * The class implements pseudo-packet of data link layer of OSI.
- * It is neither ethernet packet nor anything else in real world.
+ * On the wire it is an Ethernet II frame without the preamble and
+ * the frame check sequence.
  */
 public class Layer2Packet implements Packet, Content
 {
+    /** Destination, source addresses and the ether type. */
+    public static final int HEADER_SIZE = 14;
+    /** Shorter data is padded up to this size. */
+    public static final int MIN_DATA_SIZE = 46;
+    /** Ether types up to this are the length of an IEEE 802.3 frame. */
+    public static final int MAX_LENGTH = 1500;
+    /** Size of a frame carrying the largest IPv4 packet. */
+    public static final int MAX_SIZE = HEADER_SIZE + IP4Packet.MAX_SIZE;
+
     private MACAddress dst_address;
     private MACAddress src_address;
     private int etherType;
@@ -99,7 +112,107 @@ public class Layer2Packet implements Packet, Content
 
     public byte[] toBytesArray()
     {
-        return null;
+        ByteBuffer buffer = ByteBuffer.allocate(getSize());
+        encode(buffer);
+        return buffer.array();
+    }
+
+
+    /**
+     * @return size of the frame without the preamble and the checksum.
+     */
+    public int getSize()
+    {
+        return HEADER_SIZE + Math.max(MIN_DATA_SIZE, data == null ? 0 : data.getSize());
+    }
+
+
+    /**
+     * Writes the frame, data shorter than {@link #MIN_DATA_SIZE} is
+     * padded with zeros.
+     */
+    public int encode(ByteBuffer buffer)
+    {
+        checkByteOrder(buffer);
+        int start = buffer.position();
+        MACAddress.encode(dst_address, buffer);
+        MACAddress.encode(src_address, buffer);
+        buffer.putShort((short)etherType);
+        if(data != null)
+        {
+            data.encode(buffer);
+        }
+        putZeros(buffer, HEADER_SIZE + MIN_DATA_SIZE - (buffer.position() - start));
+        return buffer.position() - start;
+    }
+
+
+    /**
+     * Reads a frame which takes the bytes from the position to the limit
+     * of the buffer, the position is moved to the limit. IPv4 packets
+     * (including ICMP echo and UDP), ARP packets and BPDUs are recognized.
+     * @param buffer in network byte order.
+     * @return the decoded packet.
+     * @throws IllegalArgumentException if the frame is malformed or carries
+     *         a protocol which is not supported.
+     */
+    public static Layer2Packet decode(ByteBuffer buffer)
+    {
+        checkByteOrder(buffer);
+        MACAddress dst = MACAddress.decode(buffer);
+        MACAddress src = MACAddress.decode(buffer);
+        int etherType = buffer.getShort() & 0xFFFF;
+        Content data;
+        switch(etherType)
+        {
+            case Protocols.IP :
+                data = IP4Packet.decode(buffer);
+                break;
+            case Protocols.ARP :
+                data = ARPPacket.decode(buffer);
+                break;
+            default :
+                if(etherType <= MAX_LENGTH)
+                {
+                    data = BPDUPacket.decode(buffer, etherType);
+                    break;
+                }
+                throw new IllegalArgumentException(
+                        "Unsupported ether type 0x" + Integer.toHexString(etherType));
+        }
+        buffer.position(buffer.limit());
+        try
+        {
+            return new Layer2Packet(src, dst, etherType, data);
+        }catch(AddressException ae)
+        {
+            throw new IllegalArgumentException(ae);
+        }
+    }
+
+
+    private static void checkByteOrder(ByteBuffer buffer)
+    {
+        if(buffer.order() != ByteOrder.BIG_ENDIAN)
+        {
+            throw new IllegalArgumentException("The buffer is not in network byte order.");
+        }
+    }
+
+
+    /**
+     * Writes n zero bytes, nothing if n is not positive.
+     */
+    static void putZeros(ByteBuffer buffer, int n)
+    {
+        for(; n >= 8; n -= 8)
+        {
+            buffer.putLong(0);
+        }
+        for(; n > 0; n--)
+        {
+            buffer.put((byte)0);
+        }
     }
 
     
@@ -21,6 +21,7 @@ Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
 package org.netsimulator.net;
 
 
+import java.nio.ByteBuffer;
 import java.util.StringTokenizer;
 
 
@@ -62,6 +63,27 @@ public final class MACAddress implements Address
     }
     
     
+    /**
+     * Writes the address (6 bytes) at the position of the buffer.
+     * @param address to write, null is written as zeros.
+     */
+    static void encode(MACAddress address, ByteBuffer buffer)
+    {
+        long value = address == null ? 0 : address.address;
+        buffer.putShort((short)(value >>> 32)).putInt((int)value);
+    }
+    
+    
+    /**
+     * Reads an address (6 bytes) at the position of the buffer.
+     */
+    static MACAddress decode(ByteBuffer buffer)
+    {
+        long high = buffer.getShort() & 0xFFFFL;
+        return new MACAddress((high << 32) | (buffer.getInt() & 0xFFFFFFFFL));
+    }
+    
+    
     @Override
     public byte[] toBytesArray()
     {
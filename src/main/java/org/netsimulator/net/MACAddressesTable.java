@@ -24,29 +24,62 @@ Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
 package org.netsimulator.net;
 
 
+import org.netsimulator.util.TimingWheel;
+
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * MAC address learning table of a switch. MAC addresses are 48 bit longs,
+ * so the table keeps addresses, port numbers and mapping times in parallel
+ * primitive arrays. An open addressing index (linear probing) maps an
+ * address to its entry, usually at the first probe.
+ * <p>
+ * Neither learning an address again nor looking it up allocates anything.
+ * Arrays grow when the table is full, entries never move between them, so
+ * every entry has its timing wheel timeout allocated once.
+ * <p>
+ * It is thread safe.
+ */
 public class MACAddressesTable {
     private static final Logger logger = 
             Logger.getLogger("org.netsimulator.net.MACAddressesTable");
-    private final Map<MACAddress, MappedPort> table;
+    private static final int INITIAL_CAPACITY = 64;
+
     private final int timeout;
-    private final Lock lock = new ReentrantLock();
+    private final TimingWheel wheel;
+
+    // index slot -> entry + 1, 0 is an empty slot; twice as long as entries
+    private int[] index;
+    private int shift;
+    // entry -> address, port, time
+    private long[] macs;
+    private int[] ports;
+    private long[] times;
+    private EntryTimeout[] timeouts;
+    // stack of free entries
+    private int[] free;
+    private int freeTop;
+    private int size;
 
     
-    private static final class MappedPort {
-        final int portId;
-        final long mappedTime;
-        public MappedPort(int portId, long mappedTime) {
-            this.portId = portId;
-            this.mappedTime = mappedTime;
+    /**
+     * Ages an entry. Learning the address again only updates the time,
+     * on expiry the entry is rescheduled if it has been refreshed since.
+     */
+    private final class EntryTimeout extends TimingWheel.Timeout {
+        final int entry;
+        EntryTimeout(int entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        protected void expire() {
+            MACAddressesTable.this.expire(entry);
         }
     }
     
@@ -55,31 +88,190 @@ public class MACAddressesTable {
      * @param timeout seconds
      */
     public MACAddressesTable(int timeout) {
-        table = new ConcurrentHashMap<>();
+        this(timeout, TimingWheel.getDefault());
+    }
+
+
+    public MACAddressesTable(int timeout, TimingWheel wheel) {
         this.timeout = timeout;
+        this.wheel = wheel;
+        macs = new long[0];
+        ports = new int[0];
+        times = new long[0];
+        timeouts = new EntryTimeout[0];
+        free = new int[0];
+        grow(INITIAL_CAPACITY);
     }
     
 
     public void put(MACAddress key, int value) {
-        table.put(key, new MappedPort(value, System.currentTimeMillis()));
+        put(key.toLongValue(), value);
+    }
+
+
+    public synchronized void put(long mac, int port) {
+        long now = System.currentTimeMillis();
+        int slot = find(mac);
+        int e = index[slot] - 1;
+        if (e >= 0) {
+            ports[e] = port;
+            times[e] = now;
+            return;
+        }
+        if (size == macs.length) {
+            grow(macs.length * 2);
+            slot = find(mac);
+        }
+        e = free[--freeTop];
+        macs[e] = mac;
+        ports[e] = port;
+        times[e] = now;
+        index[slot] = e + 1;
+        size++;
+        wheel.schedule(timeouts[e], timeout, TimeUnit.SECONDS);
     }
     
     
     public int get(MACAddress key) {
-        return table.get(key) == null ? -1 : table.get(key).portId;
+        return get(key.toLongValue());
     }
 
+
+    /**
+     * @param mac address to look up.
+     * @return port the address is mapped to or -1.
+     */
+    public synchronized int get(long mac) {
+        int e = index[find(mac)] - 1;
+        return e < 0 ? -1 : ports[e];
+    }
+
+
+    public synchronized int size() {
+        return size;
+    }
+
+
+    /**
+     * Forgets the address.
+     * @param mac address to remove.
+     * @return false if the address was not in the table.
+     */
+    synchronized boolean remove(long mac) {
+        int slot = find(mac);
+        int e = index[slot] - 1;
+        if (e < 0) {
+            return false;
+        }
+        wheel.cancel(timeouts[e]);
+        removeSlot(slot);
+        return true;
+    }
+
+    
+    private synchronized void expire(int e) {
+        /*
+         * The wheel fires the timeout out of its lock, the entry may have
+         * been removed (cleared) meanwhile and even taken again by another
+         * address, which scheduled the timeout once more.
+         */
+        if (index[find(macs[e])] - 1 != e || wheel.isScheduled(timeouts[e])) {
+            return;
+        }
+        long age = System.currentTimeMillis() - times[e];
+        if (age >= TimeUnit.SECONDS.toMillis(timeout)) {
+            logger.log(Level.FINEST, "{0} -> {1} time sinse has been mapped {2} ms, going to be removed.", new Object[]{new MACAddress(macs[e]), ports[e], age});
+            removeSlot(find(macs[e]));
+        } else {
+            wheel.schedule(timeouts[e], TimeUnit.SECONDS.toMillis(timeout) - age, TimeUnit.MILLISECONDS);
+        }
+    }
+    
     
-    /** Clean records when timeout expired
+    /** Removes all the records and releases their timing wheel slots.
+     */
+    public synchronized void clear() {
+        for (int slot = 0; slot != index.length; slot++) {
+            int e = index[slot] - 1;
+            if (e >= 0) {
+                wheel.cancel(timeouts[e]);
+                index[slot] = 0;
+                free[freeTop++] = e;
+            }
+        }
+        size = 0;
+    }
+
+
+    private int hash(long mac) {
+        return (int) ((mac * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+
+    /**
+     * @return the slot of the address or the empty slot it would take.
      */
-    public void clean() {
-        logger.fine("Clean MACAddress table job is running." );
-        for (MACAddress mac: table.keySet()) {
-            MappedPort port = table.get(mac);
-            long offset = (System.currentTimeMillis() - port.mappedTime) / 1000;
-            if (offset > timeout) {
-                logger.log(Level.FINEST, "{0} -> {1} time sinse has been mapped {2}, going to be removed.", new Object[]{mac, port.portId, offset});
-                table.remove(mac);
+    private int find(long mac) {
+        int mask = index.length - 1;
+        int slot = hash(mac);
+        while (true) {
+            int e = index[slot] - 1;
+            if (e < 0 || macs[e] == mac) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+
+    /**
+     * Empties the slot and shifts back the following entries of the
+     * probe sequence, so no tombstones are needed.
+     */
+    private void removeSlot(int slot) {
+        int e = index[slot] - 1;
+        free[freeTop++] = e;
+        size--;
+
+        int mask = index.length - 1;
+        int hole = slot;
+        index[hole] = 0;
+        for (int next = (hole + 1) & mask; index[next] != 0; next = (next + 1) & mask) {
+            int home = hash(macs[index[next] - 1]);
+            // move it if its home is not cyclically within (hole, next]
+            boolean stays = hole <= next
+                    ? home > hole && home <= next
+                    : home > hole || home <= next;
+            if (!stays) {
+                index[hole] = index[next];
+                index[next] = 0;
+                hole = next;
+            }
+        }
+    }
+
+
+    private void grow(int capacity) {
+        int old = macs.length;
+        macs = Arrays.copyOf(macs, capacity);
+        ports = Arrays.copyOf(ports, capacity);
+        times = Arrays.copyOf(times, capacity);
+        timeouts = Arrays.copyOf(timeouts, capacity);
+        free = Arrays.copyOf(free, capacity);
+        for (int e = capacity - 1; e >= old; e--) {
+            timeouts[e] = new EntryTimeout(e);
+            free[freeTop++] = e;
+        }
+
+        int slots = capacity * 2;
+        shift = 64 - Integer.numberOfTrailingZeros(slots);
+        int[] oldIndex = index;
+        index = new int[slots];
+        if (oldIndex != null) {
+            for (int entry : oldIndex) {
+                if (entry != 0) {
+                    index[find(macs[entry - 1])] = entry;
+                }
             }
         }
     }
@@ -89,8 +281,14 @@ public class MACAddressesTable {
      * Return a snapshot of mapped addresses in the table.
      * @return resolved addresses.
      */      
-    public List<MACAddress> getMappedAddresses() {
-        return new LinkedList<>(table.keySet());
+    public synchronized List<MACAddress> getMappedAddresses() {
+        List<MACAddress> res = new LinkedList<>();
+        for (int entry : index) {
+            if (entry != 0) {
+                res.add(new MACAddress(macs[entry - 1]));
+            }
+        }
+        return res;
     }
     
     
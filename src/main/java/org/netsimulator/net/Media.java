@@ -19,22 +19,70 @@ Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
 
 package org.netsimulator.net;
 
+import org.netsimulator.sim.EventScheduler;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Logger;
 
+/**
+ * A link between two devices. It has a propagation delay and, unless its
+ * bandwidth is 0 (unlimited), a bandwidth: every side serializes its frames
+ * one after another at the bandwidth, the frames waiting for their turn are
+ * kept in a bounded FIFO of that side.
+ * <p>
+ * Events of every side are scheduled on the scheduler of that side. It is
+ * the scheduler of the media unless the network is partitioned into
+ * regions, then the sides of a link between regions have the schedulers
+ * of their regions.
+ */
 public class Media {
     private static final int MAX_CONNECTED_DEVICES = 2;
+    /** Frames an egress queue holds by default, txqueuelen of Linux. */
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
     private static final Logger logger = Logger.getLogger("org.netsimulator.net.Media");
 
     private final int id;
+    private final EventScheduler scheduler;
     private final List<NetworkDevice> devs;
+    private final List<Endpoint> endpoints;
     private final List<TransferPacketListener> listenerTrPacket;
     private final List<PhysicalLinkSetUpListener> listenerPhLink;
+    private volatile long delay;
+    private volatile long bandwidth;
+    private volatile int queueSize = DEFAULT_QUEUE_SIZE;
+
+    /**
+     * A side of the media. The queue keeps frames the device sends into
+     * the media, the one being serialized is not in the queue.
+     */
+    private final class Endpoint {
+        private final NetworkDevice device;
+        private volatile EventScheduler scheduler;
+        private final ArrayDeque<Layer2Packet> queue = new ArrayDeque<>();
+        private boolean transmitting;
+
+        private Endpoint(NetworkDevice device) {
+            this.device = device;
+            this.scheduler = Media.this.scheduler;
+        }
+    }
 
     public Media(int id) {
+        this(id, EventScheduler.getDefault());
+    }
+
+    /**
+     * @param id the media id.
+     * @param scheduler the scheduler packets are delivered through.
+     */
+    public Media(int id, EventScheduler scheduler) {
         this.id = id;
+        this.scheduler = scheduler;
         devs = new CopyOnWriteArrayList<>();
+        endpoints = new CopyOnWriteArrayList<>();
         listenerTrPacket = new CopyOnWriteArrayList<>();
         listenerPhLink = new CopyOnWriteArrayList<>();
     }
@@ -56,6 +104,7 @@ public class Media {
 
         device.connectMedia(this);
         devs.add(device);
+        endpoints.add(new Endpoint(device));
 
         if(devs.size() > 1) {
             listenerPhLink.forEach(PhysicalLinkSetUpListener::phisicalLinkSetUp);
@@ -66,6 +115,11 @@ public class Media {
     public void disconnectFromDevice(NetworkDevice device) {
         device.disconnectMedia();
         devs.remove(device);
+        Endpoint endpoint = findEndpoint(device);
+        if (endpoint != null) {
+            endpoints.remove(endpoint);
+            clear(endpoint);
+        }
 
         if(devs.size() == 1) {
             listenerPhLink.forEach(PhysicalLinkSetUpListener::phisicalLinkBrokenDown);
@@ -73,11 +127,191 @@ public class Media {
         logger.fine(hashCode()+": the media was disconnected from the device: " + device);
     }
 
-    public void transmitPacket(NetworkDevice srcDev, Layer2Packet packet) {
-        devs.stream().filter(dev -> dev != srcDev).forEach(dev -> dev.recivePacket(packet));
+    /**
+     * Sends the packet to the opposite side. With unlimited bandwidth the
+     * receiver gets it after the propagation delay. Otherwise it's
+     * serialized after the packets sent before it, then it propagates.
+     * @param srcDev the sender.
+     * @param packet the packet to deliver.
+     * @return false if the packet was dropped because the egress queue
+     * of the sender is full.
+     */
+    public boolean transmitPacket(NetworkDevice srcDev, Layer2Packet packet) {
+        Endpoint src = findEndpoint(srcDev);
+        if (src == null) {
+            return false;
+        }
+        if (bandwidth == 0) {
+            deliver(src, packet);
+            return true;
+        }
+        synchronized (src) {
+            if (src.transmitting) {
+                if (src.queue.size() >= queueSize) {
+                    return false;
+                }
+                src.queue.add(packet);
+                return true;
+            }
+            src.transmitting = true;
+        }
+        serialize(src, packet);
+        return true;
+    }
+
+    private Endpoint findEndpoint(NetworkDevice device) {
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.device == device) {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+
+    private void serialize(Endpoint src, Layer2Packet packet) {
+        long bps = bandwidth;
+        long time = bps == 0 ? 0 : packet.getSize() * 8L * 1000000000L / bps;
+        src.scheduler.schedule(time, () -> serialized(src, packet));
+    }
+
+    /**
+     * The last bit of the packet is on the wire, the next one
+     * from the queue starts.
+     */
+    private void serialized(Endpoint src, Layer2Packet packet) {
+        deliver(src, packet);
+        Layer2Packet next;
+        synchronized (src) {
+            next = src.queue.poll();
+            if (next == null) {
+                src.transmitting = false;
+                return;
+            }
+        }
+        serialize(src, next);
+    }
+
+    /**
+     * Schedules receiving of the packet by the opposite side, on its
+     * scheduler but after the delay since the time of the sender.
+     */
+    private void deliver(Endpoint src, Layer2Packet packet) {
+        long time = src.scheduler.getTime() + delay;
+        for (Endpoint dst : endpoints) {
+            if (dst != src) {
+                NetworkDevice dev = dst.device;
+                dst.scheduler.scheduleAt(time, () -> dev.recivePacket(packet));
+            }
+        }
         listenerTrPacket.forEach(l -> l.packetTransfered(packet));
     }
+
+    private void clear(Endpoint endpoint) {
+        synchronized (endpoint) {
+            endpoint.queue.clear();
+        }
+    }
+
+    /**
+     * @param device connected to the media.
+     * @return number of packets of the device waiting to be serialized.
+     */
+    public int getQueuedPacketsCount(NetworkDevice device) {
+        Endpoint endpoint = findEndpoint(device);
+        if (endpoint == null) {
+            return 0;
+        }
+        synchronized (endpoint) {
+            return endpoint.queue.size();
+        }
+    }
+
+    /**
+     * @return devices connected to the media.
+     */
+    public List<NetworkDevice> getConnectedDevices() {
+        return Collections.unmodifiableList(devs);
+    }
+
+    public EventScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * @param device connected to the media.
+     * @return the scheduler events of the device are fired by.
+     */
+    public EventScheduler getScheduler(NetworkDevice device) {
+        Endpoint endpoint = findEndpoint(device);
+        return endpoint == null ? scheduler : endpoint.scheduler;
+    }
+
+    /**
+     * Binds the side of the device to the scheduler of its region. A link
+     * between regions must have a delay, it is the lookahead of the regions.
+     * @param device connected to the media.
+     * @param scheduler of the region the device belongs to.
+     */
+    public void setScheduler(NetworkDevice device, EventScheduler scheduler) {
+        Endpoint endpoint = findEndpoint(device);
+        if (endpoint == null) {
+            throw new IllegalArgumentException("The device is not connected to the media");
+        }
+        endpoint.scheduler = scheduler;
+    }
+
+    /**
+     * @return propagation delay in nanoseconds.
+     */
+    public long getDelay() {
+        return delay;
+    }
+
+    /**
+     * @param delay propagation delay in nanoseconds.
+     */
+    public void setDelay(long delay) {
+        if (delay < 0) {
+            throw new IllegalArgumentException("The delay can't be less 0");
+        }
+        this.delay = delay;
+    }
     
+    /**
+     * @return bandwidth in bits per second, 0 if it is unlimited.
+     */
+    public long getBandwidth() {
+        return bandwidth;
+    }
+
+    /**
+     * @param bandwidth in bits per second, 0 for unlimited.
+     */
+    public void setBandwidth(long bandwidth) {
+        if (bandwidth < 0) {
+            throw new IllegalArgumentException("The bandwidth can't be less 0");
+        }
+        this.bandwidth = bandwidth;
+    }
+
+    /**
+     * @return number of packets every side may queue.
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * @param queueSize number of packets every side may queue, a packet
+     * sent into a full queue is dropped.
+     */
+    public void setQueueSize(int queueSize) {
+        if (queueSize < 0) {
+            throw new IllegalArgumentException("The queue size can't be less 0");
+        }
+        this.queueSize = queueSize;
+    }
+
     public void addTransmitPacketListener(TransferPacketListener listener) {
         listenerTrPacket.add(listener);
         logger.fine(hashCode()+": TransmitPacketListener added");
@@ -110,5 +344,7 @@ public class Media {
             dev.disconnectMedia();
         });
         devs.clear();
+        endpoints.forEach(this::clear);
+        endpoints.clear();
     }
 }
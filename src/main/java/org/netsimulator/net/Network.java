@@ -0,0 +1,298 @@
+/*
+NET-Simulator -- Network simulator.
+Copyright (C) 2006 Maxim Tereshin <maxim-tereshin@yandex.ru>
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along
+with this program; if not, write to the Free Software Foundation,
+Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+*/
+
+
+package org.netsimulator.net;
+
+import org.netsimulator.sim.EventScheduler;
+import org.netsimulator.sim.ParallelSimulator;
+import org.netsimulator.util.IdGenerator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A network made of the devices only, without shapes or any other UI.
+ * All the media of the network deliver packets through the same scheduler,
+ * unless the network is {@link #partition(int) partitioned} into regions
+ * which run in parallel.
+ *
+ * @see NetworkXMLLoader
+ */
+public class Network {
+
+    private final IdGenerator idGenerator;
+    private final EventScheduler scheduler;
+    private final Map<String, NetworkDeviceHolder> devices =
+            new LinkedHashMap<String, NetworkDeviceHolder>();
+    private final List<Media> medias = new ArrayList<Media>();
+    private final Map<NetworkDeviceHolder, EventScheduler> regions =
+            new HashMap<NetworkDeviceHolder, EventScheduler>();
+    private ParallelSimulator simulator;
+
+    public Network(IdGenerator idGenerator, EventScheduler scheduler) {
+        this.idGenerator = idGenerator;
+        this.scheduler = scheduler;
+    }
+
+    public IdGenerator getIdGenerator() {
+        return idGenerator;
+    }
+
+    public EventScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * @param device of the network.
+     * @return the scheduler of the region of the device.
+     */
+    public EventScheduler getScheduler(NetworkDeviceHolder device) {
+        EventScheduler region = regions.get(device);
+        return region == null ? scheduler : region;
+    }
+
+    /**
+     * @return the simulator running the network, it has a single region
+     * unless the network is partitioned.
+     */
+    public ParallelSimulator getSimulator() {
+        if (simulator == null) {
+            simulator = new ParallelSimulator(Collections.singletonList(scheduler), Long.MAX_VALUE);
+        }
+        return simulator;
+    }
+
+    /**
+     * Partitions the network into regions each running on its own thread.
+     * Devices linked by media without delay are kept in the same region,
+     * so only links with a delay are cut (the links between routers, as
+     * a rule). The least delay of the cut links is the lookahead of the
+     * regions. Devices are taken breadth first along the links, so the
+     * neighbours get into the same region, and regions get about the same
+     * number of devices. There may be less regions than requested if
+     * there are not enough links to cut.
+     * <p>
+     * It must be done once all the devices and media are added and before
+     * the network is run. The spanning trees are started anew on the
+     * schedulers of their regions. The first region runs on the scheduler of the
+     * network.
+     * @param count number of regions.
+     * @return the simulator running the regions.
+     */
+    public ParallelSimulator partition(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("There must be a region at least");
+        }
+        if (!regions.isEmpty()) {
+            throw new IllegalStateException("The network is already partitioned");
+        }
+        if (scheduler.isRealTime()) {
+            throw new IllegalStateException("Real time networks can't be partitioned");
+        }
+
+        List<NetworkDeviceHolder> holders = new ArrayList<NetworkDeviceHolder>(devices.values());
+        Map<NetworkDevice, Integer> owners = new HashMap<NetworkDevice, Integer>();
+        for (int i = 0; i != holders.size(); i++) {
+            for (NetworkDevice dev : getNetworkDevices(holders.get(i))) {
+                owners.put(dev, i);
+            }
+        }
+
+        // devices which must stay together, and links along which to walk
+        int[] components = new int[holders.size()];
+        List<List<Integer>> neighbours = new ArrayList<List<Integer>>();
+        for (int i = 0; i != holders.size(); i++) {
+            components[i] = i;
+            neighbours.add(new ArrayList<Integer>());
+        }
+        for (Media media : medias) {
+            List<Integer> linked = new ArrayList<Integer>();
+            for (NetworkDevice dev : media.getConnectedDevices()) {
+                Integer owner = owners.get(dev);
+                if (owner != null) {
+                    linked.add(owner);
+                }
+            }
+            for (int i = 1; i < linked.size(); i++) {
+                int a = linked.get(0);
+                int b = linked.get(i);
+                neighbours.get(a).add(b);
+                neighbours.get(b).add(a);
+                if (media.getDelay() == 0) {
+                    components[find(components, a)] = find(components, b);
+                }
+            }
+        }
+
+        // components in the breadth first order of their first devices
+        List<List<Integer>> groups = new ArrayList<List<Integer>>();
+        Map<Integer, List<Integer>> groupOf = new HashMap<Integer, List<Integer>>();
+        boolean[] visited = new boolean[holders.size()];
+        ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+        for (int start = 0; start != holders.size(); start++) {
+            if (visited[start]) {
+                continue;
+            }
+            visited[start] = true;
+            queue.add(start);
+            while (!queue.isEmpty()) {
+                int i = queue.poll();
+                int component = find(components, i);
+                List<Integer> group = groupOf.get(component);
+                if (group == null) {
+                    group = new ArrayList<Integer>();
+                    groupOf.put(component, group);
+                    groups.add(group);
+                }
+                group.add(i);
+                for (int n : neighbours.get(i)) {
+                    if (!visited[n]) {
+                        visited[n] = true;
+                        queue.add(n);
+                    }
+                }
+            }
+        }
+
+        List<EventScheduler> schedulers = new ArrayList<EventScheduler>();
+        schedulers.add(scheduler);
+        int target = (holders.size() + count - 1) / count;
+        int filled = 0;
+        for (List<Integer> group : groups) {
+            if (filled != 0 && filled + group.size() > target && schedulers.size() < count) {
+                EventScheduler region = new EventScheduler();
+                region.runUntil(scheduler.getTime());
+                schedulers.add(region);
+                filled = 0;
+            }
+            for (int i : group) {
+                regions.put(holders.get(i), schedulers.get(schedulers.size() - 1));
+            }
+            filled += group.size();
+        }
+
+        // the spanning tree timers must run along with the switch
+        for (NetworkDeviceHolder holder : holders) {
+            if (holder instanceof Switch && ((Switch) holder).getSpanningTree() != null) {
+                ((Switch) holder).enableSpanningTree(regions.get(holder));
+            }
+        }
+
+        long lookahead = Long.MAX_VALUE;
+        for (Media media : medias) {
+            EventScheduler first = null;
+            for (NetworkDevice dev : media.getConnectedDevices()) {
+                Integer owner = owners.get(dev);
+                if (owner == null) {
+                    continue;
+                }
+                EventScheduler region = regions.get(holders.get(owner));
+                media.setScheduler(dev, region);
+                if (first == null) {
+                    first = region;
+                } else if (first != region) {
+                    lookahead = Math.min(lookahead, media.getDelay());
+                }
+            }
+        }
+        simulator = new ParallelSimulator(schedulers, lookahead);
+        return simulator;
+    }
+
+    private static int find(int[] components, int i) {
+        while (components[i] != i) {
+            components[i] = components[components[i]];
+            i = components[i];
+        }
+        return i;
+    }
+
+    /**
+     * @param name unique name of the device.
+     * @param device to add.
+     * @throws IllegalArgumentException if the name is already taken.
+     */
+    public void addDevice(String name, NetworkDeviceHolder device) {
+        if (devices.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate device name: " + name);
+        }
+        devices.put(name, device);
+    }
+
+    public boolean hasDevice(String name) {
+        return devices.containsKey(name);
+    }
+
+    /**
+     * @return the device or null if there is no device with the name.
+     */
+    public NetworkDeviceHolder getDevice(String name) {
+        return devices.get(name);
+    }
+
+    /**
+     * @return devices by their names in the order they were added.
+     */
+    public Map<String, NetworkDeviceHolder> getDevices() {
+        return Collections.unmodifiableMap(devices);
+    }
+
+    public void addMedia(Media media) {
+        medias.add(media);
+    }
+
+    public List<Media> getMedias() {
+        return Collections.unmodifiableList(medias);
+    }
+
+    /**
+     * @return interfaces of a router or ports of a concentrator.
+     */
+    public static List<NetworkDevice> getNetworkDevices(NetworkDeviceHolder holder) {
+        List<NetworkDevice> res = new ArrayList<NetworkDevice>();
+        if (holder instanceof Router) {
+            for (Interface iface : ((Router) holder).getInterfaces()) {
+                if (iface instanceof NetworkDevice) {
+                    res.add((NetworkDevice) iface);
+                }
+            }
+        } else if (holder instanceof Concentrator) {
+            Concentrator concentrator = (Concentrator) holder;
+            for (int i = 0; i != concentrator.getPortsCount(); i++) {
+                res.add(concentrator.getPort(i));
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Releases resources held by all the devices.
+     */
+    public void dispose() {
+        for (NetworkDeviceHolder device : devices.values()) {
+            device.dispose();
+        }
+    }
+}
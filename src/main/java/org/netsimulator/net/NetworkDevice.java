@@ -25,14 +25,11 @@ public interface NetworkDevice
     void disconnectMedia();
     void recivePacket(Layer2Packet packet);
     void transmitPacket(Layer2Packet packet);
-    int getRXBytes();
-    int getTXBytes();
-    int getRXPackets();
-    int getTXPackets();
-    int getRXPacketsErrors();
-    int getTXPacketsErrors();
-    int getRXDroped();
-    int getTXDroped();
+
+    /**
+     * @return current values of the packet and byte counters.
+     */
+    DeviceCounters.Snapshot getStatistics();
     int getId();
     void addTransferPacketListener(TransferPacketListener listener);
     void removeTransferPacketListener(TransferPacketListener listener);
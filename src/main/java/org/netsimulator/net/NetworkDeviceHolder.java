@@ -29,4 +29,10 @@ package org.netsimulator.net;
 public interface NetworkDeviceHolder
 {
     NetworkDevice getNetworkDeviceById(int id);
+
+    /**
+     * Releases resources (timers, caches) held by the devices
+     * once the holder is deleted from the network.
+     */
+    void dispose();
 }
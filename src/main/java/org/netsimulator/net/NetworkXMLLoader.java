@@ -0,0 +1,291 @@
+/*
+NET-Simulator -- Network simulator.
+Copyright (C) 2006 Maxim Tereshin <maxim-tereshin@yandex.ru>
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along
+with this program; if not, write to the Free Software Foundation,
+Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+*/
+
+
+package org.netsimulator.net;
+
+import org.netsimulator.sim.EventScheduler;
+import org.netsimulator.util.IdGenerator;
+import org.netsimulator.util.ResourceEntityResolverFactory;
+import org.netsimulator.util.XMLHelper;
+import org.xml.sax.*;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Loads a project file into a {@link Network}. Unlike the project loader
+ * of the UI it builds the devices only, so it needs no display. Shapes are
+ * only used to name the devices, a device is named after its shape, or
+ * after the shape id if the name is empty or taken.
+ */
+public class NetworkXMLLoader extends DefaultHandler {
+
+    private static final Logger LOGGER = Logger.getLogger(NetworkXMLLoader.class.getName());
+
+    private static final EntityResolver PROJECT_DTD_RESOLVER =
+            ResourceEntityResolverFactory.DEFAULT.createForProject();
+
+    private final EventScheduler scheduler;
+    private Network network;
+    private final Map<Integer, NetworkDevice> sockets = new HashMap<Integer, NetworkDevice>();
+
+    private String currentName;
+    private NetworkDeviceHolder currentHolder;
+    private IP4Router currentRouter;
+    private RoutingTable.Batch currentRoutes;
+    private Concentrator currentConcentrator;
+    private boolean currentStp;
+    private Media currentMedia;
+
+    /**
+     * @param scheduler to deliver packets of the loaded network through.
+     */
+    public NetworkXMLLoader(EventScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public Network load(File fromFile) throws IOException, SAXException {
+        InputStream in = new FileInputStream(fromFile);
+        try {
+            return load(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    public Network load(InputStream in) throws IOException, SAXException {
+        network = new Network(new IdGenerator(), scheduler);
+        sockets.clear();
+
+        XMLReader reader = XMLReaderFactory.createXMLReader(XMLHelper.vendorParserClass);
+        reader.setFeature("http://xml.org/sax/features/validation", true);
+
+        InputSource inputSource = new InputSource(in);
+        inputSource.setEncoding(XMLHelper.charsetName);
+
+        reader.setContentHandler(this);
+        reader.setErrorHandler(this);
+        reader.setEntityResolver(PROJECT_DTD_RESOLVER);
+        reader.parse(inputSource);
+
+        return network;
+    }
+
+    @Override
+    public void error(SAXParseException e) throws SAXException {
+        throw e;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts)
+            throws SAXException {
+        if (qName.equals("project")) {
+            network.getIdGenerator().setInitValue(parseInt(atts, "currentId"));
+        } else if (qName.equals("routerShape") || qName.equals("desktopShape")
+                || qName.equals("hubShape") || qName.equals("switchShape")) {
+            currentName = atts.getValue("name");
+            if (currentName == null || currentName.length() == 0 || network.hasDevice(currentName)) {
+                currentName = atts.getValue("id");
+            }
+        } else if (qName.equals("IP4Router")) {
+            try {
+                currentRouter = new IP4Router(network.getIdGenerator(), 0, parseInt(atts, "id"));
+            } catch (TooManyInterfacesException tmie) {
+                throw new SAXException(tmie);
+            }
+            addDevice(currentRouter);
+        } else if (qName.equals("hub")) {
+            Hub hub = new Hub(network.getIdGenerator(), 0, parseInt(atts, "id"));
+            currentConcentrator = hub;
+            addDevice(hub);
+        } else if (qName.equals("switch")) {
+            Switch _switch_ = new Switch(network.getIdGenerator(), 0, parseInt(atts, "id"));
+            currentConcentrator = _switch_;
+            currentStp = "1".equals(atts.getValue("stp"));
+            addDevice(_switch_);
+        } else if (qName.equals("port")) {
+            currentConcentrator.addPort(new Port(network.getIdGenerator(), parseInt(atts, "id")));
+        } else if (qName.equals("eth")) {
+            loadEthernet(atts);
+        } else if (qName.equals("routingTable")) {
+            currentRoutes = currentRouter.getRoutingTable().edit();
+        } else if (qName.equals("row")) {
+            loadRoutingTableRow(atts);
+        } else if (qName.equals("socketShape")) {
+            NetworkDevice dev = currentHolder == null
+                    ? null : currentHolder.getNetworkDeviceById(parseInt(atts, "devId"));
+            if (dev != null) {
+                sockets.put(parseInt(atts, "id"), dev);
+            }
+        } else if (qName.equals("media")) {
+            currentMedia = new Media(parseInt(atts, "id"), scheduler);
+            configureMedia(currentMedia, atts);
+            network.addMedia(currentMedia);
+        } else if (qName.equals("plug")) {
+            loadPlug(atts);
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        if (qName.equals("routerShape") || qName.equals("desktopShape")
+                || qName.equals("hubShape") || qName.equals("switchShape")) {
+            currentName = null;
+            currentHolder = null;
+        } else if (qName.equals("IP4Router")) {
+            currentRouter = null;
+        } else if (qName.equals("routingTable")) {
+            currentRoutes.commit();
+            currentRoutes = null;
+        } else if (qName.equals("hub") || qName.equals("switch")) {
+            if (currentStp) {
+                // all the ports are there by now
+                ((Switch) currentConcentrator).enableSpanningTree(scheduler);
+                currentStp = false;
+            }
+            currentConcentrator = null;
+        } else if (qName.equals("patchcord")) {
+            currentMedia = null;
+        }
+    }
+
+    private void addDevice(NetworkDeviceHolder device) {
+        currentHolder = device;
+        network.addDevice(currentName, device);
+        LOGGER.log(Level.FINEST, "Loaded device: {0}", currentName);
+    }
+
+    private void loadEthernet(Attributes atts) throws SAXException {
+        EthernetInterface eth;
+        try {
+            eth = new EthernetInterface(network.getIdGenerator(), parseInt(atts, "id"),
+                    new MACAddress(atts.getValue("mac")), atts.getValue("name"));
+        } catch (AddressException ae) {
+            throw new SAXException(ae);
+        }
+        currentRouter.addInterface(eth);
+
+        try {
+            eth.setInetAddress(parseAddress(atts, "ip4"));
+            eth.setNetmaskAddress(parseAddress(atts, "ip4mask"));
+            eth.setBroadcastAddress(parseAddress(atts, "ip4bcast"));
+            String bandwidth = atts.getValue("bandwidth");
+            if (bandwidth != null && bandwidth.length() != 0) {
+                eth.setBandwidth(Integer.parseInt(bandwidth));
+            }
+            int status = parseInt(atts, "status");
+            if (status != Interface.UNKNOWN) {
+                eth.setStatus(status);
+            }
+        } catch (ChangeInterfacePropertyException e) {
+            throw new SAXException(e);
+        } catch (NumberFormatException nfe) {
+            throw new SAXException(nfe);
+        }
+    }
+
+    private void loadRoutingTableRow(Attributes atts) throws SAXException {
+        Interface iface = currentRouter.getInterface(atts.getValue("iface"));
+        if (iface == null) {
+            throw new SAXException("Faild to find interface by name: " + atts.getValue("iface"));
+        }
+        try {
+            currentRoutes.add(
+                    parseAddress(atts, "target"),
+                    parseAddress(atts, "netmask"),
+                    parseAddress(atts, "gateway"),
+                    parseInt(atts, "metric"),
+                    iface);
+        } catch (NotAllowedAddressException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    private void loadPlug(Attributes atts) throws SAXException {
+        String socket = atts.getValue("socket");
+        if (socket == null || socket.length() == 0) {
+            return;
+        }
+        NetworkDevice dev = sockets.get(parseInt(atts, "socket"));
+        if (dev == null) {
+            throw new SAXException("Faild to find socket by id: " + socket);
+        }
+        try {
+            currentMedia.connectToDevice(dev);
+        } catch (TooManyConnectionsException tmce) {
+            throw new SAXException(tmce);
+        }
+    }
+
+    /**
+     * Sets the bandwidth, the delay and the queue size of the media from
+     * the attributes of its element, the missing or empty ones are left
+     * as they are. The project loader of the GUI shares it.
+     */
+    public static void configureMedia(Media media, Attributes atts) throws SAXException {
+        try {
+            String value = atts.getValue("bandwidth");
+            if (value != null && value.length() != 0) {
+                media.setBandwidth(Long.parseLong(value));
+            }
+            value = atts.getValue("delay");
+            if (value != null && value.length() != 0) {
+                media.setDelay(Long.parseLong(value));
+            }
+            value = atts.getValue("queueSize");
+            if (value != null && value.length() != 0) {
+                media.setQueueSize(Integer.parseInt(value));
+            }
+        } catch (IllegalArgumentException iae) {
+            throw new SAXException(iae);
+        }
+    }
+
+    private static int parseInt(Attributes atts, String name) throws SAXException {
+        try {
+            return Integer.parseInt(atts.getValue(name));
+        } catch (NumberFormatException nfe) {
+            throw new SAXException(nfe);
+        }
+    }
+
+    /**
+     * @return the address or null if the attribute is missing or empty.
+     */
+    private static IP4Address parseAddress(Attributes atts, String name) throws SAXException {
+        String value = atts.getValue(name);
+        if (value == null || value.length() == 0) {
+            return null;
+        }
+        try {
+            return new IP4Address(value);
+        } catch (AddressException ae) {
+            throw new SAXException(ae);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/*
+NET-Simulator -- Network simulator.
+Copyright (C) 2006 Maxim Tereshin <maxim-tereshin@yandex.ru>
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along
+with this program; if not, write to the Free Software Foundation,
+Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+*/
+
+
+package org.netsimulator.net;
+
+import org.netsimulator.sim.EventScheduler;
+import org.netsimulator.util.ConfigurableThreadFactory;
+import org.netsimulator.util.TimingWheel;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes the packets it's notified about into a libpcap file, so the
+ * traffic can be looked at with Wireshark or tcpdump. It can listen to an
+ * interface, a port or a media. Devices report a packet as transmitted or
+ * received, media as transferred, so it is written once either way.
+ * <p>
+ * Records are put into one of two preallocated direct buffers. A full
+ * buffer is handed to the writer thread (shared by all the captures) and
+ * the records go on into the other one, the delivering thread waits only
+ * if the disk can not keep up. The buffered records are also handed over
+ * every {@link #FLUSH_INTERVAL} ms, so a running capture can be watched.
+ * Timestamps are the simulated time of the scheduler.
+ * It is thread safe.
+ */
+public class PcapWriter implements TransferPacketListener, Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(PcapWriter.class.getName());
+
+    static final int MAGIC = 0xA1B2C3D4;
+    static final int LINKTYPE_ETHERNET = 1;
+    public static final int SNAPLEN = 65535;
+    static final int FILE_HEADER_SIZE = 24;
+    static final int RECORD_HEADER_SIZE = 16;
+    static final int BUFFER_SIZE = 256 * 1024;
+    public static final long FLUSH_INTERVAL = 1000; // ms
+
+    private static class WriterHolder {
+        static final ExecutorService INSTANCE = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new ConfigurableThreadFactory("PcapWriter-").newThread(r);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private final FileChannel channel;
+    private final EventScheduler clock;
+    private final TimingWheel wheel;
+    private final boolean devicePackets;
+    private final BlockingQueue<ByteBuffer> spare = new ArrayBlockingQueue<ByteBuffer>(1);
+    private final TimingWheel.Timeout flusher = new TimingWheel.Timeout() {
+        @Override
+        protected void expire() {
+            periodicFlush();
+        }
+    };
+    private ByteBuffer buffer;
+    private long packets;
+    private volatile boolean closed;
+    private volatile IOException failure;
+
+    /**
+     * Creates the file, an existing one is overwritten.
+     * @param file to write to.
+     * @param clock timestamps of the packets are its time.
+     * @param media true if the writer listens to a media, otherwise to a device.
+     */
+    public PcapWriter(File file, EventScheduler clock, boolean media) throws IOException {
+        this(file, clock, media, TimingWheel.getDefault());
+    }
+
+    /**
+     * @param wheel flushes the buffered records periodically.
+     */
+    public PcapWriter(File file, EventScheduler clock, boolean media, TimingWheel wheel) throws IOException {
+        this.clock = clock;
+        this.devicePackets = !media;
+        this.wheel = wheel;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        // network byte order, it is told to the readers by the magic number
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        spare.add(ByteBuffer.allocateDirect(BUFFER_SIZE));
+        buffer.putInt(MAGIC)
+                .putShort((short) 2)
+                .putShort((short) 4)
+                .putInt(0)      // GMT
+                .putInt(0)      // accuracy of timestamps
+                .putInt(SNAPLEN)
+                .putInt(LINKTYPE_ETHERNET);
+        wheel.schedule(flusher, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void packetTransfered(Packet packet) {
+        if (!devicePackets) {
+            write(packet);
+        }
+    }
+
+    @Override
+    public void packetTransmitted(Packet packet) {
+        if (devicePackets) {
+            write(packet);
+        }
+    }
+
+    @Override
+    public void packetReceived(Packet packet) {
+        if (devicePackets) {
+            write(packet);
+        }
+    }
+
+    /**
+     * @return number of written packets.
+     */
+    public synchronized long getPacketsCount() {
+        return packets;
+    }
+
+    private synchronized void write(Packet packet) {
+        if (closed || !(packet instanceof Layer2Packet)) {
+            return;
+        }
+        try {
+            if (buffer.remaining() < RECORD_HEADER_SIZE + Layer2Packet.MAX_SIZE) {
+                handOff(spare.take());
+            }
+            long time = clock.getTime();
+            int start = buffer.position();
+            buffer.putInt((int) (time / 1000000000L))
+                    .putInt((int) (time % 1000000000L / 1000))
+                    .putInt(0)
+                    .putInt(0);
+            int frameStart = buffer.position();
+            int length = ((Layer2Packet) packet).encode(buffer);
+            if (length > SNAPLEN) {
+                buffer.position(frameStart + SNAPLEN);
+            }
+            buffer.putInt(start + 8, Math.min(length, SNAPLEN));
+            buffer.putInt(start + 12, length);
+            packets++;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Hands the filled buffer to the writer thread and goes on with the
+     * next one. Buffers are written in the order they are handed over.
+     */
+    private void handOff(ByteBuffer next) {
+        final ByteBuffer full = buffer;
+        buffer = next;
+        WriterHolder.INSTANCE.execute(() -> drain(full));
+    }
+
+    /**
+     * Runs on the writer thread, the buffer is then spare again.
+     */
+    private void drain(ByteBuffer full) {
+        try {
+            full.flip();
+            while (full.hasRemaining() && failure == null) {
+                channel.write(full);
+            }
+        } catch (IOException ioe) {
+            if (failure == null) {
+                LOGGER.log(Level.SEVERE, "Can not write the capture, it is stopped.", ioe);
+                failure = ioe;
+                closed = true;
+            }
+        } finally {
+            full.clear();
+            spare.add(full);
+        }
+    }
+
+    /**
+     * Hands over what is buffered unless the other buffer is still being
+     * written, the wheel thread does not wait for the disk.
+     */
+    private synchronized void periodicFlush() {
+        if (closed) {
+            return;
+        }
+        if (buffer.position() != 0) {
+            ByteBuffer next = spare.poll();
+            if (next != null) {
+                handOff(next);
+            }
+        }
+        wheel.schedule(flusher, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes the buffered records to the file, it returns once they are
+     * written.
+     */
+    public synchronized void flush() throws IOException {
+        if (!closed) {
+            if (buffer.position() != 0) {
+                try {
+                    handOff(spare.take());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            awaitWriter();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static void awaitWriter() throws IOException {
+        try {
+            WriterHolder.INSTANCE.submit(() -> { }).get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException ee) {
+            throw new IOException(ee.getCause());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel.isOpen()) {
+            try {
+                flush();
+            } finally {
+                closeQuietly();
+            }
+        }
+    }
+
+    private void closeQuietly() {
+        closed = true;
+        wheel.cancel(flusher);
+        try {
+            channel.close();
+        } catch (IOException ioe) {
+            LOGGER.log(Level.FINE, "Can not close the capture.", ioe);
+        }
+    }
+}
@@ -25,20 +25,22 @@ import java.util.Iterator;
 
 public class Port implements NetworkDevice {
 
+    /** States of the port as the spanning tree sets them, see {@link SpanningTree}. */
+    public static final int DISABLED = 0;
+    public static final int BLOCKING = 1;
+    public static final int LISTENING = 2;
+    public static final int LEARNING = 3;
+    public static final int FORWARDING = 4;
+
     private int id;
     private IdGenerator idGenerator;
 
     private Media media;
     private Concentrator concentrator;
+    private int index = -1;
+    private volatile int state = FORWARDING;
 
-    private int rxBytes;
-    private int txBytes;
-    private int rxPackets;
-    private int txPackets;
-    private int rxPacketsErrors;
-    private int txPacketsErrors;
-    private int rxDroped;
-    private int txDroped;
+    private final DeviceCounters counters = new DeviceCounters();
     private ArrayList<TransferPacketListener> transferPacketListeners;
 
     public Port(IdGenerator idGenerator, Concentrator concentrator) {
@@ -65,13 +67,44 @@ public class Port implements NetworkDevice {
         this.media = null;
     }
 
+    public Media getMedia() {
+        return media;
+    }
+
+    /**
+     * @return the spanning tree state, the port is forwarding unless
+     * the spanning tree is enabled.
+     */
+    public int getState() {
+        return state;
+    }
+
+    void setState(int state) {
+        this.state = state;
+    }
+
     public void setConcentrator(Concentrator concentrator) {
         this.concentrator = concentrator;
     }
 
+    /**
+     * @return position of the port in its concentrator, -1 if it does not
+     * belong to any.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    void setIndex(int index) {
+        this.index = index;
+    }
+
     public void recivePacket(Layer2Packet packet) {
 
-        if (concentrator != null) {
+        if (concentrator == null) {
+            counters.rxDropped();
+        } else {
+            counters.received(packet.getSize());
             concentrator.transportPacket(this, packet);
 
             for (Iterator<TransferPacketListener> i = transferPacketListeners.iterator(); i.hasNext();) {
@@ -84,7 +117,11 @@ public class Port implements NetworkDevice {
 
     public void transmitPacket(Layer2Packet packet) {
         if (media != null) {
-            media.transmitPacket(this, packet);
+            if (!media.transmitPacket(this, packet)) {
+                counters.txDropped(1);
+                return;
+            }
+            counters.transmitted(packet.getSize());
 
             for (Iterator<TransferPacketListener> i = transferPacketListeners.iterator(); i.hasNext();) {
                 TransferPacketListener listener = i.next();
@@ -94,36 +131,8 @@ public class Port implements NetworkDevice {
         }
     }
 
-    public int getRXBytes() {
-        return rxBytes;
-    }
-
-    public int getRXDroped() {
-        return rxDroped;
-    }
-
-    public int getRXPackets() {
-        return rxPackets;
-    }
-
-    public int getRXPacketsErrors() {
-        return rxPacketsErrors;
-    }
-
-    public int getTXBytes() {
-        return txBytes;
-    }
-
-    public int getTXDroped() {
-        return txDroped;
-    }
-
-    public int getTXPackets() {
-        return txPackets;
-    }
-
-    public int getTXPacketsErrors() {
-        return txPacketsErrors;
+    public DeviceCounters.Snapshot getStatistics() {
+        return counters.snapshot();
     }
 
     public int getId() {
@@ -22,13 +22,18 @@ Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
 package org.netsimulator.net;
 
 import java.util.*;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class RoutingTable {
 
     private static final Logger logger = Logger.getLogger( RoutingTable.class.getName() );
-    private List<RoutingTableRow> table = Collections.unmodifiableList(new LinkedList<>());
+    /**
+     * Rows and the trie built over them are published together, so
+     * lookups never see a half updated table and never lock.
+     */
+    private volatile ForwardingTrie fib = ForwardingTrie.EMPTY;
 
     public void addRoute(
             IP4Address target,
@@ -48,13 +53,38 @@ public class RoutingTable {
 
     // Visible for testing
     void addRoute( RoutingTableRow row ) {
-        Set<RoutingTableRow> newTable = new HashSet<>(table);
-        if(newTable.add(row)) {
-            logger.log( Level.FINEST, "{0}: the row:\n{1}\n was added to the routing table", new Object[]{hashCode() + "", row});
-            List<RoutingTableRow> l = new LinkedList<>(newTable);
-            l.sort(RoutingTableRow.COMPARATOR);
-            this.table = Collections.unmodifiableList(l);
+        edit().add( row ).commit();
+    }
+
+    /**
+     * Adds the rows rebuilding the table once, rows which are already
+     * in the table are skipped.
+     * @param rows to add.
+     * @return number of added rows.
+     */
+    public int addRoutes( Collection<RoutingTableRow> rows ) {
+        Batch batch = edit();
+        for( RoutingTableRow row : rows ) {
+            batch.add( row );
         }
+        return batch.commit();
+    }
+
+    /**
+     * Deletes the rows rebuilding the table once.
+     * @param rows equal to the rows to delete.
+     * @return number of deleted rows.
+     */
+    public int deleteRoutes( Collection<RoutingTableRow> rows ) {
+        Batch batch = edit();
+        for( RoutingTableRow row : rows ) {
+            batch.delete( row );
+        }
+        return batch.commit();
+    }
+
+    private void publish(List<RoutingTableRow> sortedRows) {
+        this.fib = new ForwardingTrie(sortedRows);
     }
 
     public int deleteRoute(
@@ -63,22 +93,7 @@ public class RoutingTable {
             IP4Address gateway,
             int metric,
             Interface iface ) {
-        int deleted = 0;
-        List<RoutingTableRow> newTable = new LinkedList<>(table);
-        for( Iterator<RoutingTableRow> i = newTable.iterator(); i.hasNext();) {
-            RoutingTableRow row = i.next();
-            if( row.getTarget().equals( target ) &&
-                    row.getNetmask().equals( netmask ) &&
-                    row.getInterface().getName().equals( iface.getName() ) &&
-                    row.getMetric() == metric &&
-                    ( ( row.getGateway() != null && row.getGateway().equals( gateway ) ) ||
-                    ( row.getGateway() == null && gateway == null ) ) ) {
-                i.remove();
-                deleted++;
-            }
-        }
-        this.table = Collections.unmodifiableList(newTable);
-        return deleted;
+        return edit().delete( target, netmask, gateway, metric, iface ).commit();
     }
 
     public int deleteRoute(
@@ -86,36 +101,140 @@ public class RoutingTable {
             IP4Address netmask,
             IP4Address gateway,
             Interface iface ) {
-        int deleted = 0;
-        List<RoutingTableRow> newTable = new LinkedList<>(table);
-        for(Iterator<RoutingTableRow> i = newTable.iterator(); i.hasNext();) {
-            RoutingTableRow row = i.next();
-            if(row.getTarget().equals(target) &&
-                    row.getNetmask().equals( netmask ) &&
-                    row.getInterface().getName().equals( iface.getName() ) &&
-                    ( ( row.getGateway() != null && row.getGateway().equals( gateway ) ) ||
-                    ( row.getGateway() == null && gateway == null ) ) ) {
-                i.remove();
-                deleted++;
-            }
-        }
-        this.table = Collections.unmodifiableList(newTable);
-        return deleted;
+        return edit().delete( target, netmask, gateway, iface ).commit();
     }
 
-    RoutingTableRow route(IP4Address destination) {
-        RoutingTableRow res = null;
-        for (RoutingTableRow r : table) {
-            logger.log( Level.FINE, "Processing row: {0}", r);
+    /**
+     * Starts a batch of changes, nothing is changed until it's committed.
+     * @return the batch.
+     */
+    public Batch edit() {
+        return new Batch();
+    }
 
-            if( r.match( destination ) ) {
-                logger.log( Level.FINE, "the destination {0} matchs the row", destination);
-                res = r;
-                break;
-            } else {
-                logger.log( Level.FINE, "the destination {0} doesn''t match the row", destination);
+    /**
+     * Changes of the table which are applied together. The table is
+     * rebuilt and published once on {@link #commit()}, so lookups see
+     * either none or all of the changes. Changes are applied in the order
+     * they were made to the table as it is at the moment of the commit.
+     * A batch is not thread safe and may be committed only once.
+     */
+    public final class Batch {
+        private final List<Predicate<Set<RoutingTableRow>>> changes = new ArrayList<>();
+        private boolean committed;
+
+        private Batch() {
+        }
+
+        public Batch add(
+                IP4Address target,
+                IP4Address netmask,
+                IP4Address gateway,
+                int metric,
+                Interface iface ) throws NotAllowedAddressException {
+            return add( new RoutingTableRow( target, netmask, gateway, metric, iface ) );
+        }
+
+        public Batch add( RoutingTableRow row ) {
+            changes.add( rows -> rows.add( row ) );
+            return this;
+        }
+
+        /**
+         * Deletes the row equal to the given one.
+         */
+        public Batch delete( RoutingTableRow row ) {
+            changes.add( rows -> rows.remove( row ) );
+            return this;
+        }
+
+        /**
+         * Deletes the rows having the target, netmask, gateway, metric
+         * and the interface of the name.
+         */
+        public Batch delete(
+                IP4Address target,
+                IP4Address netmask,
+                IP4Address gateway,
+                int metric,
+                Interface iface ) {
+            changes.add( rows -> rows.removeIf( row ->
+                    row.getMetric() == metric && matches( row, target, netmask, gateway, iface ) ) );
+            return this;
+        }
+
+        /**
+         * Deletes the rows having the target, netmask, gateway and
+         * the interface of the name, whatever their metric is.
+         */
+        public Batch delete(
+                IP4Address target,
+                IP4Address netmask,
+                IP4Address gateway,
+                Interface iface ) {
+            changes.add( rows -> rows.removeIf( row -> matches( row, target, netmask, gateway, iface ) ) );
+            return this;
+        }
+
+        /**
+         * Applies the changes.
+         * @return number of added and deleted rows.
+         */
+        public int commit() {
+            if( committed ) {
+                throw new IllegalStateException( "The batch is already committed" );
+            }
+            committed = true;
+            synchronized( RoutingTable.this ) {
+                Set<RoutingTableRow> rows = new HashSet<>( fib.getRows() );
+                int added = 0;
+                int deleted = 0;
+                boolean changed = false;
+                for( Predicate<Set<RoutingTableRow>> change : changes ) {
+                    int size = rows.size();
+                    if( change.test( rows ) ) {
+                        changed = true;
+                        if( rows.size() > size ) {
+                            added += rows.size() - size;
+                        } else {
+                            deleted += size - rows.size();
+                        }
+                    }
+                }
+                if( changed ) {
+                    List<RoutingTableRow> sorted = new ArrayList<>( rows );
+                    sorted.sort( RoutingTableRow.COMPARATOR );
+                    publish( sorted );
+                    logger.log( Level.FINEST, "{0}: {1} rows were added to and {2} rows were deleted from the routing table",
+                            new Object[]{hashCode() + "", added, deleted});
+                }
+                return added + deleted;
             }
         }
+    }
+
+    private static boolean matches(
+            RoutingTableRow row,
+            IP4Address target,
+            IP4Address netmask,
+            IP4Address gateway,
+            Interface iface ) {
+        return row.getTarget().equals( target ) &&
+                row.getNetmask().equals( netmask ) &&
+                row.getInterface().getName().equals( iface.getName() ) &&
+                ( ( row.getGateway() != null && row.getGateway().equals( gateway ) ) ||
+                ( row.getGateway() == null && gateway == null ) );
+    }
+
+    /**
+     * Finds the route with the longest prefix matching the destination.
+     * Among routes with equal prefixes the one with the least metric wins.
+     * @param destination address.
+     * @return found route or null.
+     */
+    public RoutingTableRow route(IP4Address destination) {
+        RoutingTableRow res = fib.lookup(destination);
+        logger.log( Level.FINE, "the destination {0} matches the row {1}", new Object[]{destination, res});
         return res;
     }
 
@@ -128,7 +247,7 @@ public class RoutingTable {
      */
     public RoutingTableRow routeThroughoutStraightConnectedNetworks(IP4Address destination ) {
         RoutingTableRow res = null;
-        for (RoutingTableRow r : table) {
+        for (RoutingTableRow r : fib.getRows()) {
             if( r.getGateway() != null ) {
                 continue;
             }
@@ -142,13 +261,13 @@ public class RoutingTable {
     }
 
     public List<RoutingTableRow> getRows() {
-        return table;
+        return fib.getRows();
     }
 
     @Override
     public String toString() {
         StringBuilder curTable = new StringBuilder("Routing table:\n");
-        for (RoutingTableRow routingTableRow : table) {
+        for (RoutingTableRow routingTableRow : fib.getRows()) {
             curTable.append(routingTableRow.toString()).append("\n");
         }
         return curTable.toString();
@@ -261,24 +261,23 @@ public class RoutingTableRow
                 res = EQ;
             } else
             {
-                if( r1.getNetmask().equals(r2.getNetmask()) ) 
+                int l1 = countNetmaskLength(r1.getNetmask());
+                int l2 = countNetmaskLength(r2.getNetmask());
+                if( l1 != l2 )
                 {
-                    if(r1.getMetric() <= r2.getMetric())
-                    {
-                        res = LT; // r1 has higher priority than r2
-                    }else
-                    {
-                        res = GT; // r1 has lower priority than r2
-                    }    
+                    // the longer netmask has higher priority
+                    res = l1 > l2 ? LT : GT;
                 }
-                else if( countNetmaskLength(r1.getNetmask()) >
-                         countNetmaskLength(r2.getNetmask()) )
+                else if( r1.getMetric() != r2.getMetric() )
                 {
-                    res = LT; // r1 has higher priority than r2
+                    // the least metric has higher priority
+                    res = r1.getMetric() < r2.getMetric() ? LT : GT;
                 }
                 else
                 {
-                    res = GT; // r1 has lower priority than r2
+                    // rows of the same priority are still ordered somehow
+                    // to keep the order total, as sorting requires.
+                    res = sign(tieBreak(r1, r2));
                 }
             }
             
@@ -289,6 +288,31 @@ public class RoutingTableRow
             return res;
         }
 
+        private int tieBreak(RoutingTableRow r1, RoutingTableRow r2) {
+            int res = Integer.compareUnsigned(r1.getNetmask().toIntValue(), r2.getNetmask().toIntValue());
+            if( res == 0 ) {
+                res = Integer.compareUnsigned(r1.getTarget().toIntValue(), r2.getTarget().toIntValue());
+            }
+            if( res == 0 ) {
+                res = Long.compare(gatewayValue(r1), gatewayValue(r2));
+            }
+            if( res == 0 ) {
+                res = Integer.compare(r1.getInterface().getId(), r2.getInterface().getId());
+            }
+            if( res == 0 ) {
+                res = Integer.compare(System.identityHashCode(r1.getInterface()), System.identityHashCode(r2.getInterface()));
+            }
+            return res;
+        }
+
+        private long gatewayValue(RoutingTableRow r) {
+            return r.getGateway() == null ? -1 : r.getGateway().toIntValue() & 0xFFFFFFFFL;
+        }
+
+        private int sign(int value) {
+            return value < 0 ? LT : value > 0 ? GT : EQ;
+        }
+
         private int countNetmaskLength(IP4Address netmask) {
             return Integer.bitCount(netmask.toIntValue());
         }
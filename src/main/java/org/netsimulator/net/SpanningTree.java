@@ -0,0 +1,492 @@
+/*
+NET-Simulator -- Network simulator.
+Copyright (C) 2006 Maxim Tereshin <maxim-tereshin@yandex.ru>
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along
+with this program; if not, write to the Free Software Foundation,
+Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+*/
+
+package org.netsimulator.net;
+
+import org.netsimulator.sim.EventScheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Spanning tree protocol (IEEE 802.1D) of a switch. The bridges elect
+ * the root by the configuration BPDUs, every bridge forwards through
+ * the port of the least cost path to the root and through the ports it
+ * is the designated bridge of the segment for. The rest of the ports are
+ * blocked, so redundant links do not make loops.
+ * <p>
+ * A port goes through the listening and the learning states for the
+ * forward delay each before it forwards. A port which starts or stops
+ * forwarding is a topology change: it is notified to the root, which
+ * flags its configuration BPDUs, and the bridges flush their MAC
+ * addresses tables.
+ * <p>
+ * The timers are events of the scheduler of the switch. Once started
+ * there is always a pending event, so a network with the spanning tree
+ * is never idle.
+ */
+public class SpanningTree {
+
+    private static final Logger logger = Logger.getLogger(SpanningTree.class.getName());
+
+    public static final int DEFAULT_PRIORITY = 32768;
+    public static final int DEFAULT_PORT_PRIORITY = 128;
+    /** Path cost of a 100 Mbit/s link, media without bandwidth count so. */
+    public static final int DEFAULT_PATH_COST = 19;
+    public static final long DEFAULT_HELLO_TIME = TimeUnit.SECONDS.toNanos(2);
+    public static final long DEFAULT_MAX_AGE = TimeUnit.SECONDS.toNanos(20);
+    public static final long DEFAULT_FORWARD_DELAY = TimeUnit.SECONDS.toNanos(15);
+    /** The age of the information grows that much at every bridge. */
+    static final long MESSAGE_AGE_INCREMENT = TimeUnit.SECONDS.toNanos(1);
+
+    public enum Role {
+        ROOT, DESIGNATED, BLOCKED
+    }
+
+    /**
+     * What the bridge knows about a port and the segment behind it.
+     */
+    private static final class PortInfo {
+        Role role = Role.DESIGNATED;
+        /** The designated bridge of the segment is another one. */
+        boolean received;
+        long root;
+        int cost;
+        long bridge;
+        int portId;
+        long messageAge;
+        long expires;
+        /** Pending state transitions of older versions are ignored. */
+        int version;
+    }
+
+    private final Switch bridge;
+    private final List<PortInfo> ports = new ArrayList<PortInfo>();
+    private int priority = DEFAULT_PRIORITY;
+    private long helloTime = DEFAULT_HELLO_TIME;
+    private long maxAge = DEFAULT_MAX_AGE;
+    private long forwardDelay = DEFAULT_FORWARD_DELAY;
+
+    private EventScheduler scheduler;
+    /** Events of the former runs are ignored. */
+    private volatile int generation;
+    private boolean running;
+    private long bridgeId;
+    private long rootId;
+    private int rootPathCost;
+    private int rootPort = -1;
+    private boolean topologyChange;
+    private long topologyChangeEnd;
+
+    SpanningTree(Switch bridge) {
+        this.bridge = bridge;
+    }
+
+    /**
+     * Starts the protocol anew, all the ports are blocked till the tree
+     * is built again.
+     * @param scheduler of the switch.
+     */
+    public synchronized void start(EventScheduler scheduler) {
+        this.scheduler = scheduler;
+        final int gen = ++generation;
+        running = true;
+        bridgeId = (long) priority << 48 | bridge.getBridgeAddress().toLongValue();
+        rootId = bridgeId;
+        rootPathCost = 0;
+        rootPort = -1;
+        topologyChange = false;
+        ports.clear();
+        for (Port port : bridge.getPorts()) {
+            port.setState(Port.BLOCKING);
+        }
+        bridge.getMACAddressesTable().clear();
+        scheduler.schedule(0, () -> tick(gen));
+    }
+
+    /**
+     * Stops the protocol, all the ports forward.
+     */
+    public synchronized void stop() {
+        generation++;
+        running = false;
+        for (Port port : bridge.getPorts()) {
+            port.setState(Port.FORWARDING);
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    public synchronized int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Takes effect once the tree is started.
+     * @param priority 0..65535, the least one makes the root.
+     */
+    public synchronized void setPriority(int priority) {
+        if (priority < 0 || priority > 0xFFFF) {
+            throw new IllegalArgumentException("Bad bridge priority " + priority);
+        }
+        this.priority = priority;
+    }
+
+    public synchronized long getHelloTime() {
+        return helloTime;
+    }
+
+    public synchronized long getMaxAge() {
+        return maxAge;
+    }
+
+    public synchronized long getForwardDelay() {
+        return forwardDelay;
+    }
+
+    /**
+     * Sets the timers the bridge uses when it is the root, the rest
+     * of the bridges take them from its BPDUs.
+     * @param helloTime in nanoseconds.
+     * @param maxAge in nanoseconds.
+     * @param forwardDelay in nanoseconds.
+     */
+    public synchronized void setTimers(long helloTime, long maxAge, long forwardDelay) {
+        if (helloTime <= 0 || maxAge <= helloTime || forwardDelay <= 0) {
+            throw new IllegalArgumentException("Bad spanning tree timers");
+        }
+        this.helloTime = helloTime;
+        this.maxAge = maxAge;
+        this.forwardDelay = forwardDelay;
+    }
+
+    public synchronized long getBridgeId() {
+        return bridgeId;
+    }
+
+    public synchronized long getRootId() {
+        return rootId;
+    }
+
+    public synchronized int getRootPathCost() {
+        return rootPathCost;
+    }
+
+    /**
+     * @return index of the root port, -1 if the bridge is the root.
+     */
+    public synchronized int getRootPort() {
+        return rootPort;
+    }
+
+    public synchronized boolean isRoot() {
+        return rootId == bridgeId;
+    }
+
+    public synchronized Role getRole(int port) {
+        return info(port).role;
+    }
+
+    /**
+     * @return the identifier as priority/MAC address.
+     */
+    public static String toString(long id) {
+        return (id >>> 48) + "/" + new MACAddress(id & 0xFFFFFFFFFFFFL);
+    }
+
+    private PortInfo info(int port) {
+        while (ports.size() <= port) {
+            ports.add(new PortInfo());
+        }
+        return ports.get(port);
+    }
+
+    private static int portId(int port) {
+        return DEFAULT_PORT_PRIORITY << 8 | (port + 1);
+    }
+
+    /**
+     * @return cost of the link of the port by its bandwidth, as 802.1D
+     * recommends.
+     */
+    static int pathCost(Port port) {
+        Media media = port.getMedia();
+        long bandwidth = media == null ? 0 : media.getBandwidth();
+        if (bandwidth == 0) {
+            return DEFAULT_PATH_COST;
+        }
+        if (bandwidth >= 10000000000L) {
+            return 2;
+        }
+        if (bandwidth >= 1000000000L) {
+            return 4;
+        }
+        if (bandwidth >= 100000000L) {
+            return 19;
+        }
+        if (bandwidth >= 16000000L) {
+            return 62;
+        }
+        if (bandwidth >= 10000000L) {
+            return 100;
+        }
+        return 250;
+    }
+
+    /**
+     * Compares priority vectors, the least is the best.
+     */
+    private static int compare(long root1, int cost1, long bridge1, int port1,
+            long root2, int cost2, long bridge2, int port2) {
+        int c = Long.compareUnsigned(root1, root2);
+        if (c == 0) {
+            c = Integer.compareUnsigned(cost1, cost2);
+        }
+        if (c == 0) {
+            c = Long.compareUnsigned(bridge1, bridge2);
+        }
+        if (c == 0) {
+            c = Integer.compare(port1, port2);
+        }
+        return c;
+    }
+
+    /**
+     * Handles a BPDU the port has received.
+     */
+    synchronized void receive(int port, BPDUPacket bpdu) {
+        if (!running || bridge.getPort(port).getState() == Port.DISABLED) {
+            return;
+        }
+        PortInfo info = info(port);
+        if (bpdu.getType() == BPDUPacket.TOPOLOGY_CHANGE_NOTIFICATION) {
+            if (info.role == Role.DESIGNATED) {
+                topologyChangeDetected();
+            }
+            return;
+        }
+
+        boolean sameSender = info.received && info.bridge == bpdu.getBridgeId()
+                && info.portId == bpdu.getPortId();
+        if (sameSender || compare(bpdu.getRootId(), bpdu.getRootPathCost(), bpdu.getBridgeId(), bpdu.getPortId(),
+                rootId, rootPathCost, bridgeId, portId(port)) < 0) {
+            long now = scheduler.getTime();
+            info.received = true;
+            info.root = bpdu.getRootId();
+            info.cost = bpdu.getRootPathCost();
+            info.bridge = bpdu.getBridgeId();
+            info.portId = bpdu.getPortId();
+            info.messageAge = toNanos(bpdu.getMessageAge());
+            info.expires = now + toNanos(bpdu.getMaxAge()) - info.messageAge;
+            recompute();
+            if (port == rootPort) {
+                boolean change = (bpdu.getFlags() & BPDUPacket.TOPOLOGY_CHANGE) != 0;
+                if (change && !topologyChange) {
+                    bridge.getMACAddressesTable().clear();
+                }
+                topologyChange = change;
+                helloTime = toNanos(bpdu.getHelloTime());
+                maxAge = toNanos(bpdu.getMaxAge());
+                forwardDelay = toNanos(bpdu.getForwardDelay());
+                sendConfigs();
+            }
+        } else if (info.role == Role.DESIGNATED) {
+            // tell the bridge of the inferior information what is better
+            sendConfig(port);
+        }
+    }
+
+    /**
+     * Elects the root port and the designated ports by what is known
+     * of the segments.
+     */
+    private void recompute() {
+        long bestRoot = bridgeId;
+        int bestCost = 0;
+        long bestBridge = bridgeId;
+        int bestPort = 0;
+        int newRootPort = -1;
+        int count = bridge.getPortsCount();
+        for (int p = 0; p != count; p++) {
+            PortInfo info = info(p);
+            if (!info.received) {
+                continue;
+            }
+            int cost = info.cost + pathCost(bridge.getPort(p));
+            int c = compare(info.root, cost, info.bridge, info.portId, bestRoot, bestCost, bestBridge, bestPort);
+            if (c < 0 || (c == 0 && newRootPort >= 0 && portId(p) < portId(newRootPort))) {
+                bestRoot = info.root;
+                bestCost = cost;
+                bestBridge = info.bridge;
+                bestPort = info.portId;
+                newRootPort = p;
+            }
+        }
+        if (rootId != bestRoot || rootPort != newRootPort) {
+            logger.log(Level.FINE, "{0}: root {1} cost {2} through port {3}",
+                    new Object[]{toString(bridgeId), toString(bestRoot), bestCost, newRootPort});
+        }
+        rootId = bestRoot;
+        rootPathCost = bestCost;
+        rootPort = newRootPort;
+
+        for (int p = 0; p != count; p++) {
+            PortInfo info = info(p);
+            Role role;
+            if (p == rootPort) {
+                role = Role.ROOT;
+            } else if (!info.received || compare(rootId, rootPathCost, bridgeId, portId(p),
+                    info.root, info.cost, info.bridge, info.portId) < 0) {
+                role = Role.DESIGNATED;
+                info.received = false;
+            } else {
+                role = Role.BLOCKED;
+            }
+            info.role = role;
+            updateState(p, info);
+        }
+    }
+
+    private void updateState(int p, PortInfo info) {
+        Port port = bridge.getPort(p);
+        int state = port.getState();
+        if (info.role == Role.BLOCKED) {
+            if (state != Port.BLOCKING && state != Port.DISABLED) {
+                info.version++;
+                port.setState(Port.BLOCKING);
+                if (state == Port.FORWARDING) {
+                    topologyChangeDetected();
+                }
+            }
+        } else if (state == Port.BLOCKING) {
+            port.setState(Port.LISTENING);
+            scheduleTransition(p, info);
+        }
+    }
+
+    private void scheduleTransition(final int p, PortInfo info) {
+        final int gen = generation;
+        final int version = ++info.version;
+        scheduler.schedule(forwardDelay, () -> transition(p, gen, version));
+    }
+
+    private synchronized void transition(int p, int gen, int version) {
+        PortInfo info = info(p);
+        if (gen != generation || version != info.version) {
+            return;
+        }
+        Port port = bridge.getPort(p);
+        if (port.getState() == Port.LISTENING) {
+            port.setState(Port.LEARNING);
+            scheduleTransition(p, info);
+        } else if (port.getState() == Port.LEARNING) {
+            port.setState(Port.FORWARDING);
+            topologyChangeDetected();
+        }
+    }
+
+    private void topologyChangeDetected() {
+        if (rootPort < 0) {
+            topologyChange = true;
+            topologyChangeEnd = scheduler.getTime() + maxAge + forwardDelay;
+            bridge.getMACAddressesTable().clear();
+        } else {
+            send(rootPort, new BPDUPacket());
+        }
+    }
+
+    /**
+     * The hello timer: the root sends its BPDUs, the information which is
+     * not refreshed by them expires.
+     */
+    private synchronized void tick(int gen) {
+        if (gen != generation) {
+            return;
+        }
+        long now = scheduler.getTime();
+        for (int p = 0; p != bridge.getPortsCount(); p++) {
+            PortInfo info = info(p);
+            if (info.received && now >= info.expires) {
+                logger.log(Level.FINE, "{0}: information of port {1} has expired",
+                        new Object[]{toString(bridgeId), p});
+                info.received = false;
+            }
+        }
+        // the ports added since are taken into account as well
+        recompute();
+        if (rootPort < 0) {
+            if (topologyChange && now >= topologyChangeEnd) {
+                topologyChange = false;
+            }
+            sendConfigs();
+        }
+        scheduler.schedule(helloTime, () -> tick(gen));
+    }
+
+    private void sendConfigs() {
+        for (int p = 0; p != bridge.getPortsCount(); p++) {
+            if (info(p).role == Role.DESIGNATED) {
+                sendConfig(p);
+            }
+        }
+    }
+
+    private void sendConfig(int p) {
+        long messageAge = rootPort < 0 ? 0 : info(rootPort).messageAge + MESSAGE_AGE_INCREMENT;
+        if (messageAge >= maxAge) {
+            return;
+        }
+        send(p, new BPDUPacket(
+                topologyChange ? BPDUPacket.TOPOLOGY_CHANGE : 0,
+                rootId,
+                rootPathCost,
+                bridgeId,
+                portId(p),
+                toUnits(messageAge),
+                toUnits(maxAge),
+                toUnits(helloTime),
+                toUnits(forwardDelay)));
+    }
+
+    private void send(int p, BPDUPacket bpdu) {
+        Port port = bridge.getPort(p);
+        if (port.getState() == Port.DISABLED) {
+            return;
+        }
+        try {
+            MACAddress src = new MACAddress(bridge.getBridgeAddress().toLongValue() + p + 1);
+            port.transmitPacket(new Layer2Packet(src, BPDUPacket.GROUP_ADDRESS, bpdu.getSize(), bpdu));
+        } catch (AddressException ae) {
+            logger.log(Level.SEVERE, "Unexpected exception.", ae);
+        }
+    }
+
+    private static long toNanos(int units) {
+        return units * TimeUnit.SECONDS.toNanos(1) / BPDUPacket.TIME_UNITS;
+    }
+
+    private static int toUnits(long nanos) {
+        return (int) Math.min(0xFFFF, nanos * BPDUPacket.TIME_UNITS / TimeUnit.SECONDS.toNanos(1));
+    }
+}
@@ -19,30 +19,35 @@ Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
 
 package org.netsimulator.net;
 
-import org.netsimulator.util.ConfigurableThreadFactory;
+import org.netsimulator.sim.EventScheduler;
 import org.netsimulator.util.IdGenerator;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.Arrays;
 import java.util.logging.Logger;
 
+/**
+ * The switch learns which port a MAC address is behind and forwards
+ * the frames to that port only, it floods the broadcasts and the frames
+ * to unknown addresses.
+ * <p>
+ * The frames are switched without a scan or an allocation: the source
+ * port is found by its {@link Port#getIndex() index}, the ports array is
+ * never changed once published, adding a port publishes a new one.
+ * <p>
+ * With the {@link SpanningTree spanning tree} enabled the switch takes
+ * the BPDUs, learns on the learning and forwarding ports only and
+ * switches between the forwarding ports only.
+ */
 public class Switch implements Concentrator
 {
     public static final int MACADDRESS_TABLE_CLEAN_TIMEOUT = 10; // sec
     private static final Logger logger = Logger.getLogger("org.netsimulator.net.Switch");
-        
-    // 10 threads for all the NetSimulator. 
-    // Probaly it makes sense to have 1 thread per switch?
-    private static final ScheduledExecutorService macTableCleanExecutorService = 
-                                  Executors.newScheduledThreadPool(10, new ConfigurableThreadFactory("MacTableCleanup-"));
 
     private final int id;
     private final IdGenerator idGenerator;
-    private final ArrayList<Port> ports;
+    private volatile Port[] ports;
     private final MACAddressesTable macTable;
+    private volatile SpanningTree spanningTree;
 
 
     /** Create new switch with 16 ports.
@@ -72,19 +77,14 @@ public class Switch implements Concentrator
     {
         this.idGenerator = idGenerator;
         this.id = id;
-        ports = new ArrayList<Port>();
+        Port[] array = new Port[n];
         for(int i=0; i!=n; i++)
         {
-            ports.add(new Port(idGenerator, this));
+            array[i] = new Port(idGenerator, this);
+            array[i].setIndex(i);
         }
+        ports = array;
         macTable = new MACAddressesTable(MACADDRESS_TABLE_CLEAN_TIMEOUT);
-        macTableCleanExecutorService.scheduleAtFixedRate(new Runnable() {
-            @Override
-            public void run() {
-                macTable.clean();
-            }
-        }, MACADDRESS_TABLE_CLEAN_TIMEOUT, MACADDRESS_TABLE_CLEAN_TIMEOUT, TimeUnit.SECONDS);
-        
     }
 
 
@@ -92,10 +92,8 @@ public class Switch implements Concentrator
     
     public Port getPortById(int id)
     {
-        Port port = null;
-        for(Iterator<Port> i = ports.iterator(); i.hasNext(); )
+        for(Port port : ports)
         {
-            port = i.next();
             if(port.getId() == id)
             {
                 return port;
@@ -117,28 +115,34 @@ public class Switch implements Concentrator
     
     public int getPortsCount()
     {
-        return ports.size();
+        return ports.length;
     }
 
 
 
     public Port getPort(int port)
     {
-        return ports.get(port);
+        return ports[port];
     }
 
     
-    public void addPort(Port port)
+    public synchronized void addPort(Port port)
     {
-        ports.add(port);
+        Port[] array = Arrays.copyOf(ports, ports.length + 1);
+        array[ports.length] = port;
         port.setConcentrator(this);
+        port.setIndex(ports.length);
+        if(spanningTree != null)
+        {
+            port.setState(Port.BLOCKING);
+        }
+        ports = array;
     }
     
     
     public Port[] getPorts()
     {
-        Port[] array = new Port[ports.size()];
-	return ports.toArray(array);        
+        return ports.clone();
     }
     
     
@@ -152,20 +156,98 @@ public class Switch implements Concentrator
     
     
 
+    /**
+     * @return locally administered address of the bridge, its ports
+     * send the BPDUs from the following addresses.
+     */
+    public MACAddress getBridgeAddress()
+    {
+        return new MACAddress(0x020000000000L | ((long)id & 0xFFFFFFFFL) << 8);
+    }
+
+
+
+    /** Starts the spanning tree protocol, all the ports are blocked
+     * till the tree is built.
+     * @param scheduler to run the protocol timers.
+     * @return the spanning tree of the switch.
+     */
+    public synchronized SpanningTree enableSpanningTree(EventScheduler scheduler)
+    {
+        if(spanningTree == null)
+        {
+            spanningTree = new SpanningTree(this);
+        }
+        spanningTree.start(scheduler);
+        return spanningTree;
+    }
+
+
+
+    /** Stops the spanning tree protocol, all the ports forward.
+    */
+    public synchronized void disableSpanningTree()
+    {
+        if(spanningTree != null)
+        {
+            spanningTree.stop();
+            spanningTree = null;
+        }
+    }
+
+
+
+    /**
+     * @return the spanning tree, null if it is not enabled.
+     */
+    public SpanningTree getSpanningTree()
+    {
+        return spanningTree;
+    }
+
+
+
+
+
     public void transportPacket(final Port sourcePort, final Layer2Packet packet)
     {
         MACAddress dstAddress = (MACAddress)packet.getDestinationAddress();
         MACAddress srcAddress = (MACAddress)packet.getSourceAddress();
         int dstPortId = -1;
-        int srcPortId = ports.indexOf( sourcePort );
+        int srcPortId = sourcePort.getIndex();
+        Port portsArray[] = ports;
+        if( srcPortId < 0 || srcPortId >= portsArray.length || portsArray[srcPortId] != sourcePort )
+        {
+            logger.severe(hashCode()+" the port "+sourcePort.getId()+" does not belong to the switch");
+            return;
+        }
+
+        SpanningTree tree = spanningTree;
+        if( tree != null )
+        {
+            if( packet.getData() instanceof BPDUPacket )
+            {
+                tree.receive( srcPortId, (BPDUPacket)packet.getData() );
+                return;
+            }
+            int state = sourcePort.getState();
+            if( state == Port.LEARNING )
+            {
+                macTable.put( srcAddress.toLongValue(), srcPortId );
+            }
+            if( state != Port.FORWARDING )
+            {
+                return;
+            }
+        }
         
-        macTable.put( srcAddress, srcPortId );
+        macTable.put( srcAddress.toLongValue(), srcPortId );
         if( dstAddress.isBroadcast() )
         {
-            sendToAllPorts( srcPortId, packet );
+            sendToAllPorts( portsArray, srcPortId, packet );
         }else
         {
-            dstPortId = macTable.get( dstAddress );
+            dstPortId = macTable.get( dstAddress.toLongValue() );
         
             if( dstPortId == srcPortId )
             {
@@ -176,21 +258,22 @@ public class Switch implements Concentrator
             
             if( dstPortId >= 0 )
             {
-                ports.get( dstPortId ).transmitPacket( packet );
+                if( portsArray[ dstPortId ].getState() == Port.FORWARDING )
+                {
+                    portsArray[ dstPortId ].transmitPacket( packet );
+                }
             }else
             {
-                sendToAllPorts( srcPortId, packet );
+                sendToAllPorts( portsArray, srcPortId, packet );
             }
         }
     }
 
-    private void sendToAllPorts(int srcPortId, final Layer2Packet packet)
+    private static void sendToAllPorts(Port portsArray[], int srcPortId, final Layer2Packet packet)
     {
-        Port portsArray[] = new Port[ ports.size() ];
-        ports.toArray( portsArray );
         for( int i = 0; i != portsArray.length; i++ )
         {
-            if( i != srcPortId )
+            if( i != srcPortId && portsArray[i].getState() == Port.FORWARDING )
             {
                 portsArray[i].transmitPacket( packet );
             }
@@ -209,5 +292,12 @@ public class Switch implements Concentrator
     {
         return idGenerator;
     }
+
+
+    public void dispose()
+    {
+        disableSpanningTree();
+        macTable.clear();
+    }
     
 }
@@ -0,0 +1,334 @@
+/*
+NET-Simulator -- Network simulator.
+Copyright (C) 2006 Maxim Tereshin <maxim-tereshin@yandex.ru>
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along
+with this program; if not, write to the Free Software Foundation,
+Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+*/
+
+package org.netsimulator.net;
+
+import org.netsimulator.sim.EventScheduler;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sends a sustained stream of ICMP echo requests or UDP datagrams from
+ * a router to a destination. The packets are sent by events of the
+ * scheduler of the source router, one event schedules the next one,
+ * so a flow of any length takes a single pending event.
+ * <p>
+ * The packets are numbered and stamped with the time they are sent,
+ * a {@link TrafficSink} counts them at the other end.
+ * <p>
+ * Configure the flow before {@link #start()}, the counters may be read
+ * from any thread.
+ */
+public class TrafficFlow {
+
+    private static final Logger logger = Logger.getLogger(TrafficFlow.class.getName());
+
+    public static final int DEFAULT_PORT = 5001;
+    public static final int DEFAULT_PACKET_SIZE = 64;
+    public static final double DEFAULT_RATE = 1000;
+    public static final int DEFAULT_BURST_SIZE = 10;
+
+    public enum Protocol {
+        ICMP, UDP
+    }
+
+    /**
+     * How the packets are spread in time, the average rate is the same.
+     */
+    public enum Pattern {
+        /** Evenly spaced packets. */
+        CONSTANT,
+        /** Exponentially distributed gaps between the packets. */
+        POISSON,
+        /** Back to back bursts of packets, evenly spaced. */
+        BURST
+    }
+
+    private final IP4Router source;
+    private final IP4Address destination;
+    private final EventScheduler scheduler;
+    private final int identifier;
+    private Protocol protocol = Protocol.UDP;
+    private Pattern pattern = Pattern.CONSTANT;
+    private double rate = DEFAULT_RATE;
+    private int packetSize = DEFAULT_PACKET_SIZE;
+    private int burstSize = DEFAULT_BURST_SIZE;
+    private int sourcePort = DEFAULT_PORT;
+    private int destinationPort = DEFAULT_PORT;
+    private long count;
+    private long duration;
+    private Random random = new Random();
+
+    private volatile boolean running;
+    private volatile long sent;
+    private volatile long startTime = -1;
+    private double next;
+    private long endTime;
+
+    /**
+     * @param source router the packets are routed by.
+     * @param destination address of the packets.
+     * @param scheduler of the source router.
+     */
+    public TrafficFlow(IP4Router source, IP4Address destination, EventScheduler scheduler) {
+        this.source = source;
+        this.destination = destination;
+        this.scheduler = scheduler;
+        this.identifier = source.getICMPEchoCorrelator().nextIdentifier();
+    }
+
+    public IP4Router getSource() {
+        return source;
+    }
+
+    public IP4Address getDestination() {
+        return destination;
+    }
+
+    public EventScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * @return identifier of the ICMP echo requests.
+     */
+    public int getIdentifier() {
+        return identifier;
+    }
+
+    public Protocol getProtocol() {
+        return protocol;
+    }
+
+    public void setProtocol(Protocol protocol) {
+        this.protocol = protocol;
+    }
+
+    public Pattern getPattern() {
+        return pattern;
+    }
+
+    public void setPattern(Pattern pattern) {
+        this.pattern = pattern;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * @param rate average packets per second.
+     */
+    public void setRate(double rate) {
+        if (!(rate > 0)) {
+            throw new IllegalArgumentException("The rate must be positive");
+        }
+        this.rate = rate;
+    }
+
+    public int getPacketSize() {
+        return packetSize;
+    }
+
+    /**
+     * @param packetSize total length of the IP packets, it's raised to
+     * the size of the headers.
+     */
+    public void setPacketSize(int packetSize) {
+        if (packetSize <= 0 || packetSize > IP4Packet.MAX_SIZE) {
+            throw new IllegalArgumentException("Bad packet size " + packetSize);
+        }
+        this.packetSize = packetSize;
+    }
+
+    public int getBurstSize() {
+        return burstSize;
+    }
+
+    /**
+     * @param burstSize packets of a burst of the {@link Pattern#BURST} flow.
+     */
+    public void setBurstSize(int burstSize) {
+        if (burstSize <= 0) {
+            throw new IllegalArgumentException("The burst size must be positive");
+        }
+        this.burstSize = burstSize;
+    }
+
+    public int getSourcePort() {
+        return sourcePort;
+    }
+
+    public void setSourcePort(int sourcePort) {
+        this.sourcePort = sourcePort;
+    }
+
+    public int getDestinationPort() {
+        return destinationPort;
+    }
+
+    public void setDestinationPort(int destinationPort) {
+        this.destinationPort = destinationPort;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @param count of packets to send, 0 for no limit.
+     */
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @param duration in nanoseconds the packets are sent for, 0 for no limit.
+     */
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    public void setDuration(long duration, TimeUnit unit) {
+        setDuration(unit.toNanos(duration));
+    }
+
+    /**
+     * Makes the gaps of the {@link Pattern#POISSON} flow reproducible.
+     */
+    public void setSeed(long seed) {
+        random = new Random(seed);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return number of the packets sent so far.
+     */
+    public long getSent() {
+        return sent;
+    }
+
+    /**
+     * @return virtual time the first packet was sent at, -1 if not started.
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Starts sending the packets with the next event of the scheduler.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        scheduler.schedule(0, () -> {
+            startTime = scheduler.getTime();
+            next = startTime;
+            endTime = duration == 0 ? Long.MAX_VALUE : startTime + duration;
+            send();
+        });
+    }
+
+    /**
+     * The packet scheduled next is not sent.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    private void send() {
+        if (!running) {
+            return;
+        }
+        int packets = pattern == Pattern.BURST ? burstSize : 1;
+        for (int i = 0; i != packets && running; i++) {
+            if ((count != 0 && sent >= count) || scheduler.getTime() >= endTime) {
+                running = false;
+                break;
+            }
+            try {
+                source.routePacket(createPacket((int) sent));
+            } catch (AddressException ae) {
+                logger.log(Level.SEVERE, "Unexpected exception.", ae);
+                running = false;
+                break;
+            }
+            sent++;
+        }
+        if (running) {
+            next += nextGap(packets);
+            scheduler.scheduleAt((long) next, this::send);
+        }
+    }
+
+    /**
+     * @return nanoseconds till the next packets, on average they are
+     * spaced by the rate.
+     */
+    private double nextGap(int packets) {
+        double gap = packets * 1e9 / rate;
+        if (pattern == Pattern.POISSON) {
+            gap *= -Math.log(1 - random.nextDouble());
+        }
+        return gap;
+    }
+
+    private IP4Packet createPacket(int sequenceNumber) throws AddressException {
+        if (protocol == Protocol.ICMP) {
+            return new ICMPEchoPacket(
+                    Protocols.ICMPEcho,
+                    identifier,
+                    sequenceNumber,
+                    packetSize,
+                    ICMPEchoPacket.DEFAULT_TTL,
+                    null,
+                    destination,
+                    scheduler.getTime(),
+                    null);
+        }
+        return new UDPPacket(
+                sourcePort,
+                destinationPort,
+                sequenceNumber,
+                packetSize,
+                ICMPEchoPacket.DEFAULT_TTL,
+                null,
+                destination,
+                scheduler.getTime(),
+                null);
+    }
+
+    @Override
+    public String toString() {
+        return protocol + " " + pattern + " flow to " + destination
+                + (protocol == Protocol.UDP ? ":" + destinationPort : "");
+    }
+}
@@ -0,0 +1,164 @@
+/*
+NET-Simulator -- Network simulator.
+Copyright (C) 2006 Maxim Tereshin <maxim-tereshin@yandex.ru>
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along
+with this program; if not, write to the Free Software Foundation,
+Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+*/
+
+package org.netsimulator.net;
+
+import org.netsimulator.sim.EventScheduler;
+
+/**
+ * Receives the packets of a {@link TrafficFlow} and records throughput,
+ * loss and latency. The sink of a UDP flow is bound to the destination
+ * port of the receiving router and measures the one-way latency. The
+ * echo requests of an ICMP flow are answered by the destination, so
+ * the sink of an ICMP flow listens to the replies at the source and
+ * the latency is the round trip.
+ */
+public class TrafficSink implements UDPListener, ICMPEchoReplayListener {
+
+    private final TrafficFlow flow;
+    private final IP4Router receiver;
+    private final EventScheduler scheduler;
+
+    private long received;
+    private long bytes;
+    private long lastArrival = -1;
+    private long minLatency = Long.MAX_VALUE;
+    private long maxLatency;
+    private long totalLatency;
+
+    /**
+     * The sink of an ICMP flow.
+     */
+    public TrafficSink(TrafficFlow flow) {
+        this(flow, flow.getSource(), flow.getScheduler());
+    }
+
+    /**
+     * @param receiver router the packets are addressed to, the source
+     * one for ICMP flows.
+     * @param scheduler of the receiver.
+     */
+    public TrafficSink(TrafficFlow flow, IP4Router receiver, EventScheduler scheduler) {
+        this.flow = flow;
+        this.receiver = receiver;
+        this.scheduler = scheduler;
+    }
+
+    public TrafficFlow getFlow() {
+        return flow;
+    }
+
+    /**
+     * Starts listening to the packets of the flow.
+     * @throws IllegalStateException if the UDP port is in use.
+     */
+    public void open() {
+        if (flow.getProtocol() == TrafficFlow.Protocol.UDP) {
+            receiver.addUDPListener(flow.getDestinationPort(), this);
+        } else {
+            receiver.addICMPEchoReplayListener(this);
+        }
+    }
+
+    public void close() {
+        if (flow.getProtocol() == TrafficFlow.Protocol.UDP) {
+            receiver.removeUDPListener(flow.getDestinationPort());
+        } else {
+            receiver.removeICMPEchoReplayListener(this);
+        }
+    }
+
+    @Override
+    public void processUDPPacket(UDPPacket packet) {
+        record(packet.getSize(), packet.getTimestamp());
+    }
+
+    @Override
+    public void processICMPEchoReplay(ICMPEchoPacket packet) {
+        if (packet.getIdentifier() == flow.getIdentifier()) {
+            record(packet.getSize(), packet.getTimestamp());
+        }
+    }
+
+    private synchronized void record(int size, long timestamp) {
+        long now = scheduler.getTime();
+        received++;
+        bytes += size;
+        lastArrival = now;
+        long latency = now - timestamp;
+        minLatency = Math.min(minLatency, latency);
+        maxLatency = Math.max(maxLatency, latency);
+        totalLatency += latency;
+    }
+
+    public synchronized long getReceived() {
+        return received;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return packets sent by the flow but not received, the ones which
+     * are still on the way are counted too.
+     */
+    public synchronized long getLost() {
+        return flow.getSent() - received;
+    }
+
+    /**
+     * @return the lost packets share of the sent ones, 0..1.
+     */
+    public synchronized double getLoss() {
+        long sent = flow.getSent();
+        return sent == 0 ? 0 : (double) (sent - received) / sent;
+    }
+
+    /**
+     * @return bits per second received since the flow started till
+     * the last packet has arrived.
+     */
+    public synchronized double getThroughput() {
+        long period = lastArrival - flow.getStartTime();
+        return received == 0 || period <= 0 ? 0 : bytes * 8e9 / period;
+    }
+
+    /**
+     * @return in nanoseconds, 0 if nothing is received.
+     */
+    public synchronized long getMinLatency() {
+        return received == 0 ? 0 : minLatency;
+    }
+
+    public synchronized long getMaxLatency() {
+        return maxLatency;
+    }
+
+    public synchronized double getAverageLatency() {
+        return received == 0 ? 0 : (double) totalLatency / received;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s: %d sent, %d received, %.1f%% loss, %.3f Mbit/s, latency min/avg/max = %.3f/%.3f/%.3f ms",
+                flow, flow.getSent(), received, getLoss() * 100, getThroughput() / 1e6,
+                getMinLatency() / 1e6, getAverageLatency() / 1e6, getMaxLatency() / 1e6);
+    }
+}
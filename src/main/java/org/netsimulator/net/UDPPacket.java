@@ -0,0 +1,145 @@
+/*
+NET-Simulator -- Network simulator.
+Copyright (C) 2006 Maxim Tereshin <maxim-tereshin@yandex.ru>
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along
+with this program; if not, write to the Free Software Foundation,
+Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+*/
+
+package org.netsimulator.net;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The class implements pseudo UDP datagram as it is described in RFC 768.
+ * It carries a sequence number and a timestamp the way traffic generators
+ * do, they are put first into the data when it is encoded.
+ */
+public class UDPPacket extends IP4Packet {
+
+    /** Size of the UDP header. */
+    public static final int HEADER_SIZE = 8;
+    /** The sequence number and the timestamp take that much of the data. */
+    static final int STAMP_SIZE = 12;
+
+    private final int sourcePort;
+    private final int destinationPort;
+    private final int sequenceNumber;
+    private final long timestamp;
+
+    public UDPPacket(
+            int sourcePort,
+            int destinationPort,
+            int sequenceNumber,
+            int totalLength,
+            int ttl,
+            IP4Address srcAddress,
+            IP4Address dstAddress,
+            long timestamp,
+            Content data
+    )
+            throws AddressException {
+        super(totalLength,
+                ttl,
+                Protocols.UDP,
+                srcAddress,
+                dstAddress,
+                data);
+
+        this.sourcePort = sourcePort;
+        this.destinationPort = destinationPort;
+        this.sequenceNumber = sequenceNumber;
+        this.timestamp = timestamp;
+    }
+
+    public int getSourcePort() {
+        return sourcePort;
+    }
+
+    public int getDestinationPort() {
+        return destinationPort;
+    }
+
+    public int getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    protected int getHeadersSize() {
+        return IP4Packet.HEADER_SIZE + HEADER_SIZE;
+    }
+
+    @Override
+    protected void encodePayload(ByteBuffer buffer, int size) {
+        int start = buffer.position();
+        buffer.putShort((short) sourcePort)
+                .putShort((short) destinationPort)
+                .putShort((short) size)
+                .putShort((short) 0);       // checksum
+        int data = size - HEADER_SIZE;
+        if (data >= STAMP_SIZE) {
+            buffer.putInt(sequenceNumber).putLong(timestamp);
+            data -= STAMP_SIZE;
+        }
+        Layer2Packet.putZeros(buffer, data);
+        int checksum = checksum(buffer, start, buffer.position(),
+                pseudoHeaderSum(getSourceAddress(), getDestinationAddress(), size));
+        // zero means the checksum was not computed
+        buffer.putShort(start + 6, (short) (checksum == 0 ? 0xFFFF : checksum));
+    }
+
+    private static int pseudoHeaderSum(IP4Address srcAddress, IP4Address dstAddress, int length) {
+        int src = srcAddress == null ? 0 : srcAddress.toIntValue();
+        int dst = dstAddress.toIntValue();
+        int sum = (src >>> 16) + (src & 0xFFFF) + (dst >>> 16) + (dst & 0xFFFF)
+                + Protocols.UDP + length;
+        return (sum & 0xFFFF) + (sum >>> 16);
+    }
+
+    /**
+     * Reads the UDP part of a datagram.
+     * @param size of the IP packet.
+     * @return null if the UDP length does not match the IP one, a bare
+     *         {@link IP4Packet} is encoded so, the position is kept then.
+     * @throws IllegalArgumentException if the UDP checksum is broken.
+     */
+    static UDPPacket decode(ByteBuffer buffer, int size, int ttl,
+            IP4Address srcAddress, IP4Address dstAddress) throws AddressException {
+        int start = buffer.position();
+        int end = start + size - IP4Packet.HEADER_SIZE;
+        int length = end - start >= HEADER_SIZE ? buffer.getShort(start + 4) & 0xFFFF : -1;
+        if (length != end - start) {
+            return null;
+        }
+        if (buffer.getShort(start + 6) != 0
+                && checksum(buffer, start, end, pseudoHeaderSum(srcAddress, dstAddress, length)) != 0) {
+            throw new IllegalArgumentException("Invalid UDP checksum.");
+        }
+        int sourcePort = buffer.getShort(start) & 0xFFFF;
+        int destinationPort = buffer.getShort(start + 2) & 0xFFFF;
+        int sequenceNumber = 0;
+        long timestamp = 0;
+        if (length >= HEADER_SIZE + STAMP_SIZE) {
+            sequenceNumber = buffer.getInt(start + HEADER_SIZE);
+            timestamp = buffer.getLong(start + HEADER_SIZE + 4);
+        }
+        buffer.position(end);
+        return new UDPPacket(sourcePort, destinationPort, sequenceNumber, size, ttl,
+                srcAddress, dstAddress, timestamp, null);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+NET-Simulator -- Network simulator.
+Copyright (C) 2006 Maxim Tereshin <maxim-tereshin@yandex.ru>
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along
+with this program; if not, write to the Free Software Foundation,
+Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+*/
+
+package org.netsimulator.sim;
+
+/**
+ * An action bound to a point of virtual time. Events scheduled for the
+ * same time are fired in the order they were scheduled.
+ */
+final class Event implements Comparable<Event> {
+    final long time;
+    final long sequence;
+    final Runnable action;
+
+    Event(long time, long sequence, Runnable action) {
+        this.time = time;
+        this.sequence = sequence;
+        this.action = action;
+    }
+
+    @Override
+    public int compareTo(Event e) {
+        if (time != e.time) {
+            return time < e.time ? -1 : 1;
+        }
+        return Long.compare(sequence, e.sequence);
+    }
+}
@@ -0,0 +1,306 @@
+/*
+NET-Simulator -- Network simulator.
+Copyright (C) 2006 Maxim Tereshin <maxim-tereshin@yandex.ru>
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along
+with this program; if not, write to the Free Software Foundation,
+Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+*/
+
+package org.netsimulator.sim;
+
+import org.netsimulator.util.ConfigurableThreadFactory;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Discrete event simulation kernel. Devices do not call each other directly,
+ * instead every hop is queued here as an {@link Event} and fired in the
+ * order of its virtual time. It keeps the stack depth constant whatever
+ * the size of the topology is.
+ * <p>
+ * The virtual clock is measured in nanoseconds. In real time mode the clock
+ * follows the wall clock, it is what the GUI needs. Otherwise the clock jumps
+ * straight to the next event, so simulation runs as fast as possible.
+ * <p>
+ * It is thread safe. Events may be scheduled from any thread, but they are
+ * fired by one thread only: either the caller of {@link #run()},
+ * {@link #runNext()}, {@link #runUntil(long)} or the thread started by
+ * {@link #start()}.
+ */
+public class EventScheduler {
+
+    private static final Logger logger = Logger.getLogger(EventScheduler.class.getName());
+
+    private final PriorityQueue<Event> queue = new PriorityQueue<>();
+    private final Lock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final boolean realTime;
+    private final long origin;
+    private volatile long clock;
+    private long sequence;
+    private Thread thread;
+    private volatile boolean running;
+
+    private static class DefaultHolder {
+        static final EventScheduler INSTANCE = new EventScheduler(true);
+        static {
+            INSTANCE.start();
+        }
+    }
+
+    /**
+     * Creates a scheduler which runs events as fast as possible.
+     */
+    public EventScheduler() {
+        this(false);
+    }
+
+    /**
+     * @param realTime if true the virtual clock follows the wall clock.
+     */
+    public EventScheduler(boolean realTime) {
+        this.realTime = realTime;
+        this.origin = System.nanoTime();
+    }
+
+    /**
+     * Returns the scheduler shared by all the media created without
+     * an explicit one. It runs in real time on its own thread.
+     * @return the default scheduler.
+     */
+    public static EventScheduler getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    public boolean isRealTime() {
+        return realTime;
+    }
+
+    /**
+     * @return current virtual time in nanoseconds.
+     */
+    public long getTime() {
+        return realTime ? Math.max(clock, System.nanoTime() - origin) : clock;
+    }
+
+    /**
+     * Schedules the action to be fired after the delay since now.
+     * @param delay in nanoseconds, non negative.
+     * @param action to fire.
+     */
+    public void schedule(long delay, Runnable action) {
+        if (delay < 0) {
+            throw new IllegalArgumentException("The delay can't be less 0");
+        }
+        scheduleAt(getTime() + delay, action);
+    }
+
+    public void schedule(long delay, TimeUnit unit, Runnable action) {
+        schedule(unit.toNanos(delay), action);
+    }
+
+    /**
+     * Schedules the action to be fired at the virtual time. The time in
+     * the past is treated as now.
+     * @param time in nanoseconds.
+     * @param action to fire.
+     */
+    public void scheduleAt(long time, Runnable action) {
+        if (action == null) {
+            throw new IllegalArgumentException("The action can't be null");
+        }
+        lock.lock();
+        try {
+            queue.add(new Event(Math.max(time, clock), sequence++, action));
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return time of the earliest pending event or
+     * <code>Long.MAX_VALUE</code> if there are no events.
+     */
+    public long getNextEventTime() {
+        lock.lock();
+        try {
+            Event e = queue.peek();
+            return e == null ? Long.MAX_VALUE : e.time;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getPendingEventsCount() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Fires the earliest event advancing the clock to its time.
+     * @return false if there were no events.
+     */
+    public boolean runNext() {
+        return runNext(Long.MAX_VALUE);
+    }
+
+    /**
+     * Fires all the events until there are no more of them.
+     * @return number of fired events.
+     */
+    public long run() {
+        long fired = 0;
+        while (runNext()) {
+            fired++;
+        }
+        return fired;
+    }
+
+    /**
+     * Fires all the events due by the time and then advances the clock
+     * to the time.
+     * @param time in nanoseconds.
+     * @return number of fired events.
+     */
+    public long runUntil(long time) {
+        long fired = runUpTo(time);
+        if (clock < time) {
+            clock = time;
+        }
+        return fired;
+    }
+
+    /**
+     * Fires all the events due by the time. Unlike {@link #runUntil(long)}
+     * the clock is not advanced further than the last fired event.
+     * @param time in nanoseconds.
+     * @return number of fired events.
+     */
+    public long runUpTo(long time) {
+        long fired = 0;
+        while (runNext(time)) {
+            fired++;
+        }
+        return fired;
+    }
+
+    private boolean runNext(long limit) {
+        Event e;
+        lock.lock();
+        try {
+            e = queue.peek();
+            if (e == null || e.time > limit) {
+                return false;
+            }
+            queue.poll();
+            clock = e.time;
+        } finally {
+            lock.unlock();
+        }
+        fire(e);
+        return true;
+    }
+
+    private void fire(Event e) {
+        try {
+            e.action.run();
+        } catch (RuntimeException ex) {
+            logger.log(Level.SEVERE, "Unexpected exception while firing an event.", ex);
+        }
+    }
+
+    /**
+     * Starts a thread firing the events as soon as they are due.
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        running = true;
+        thread = new ConfigurableThreadFactory("SimulationKernel-").newThread(this::loop);
+        thread.setDaemon(true);
+        thread.start();
+        logger.fine("Simulation kernel thread started.");
+    }
+
+    /**
+     * Stops the thread started by {@link #start()}. Pending events remain
+     * in the queue.
+     */
+    public void stop() {
+        Thread t;
+        synchronized (this) {
+            t = thread;
+            thread = null;
+        }
+        if (t == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            running = false;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (t != Thread.currentThread()) {
+            try {
+                t.join();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        logger.fine("Simulation kernel thread stopped.");
+    }
+
+    private void loop() {
+        while (running) {
+            Event e = null;
+            lock.lock();
+            try {
+                Event next = queue.peek();
+                if (next == null) {
+                    changed.await();
+                } else {
+                    long wait = realTime ? next.time - (System.nanoTime() - origin) : 0;
+                    if (wait > 0) {
+                        changed.awaitNanos(wait);
+                    } else {
+                        e = queue.poll();
+                        clock = Math.max(clock, e.time);
+                    }
+                }
+            } catch (InterruptedException ie) {
+                running = false;
+                Thread.currentThread().interrupt();
+            } finally {
+                lock.unlock();
+            }
+            if (e != null) {
+                fire(e);
+            }
+        }
+    }
+}
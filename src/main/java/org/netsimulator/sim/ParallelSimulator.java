@@ -0,0 +1,218 @@
+/*
+NET-Simulator -- Network simulator.
+Copyright (C) 2006 Maxim Tereshin <maxim-tereshin@yandex.ru>
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along
+with this program; if not, write to the Free Software Foundation,
+Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+*/
+
+package org.netsimulator.sim;
+
+import org.netsimulator.util.ConfigurableThreadFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the schedulers of the regions a network is partitioned into, each
+ * region on its own thread. Regions may only schedule events of one
+ * another through the links between them, at least lookahead (the least
+ * propagation delay of such links) after their own time.
+ * <p>
+ * The synchronization is conservative: the time is split into windows
+ * which start at the earliest pending event of all the regions and are
+ * lookahead long. Whatever a region schedules for another one during a
+ * window falls after the window, so the regions run a window in parallel
+ * and meet at a barrier before the next one. Events are fired in the same
+ * order of virtual time as a single scheduler would fire them.
+ * <p>
+ * With a single region it just runs its scheduler on the calling thread.
+ * Once {@link #run()} or {@link #runUntil(long)} returns all the regions
+ * are at the same time.
+ */
+public class ParallelSimulator {
+
+    private static final ThreadFactory threadFactory =
+            new ConfigurableThreadFactory("SimulationRegion-");
+
+    private final List<EventScheduler> regions;
+    private final long lookahead;
+
+    /**
+     * Bounds of the windows of a single run, they are read by the regions
+     * after the barrier and updated by its action.
+     */
+    private final class Windows implements Runnable {
+        private final long limit;
+        private long last;
+        private boolean finished;
+
+        private Windows(long limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public void run() {
+            long first = Long.MAX_VALUE;
+            for (EventScheduler region : regions) {
+                first = Math.min(first, region.getNextEventTime());
+            }
+            if (first == Long.MAX_VALUE || first > limit) {
+                finished = true;
+                return;
+            }
+            last = first > Long.MAX_VALUE - lookahead ? Long.MAX_VALUE : first + lookahead - 1;
+            last = Math.min(last, limit);
+        }
+    }
+
+    /**
+     * @param regions schedulers of the regions, none of them real time.
+     * @param lookahead the least delay of events one region schedules for
+     * another, in nanoseconds. <code>Long.MAX_VALUE</code> if they are
+     * independent.
+     */
+    public ParallelSimulator(List<EventScheduler> regions, long lookahead) {
+        if (regions.isEmpty()) {
+            throw new IllegalArgumentException("There must be a region at least");
+        }
+        if (lookahead <= 0) {
+            throw new IllegalArgumentException("The lookahead must be positive");
+        }
+        for (EventScheduler region : regions) {
+            if (region.isRealTime()) {
+                throw new IllegalArgumentException("Real time schedulers can't run in parallel");
+            }
+        }
+        this.regions = Collections.unmodifiableList(new ArrayList<>(regions));
+        this.lookahead = lookahead;
+    }
+
+    public List<EventScheduler> getRegions() {
+        return regions;
+    }
+
+    /**
+     * @return the lookahead in nanoseconds.
+     */
+    public long getLookahead() {
+        return lookahead;
+    }
+
+    /**
+     * @return the latest time of the regions in nanoseconds.
+     */
+    public long getTime() {
+        long time = 0;
+        for (EventScheduler region : regions) {
+            time = Math.max(time, region.getTime());
+        }
+        return time;
+    }
+
+    /**
+     * Fires all the events until there are no more of them.
+     * @return number of fired events.
+     */
+    public synchronized long run() {
+        long fired = runUpTo(Long.MAX_VALUE);
+        align(getTime());
+        return fired;
+    }
+
+    /**
+     * Fires all the events due by the time and then advances the clocks
+     * of the regions to the time.
+     * @param time in nanoseconds.
+     * @return number of fired events.
+     */
+    public synchronized long runUntil(long time) {
+        long fired = runUpTo(time);
+        align(Math.max(time, getTime()));
+        return fired;
+    }
+
+    private void align(long time) {
+        for (EventScheduler region : regions) {
+            region.runUntil(time);
+        }
+    }
+
+    private long runUpTo(long limit) {
+        if (regions.size() == 1) {
+            return regions.get(0).runUpTo(limit);
+        }
+        Windows windows = new Windows(limit);
+        CyclicBarrier barrier = new CyclicBarrier(regions.size(), windows);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        long[] fired = new long[regions.size()];
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 1; i != regions.size(); i++) {
+            int region = i;
+            Thread t = threadFactory.newThread(() -> work(region, windows, barrier, failure, fired));
+            t.setDaemon(true);
+            t.start();
+            threads.add(t);
+        }
+        work(0, windows, barrier, failure, fired);
+        boolean interrupted = false;
+        for (Thread t : threads) {
+            while (t.isAlive()) {
+                try {
+                    t.join();
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure.get() != null) {
+            throw new IllegalStateException("The simulation was interrupted.", failure.get());
+        }
+
+        long total = 0;
+        for (long n : fired) {
+            total += n;
+        }
+        return total;
+    }
+
+    private void work(int i, Windows windows, CyclicBarrier barrier,
+            AtomicReference<Exception> failure, long[] fired) {
+        EventScheduler region = regions.get(i);
+        try {
+            while (true) {
+                barrier.await();
+                if (windows.finished) {
+                    return;
+                }
+                fired[i] += region.runUpTo(windows.last);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, ie);
+            barrier.reset();
+        } catch (BrokenBarrierException bbe) {
+            failure.compareAndSet(null, bbe);
+        }
+    }
+}
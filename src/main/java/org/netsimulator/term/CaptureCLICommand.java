@@ -0,0 +1,260 @@
+/*
+NET-Simulator -- Network simulator.
+Copyright (C) 2006 Maxim Tereshin <maxim-tereshin@yandex.ru>
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+            
+This program is distributed in the hope that it will be useful, but 
+WITHOUT ANY WARRANTY; without even the implied warranty of 
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU 
+General Public License for more details.
+            
+You should have received a copy of the GNU General Public License along 
+with this program; if not, write to the Free Software Foundation, 
+Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA 
+*/
+
+package org.netsimulator.term;
+
+import org.apache.commons.cli.*;
+import org.netsimulator.net.*;
+import org.netsimulator.sim.EventScheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Captures packets of an interface of a router, or of a port of a switch,
+ * into a libpcap file.
+ */
+public class CaptureCLICommand extends AbstractCommand
+{
+    private static final Logger logger = 
+            Logger.getLogger(CaptureCLICommand.class.getName());    
+
+    /** Captures being written, they outlive the terminal of the device. */
+    private static final Map<NetworkDevice, PcapWriter> captures =
+            new ConcurrentHashMap<NetworkDevice, PcapWriter>();
+
+    private PrintWriter writer;
+    private static final Options options = new Options();
+    private final NetworkDeviceHolder holder;
+    private final EventScheduler clock;
+
+    /**
+     * @param holder router or concentrator whose devices are captured.
+     * @param clock the scheduler delivering packets of the devices.
+     */
+    public CaptureCLICommand(NetworkDeviceHolder holder, EventScheduler clock)
+    {
+        this.holder = holder;
+        this.clock = clock;
+        
+        Option help = new Option("h", false, "display this help");
+        Option write = OptionBuilder.withArgName("file")
+                                    .hasArg()
+                                    .withDescription("start capturing packets into the file")
+                                    .create("w");
+        Option stop = new Option("s", false, "stop capturing");
+        options.addOption(help);
+        options.addOption(write);
+        options.addOption(stop);
+    }
+
+
+    public String getName()
+    {
+        return "capture";
+    }
+
+    
+    public int go() throws IOException
+    {
+        CommandLineParser parser = new GnuParser();
+        CommandLine cmd = null;
+        try
+        {
+            cmd = parser.parse( options, argv);
+        }catch(MissingArgumentException mae)
+        {
+            writer.write("Error: Missing arguments\n");
+            return -1;
+        }catch(UnrecognizedOptionException uoe)
+        {
+            writer.write("Error: " + uoe.getMessage() + "\n");
+            return -1;
+        }catch(ParseException pe)
+        {
+            logger.log(Level.SEVERE, "Unexpected exception.", pe);
+            return -1;
+        }
+ 
+        if(cmd.hasOption("h"))
+        {
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printHelp(
+                    writer,
+                    80,
+                    "capture [-h] [-w <file> | -s] [<interface>]",
+                    "Captures packets of the interface (the port number on a switch) into a libpcap file. Without arguments shows running captures.",
+                    options,
+                    3,
+                    2,
+                    null,
+                    false);
+            
+            return 0;
+        }
+
+        String args[] = cmd.getArgs();
+        if(args.length == 0)
+        {
+            if(cmd.hasOption("w") || cmd.hasOption("s"))
+            {
+                writer.write("Error: device not specified\n");
+                return -1;
+            }
+            printCaptures();
+            return 0;
+        }
+
+        NetworkDevice dev = findDevice(args[0]);
+        if(dev == null)
+        {
+            writer.write("Error: No such interface\n");
+            return -1;
+        }
+
+        if(cmd.hasOption("w"))
+        {
+            // not to truncate the file of a running capture, checked
+            // again when the new capture is registered
+            if(captures.containsKey(dev))
+            {
+                writer.write("Error: "+args[0]+" is already being captured\n");
+                return -1;
+            }
+            File file = new File(cmd.getOptionValue("w"));
+            PcapWriter pcap = new PcapWriter(file, clock, false);
+            if(captures.putIfAbsent(dev, pcap) != null)
+            {
+                // another terminal started capturing meanwhile
+                pcap.close();
+                writer.write("Error: "+args[0]+" is already being captured\n");
+                return -1;
+            }
+            dev.addTransferPacketListener(pcap);
+            writer.write("Capturing "+args[0]+" into "+file.getAbsolutePath()+"\n");
+        }else if(cmd.hasOption("s"))
+        {
+            PcapWriter pcap = captures.remove(dev);
+            if(pcap == null)
+            {
+                writer.write("Error: "+args[0]+" is not being captured\n");
+                return -1;
+            }
+            dev.removeTransferPacketListener(pcap);
+            pcap.close();
+            writer.write("Captured "+pcap.getPacketsCount()+" packets on "+args[0]+"\n");
+        }else
+        {
+            PcapWriter pcap = captures.get(dev);
+            writer.write(args[0]+": "+(pcap == null ? "not captured" : pcap.getPacketsCount()+" packets captured")+"\n");
+        }
+        return 0;
+    }
+
+
+    /**
+     * Stops all the captures writing out what is buffered.
+     */
+    public static void stopAll()
+    {
+        for(Map.Entry<NetworkDevice, PcapWriter> e : captures.entrySet())
+        {
+            if(captures.remove(e.getKey(), e.getValue()))
+            {
+                e.getKey().removeTransferPacketListener(e.getValue());
+                try
+                {
+                    e.getValue().close();
+                }catch(IOException ioe)
+                {
+                    logger.log(Level.SEVERE, "Unexpected exception.", ioe);
+                }
+            }
+        }
+    }
+
+
+    private NetworkDevice findDevice(String name)
+    {
+        if(holder instanceof Router)
+        {
+            Interface ifs = ((Router)holder).getInterface(name);
+            return ifs instanceof NetworkDevice ? (NetworkDevice)ifs : null;
+        }
+        if(holder instanceof Concentrator)
+        {
+            Concentrator concentrator = (Concentrator)holder;
+            try
+            {
+                int port = Integer.parseInt(name);
+                return port >= 0 && port < concentrator.getPortsCount() ? concentrator.getPort(port) : null;
+            }catch(NumberFormatException nfe)
+            {
+                return null;
+            }
+        }
+        return null;
+    }
+
+
+    private void printCaptures()
+    {
+        for(NetworkDevice dev : Network.getNetworkDevices(holder))
+        {
+            PcapWriter pcap = captures.get(dev);
+            if(pcap != null)
+            {
+                String name = dev instanceof Interface ? ((Interface)dev).getName() : "port "+dev.getId();
+                writer.write(name+": "+pcap.getPacketsCount()+" packets captured\n");
+            }
+        }
+    }
+
+    
+    @Override
+    public void setOutputWriter(Writer writer)
+    {
+        this.writer = new PrintWriter(writer);
+    }
+    
+
+    @Override
+    public void stop()
+    {
+    }
+    
+    @Override
+    public void run() {
+        try {
+            go();
+        } catch (IOException ex) {
+            writer.write("Error: "+ex.getMessage()+"\n");
+            logger.log(Level.SEVERE, "Unexpected exception.", ex);
+        } finally {
+            writer.flush();
+            fireExecutionCompleted(0);
+        }
+    }        
+}
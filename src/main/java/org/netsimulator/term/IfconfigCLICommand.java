@@ -311,12 +311,13 @@ public class IfconfigCLICommand extends AbstractCommand
             if(eth.getStatus()==Interface.DOWN){ statusStr="DOWN"; }
             text += "\t"+statusStr+"\n";
 
-            text += "\tRX packets:"+eth.getRXPackets()+" errors:"+
-                    eth.getRXPacketsErrors()+" dropped:"+eth.getRXDroped()+"\n";
-            text += "\tTX packets:"+eth.getTXPackets()+" errors:"+
-                    eth.getTXPacketsErrors()+" dropped:"+eth.getTXDroped()+"\n";
+            DeviceCounters.Snapshot stats = eth.getStatistics();
+            text += "\tRX packets:"+stats.getRXPackets()+" errors:"+
+                    stats.getRXPacketsErrors()+" dropped:"+stats.getRXDroped()+"\n";
+            text += "\tTX packets:"+stats.getTXPackets()+" errors:"+
+                    stats.getTXPacketsErrors()+" dropped:"+stats.getTXDroped()+"\n";
 
-            text += "\tRX bytes:"+eth.getRXBytes()+" TX bytes:"+eth.getTXBytes()+"\n";
+            text += "\tRX bytes:"+stats.getRXBytes()+" TX bytes:"+stats.getTXBytes()+"\n";
             text += "\n";
 
             writer.write(text);
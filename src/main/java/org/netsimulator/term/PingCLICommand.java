@@ -20,27 +20,31 @@ package org.netsimulator.term;
 
 import org.apache.commons.cli.*;
 import org.netsimulator.net.*;
+import org.netsimulator.util.Histogram;
 
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.Writer;
-import java.util.Timer;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-public class PingCLICommand extends AbstractCommand implements ICMPEchoReplayListener {
+public class PingCLICommand extends AbstractCommand {
 
     private static final Logger logger = Logger.getLogger("org.netsimulator.term.PingCLICommand");
 
+    /** Data bytes of the requests, so they are 64 bytes with the ICMP header. */
+    public static final int DEFAULT_SIZE = 56;
+    private static final int MAX_SIZE = IP4Packet.MAX_SIZE - IP4Packet.HEADER_SIZE - ICMPEchoPacket.HEADER_SIZE;
+
     private PrintWriter writer;
     private final IP4Router router;
     private static final Options options = new Options();
-    private boolean go = false;
-    private ICMPEchoPacket icmpEchoReplayPacket = null;
-    private final int identifier;
-    private boolean timeoutExpired = false;
-    private static final Timer TIMER = new Timer("PingResponceTimeoutThread", true);
-    private TimerTaskPing timerTask;
+    private volatile boolean go = false;
+    private volatile Future<ICMPEchoPacket> replay;
 
 
     public PingCLICommand(IP4Router router) {
@@ -57,12 +61,27 @@ public class PingCLICommand extends AbstractCommand implements ICMPEchoReplayLis
 
         Option interval = OptionBuilder.withArgName("interval")
                 .hasArg()
-                .withDescription("wait interval seconds between sending each packet, the default is to wait for one second")
+                .withDescription("wait interval seconds between sending each packet, the default is to wait for one second, "
+                        + "it may be a fraction of a second")
                 .create("i");
         options.addOption(interval);
-        router.addICMPEchoReplayListener(this);
 
-        identifier = router.hashCode();
+        Option count = OptionBuilder.withArgName("count")
+                .hasArg()
+                .withDescription("stop after sending count packets")
+                .create("c");
+        options.addOption(count);
+
+        Option size = OptionBuilder.withArgName("packetsize")
+                .hasArg()
+                .withDescription("specifies the number of data bytes to be sent, the default is " + DEFAULT_SIZE)
+                .create("s");
+        options.addOption(size);
+
+        Option flood = new Option("f", false,
+                "flood ping, send the next packet as soon as the reply comes, a period is printed for every request "
+                + "and erased for every reply");
+        options.addOption(flood);
     }
 
     @Override
@@ -72,8 +91,10 @@ public class PingCLICommand extends AbstractCommand implements ICMPEchoReplayLis
 
     protected int go() throws IOException {
         int ttl = ICMPEchoPacket.DEFAULT_TTL;
-        int interval = 1;
+        double interval = 1;
         int timeout = 5;
+        int count = -1;
+        int size = DEFAULT_SIZE;
 
         go = true;
 
@@ -101,21 +122,53 @@ public class PingCLICommand extends AbstractCommand implements ICMPEchoReplayLis
             }
         }
 
+        boolean flood = cmd.hasOption("f");
+        if (flood) {
+            interval = 0;
+        }
+
         if (cmd.hasOption("i")) {
             try {
-                interval = Integer.parseInt(cmd.getOptionValue("i"));
+                interval = Double.parseDouble(cmd.getOptionValue("i"));
             } catch (NumberFormatException nfe) {
+                interval = -1;
+            }
+            if (!(interval >= 0)) {
                 writer.write("Error: bad timing interval\n");
                 return -1;
             }
         }
 
+        if (cmd.hasOption("c")) {
+            try {
+                count = Integer.parseInt(cmd.getOptionValue("c"));
+            } catch (NumberFormatException nfe) {
+                count = 0;
+            }
+            if (count <= 0) {
+                writer.write("Error: bad number of packets to transmit\n");
+                return -1;
+            }
+        }
+
+        if (cmd.hasOption("s")) {
+            try {
+                size = Integer.parseInt(cmd.getOptionValue("s"));
+            } catch (NumberFormatException nfe) {
+                size = -1;
+            }
+            if (size < 0 || size > MAX_SIZE) {
+                writer.write("Error: illegal packet size\n");
+                return -1;
+            }
+        }
+
         if (cmd.hasOption("h")) {
             HelpFormatter formatter = new HelpFormatter();
             formatter.printHelp(
                     writer,
                     80,
-                    "ping [-h] [-i <interval>] [-t <ttl>] <destination>",
+                    "ping [-f] [-h] [-c <count>] [-i <interval>] [-s <packetsize>] [-t <ttl>] <destination>",
                     "Ping uses the ICMP protocol's mandatory ECHO_REQUEST datagram to elicit an ICMP ECHO_RESPONSE from a host or gateway.",
                     options,
                     3,
@@ -136,21 +189,25 @@ public class PingCLICommand extends AbstractCommand implements ICMPEchoReplayLis
                 return 1;
             }
 
-            writeBanner(dest);
+            writeBanner(dest, size);
 
+            ICMPEchoCorrelator correlator = router.getICMPEchoCorrelator();
+            int identifier = correlator.nextIdentifier();
+            Histogram rtts = new Histogram();
+            long start = System.nanoTime();
             int icmp_seq = 0;
-            while (go) {
+            while (go && icmp_seq != count) {
                 ICMPEchoPacket icmpRequest = null;
                 try {
                     icmpRequest = new ICMPEchoPacket(
                             Protocols.ICMPEcho,
                             identifier,
                             icmp_seq,
-                            ICMPEchoPacket.DEFAULT_TTL,
+                            IP4Packet.HEADER_SIZE + ICMPEchoPacket.HEADER_SIZE + size,
                             ttl,
                             null,
                             dest,
-                            System.currentTimeMillis(),
+                            System.nanoTime(),
                             null
                     );
                 } catch (AddressException ae) {
@@ -158,32 +215,46 @@ public class PingCLICommand extends AbstractCommand implements ICMPEchoReplayLis
                     return 1;
                 }
 
-                icmpEchoReplayPacket = null;
+                replay = correlator.expect(identifier, icmp_seq, timeout, TimeUnit.SECONDS);
                 router.routePacket(icmpRequest);
+                if (flood) {
+                    writer.write('.');
+                    writer.flush();
+                }
 
-                timeoutExpired = false;
-                timerTask = new TimerTaskPing(this);
-                TIMER.schedule(timerTask, timeout * 1000);
-                waitICMPReplay();
+                ICMPEchoPacket icmpEchoReplayPacket = waitICMPReplay();
+                icmp_seq++;
 
                 if (icmpEchoReplayPacket == null) {
-                    writer.write("icmp_seq=" + icmp_seq + " Destination Host Unreachable\n");
+                    if (!flood && go) {
+                        writer.write("icmp_seq=" + icmpRequest.getSequenceNumber() + " Destination Host Unreachable\n");
+                    }
                 } else {
-                    long rtt = System.currentTimeMillis() - icmpRequest.getTimestamp();
-                    writer.write("64 bytes from " + dest + ": icmp_seq=" + icmp_seq + " ttl=" + icmpEchoReplayPacket.getTTL() + " time=" + rtt + " ms\n");
+                    long rtt = System.nanoTime() - icmpRequest.getTimestamp();
+                    rtts.record(rtt);
+                    if (flood) {
+                        writer.write('\b');
+                    } else {
+                        writer.printf("%d bytes from %s: icmp_seq=%d ttl=%d time=%.3f ms\n",
+                                ICMPEchoPacket.HEADER_SIZE + size, dest, icmpRequest.getSequenceNumber(),
+                                icmpEchoReplayPacket.getTTL(), rtt / 1e6);
+                    }
                 }
-
-                try {
-                    Thread.sleep(interval * 1000);
-                } catch (InterruptedException ie) {
-                    go = false;
-                    logger.log(Level.SEVERE, "Unexpected exception.", ie);                
-                    Thread.currentThread().interrupt();
+                writer.flush();
+
+                if (go && icmp_seq != count && interval > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.sleep((long) (interval * 1e9));
+                    } catch (InterruptedException ie) {
+                        go = false;
+                        logger.log(Level.SEVERE, "Unexpected exception.", ie);
+                        Thread.currentThread().interrupt();
+                    }
                 }
-
-                icmp_seq++;
             }
 
+            writeStatistics(dest, icmp_seq, rtts, System.nanoTime() - start);
+
         } else {
             writer.write("Error: Missing arguments\n");
         }
@@ -200,40 +271,58 @@ public class PingCLICommand extends AbstractCommand implements ICMPEchoReplayLis
     @Override
     public void stop() {
         go = false;
+        Future<ICMPEchoPacket> f = replay;
+        if (f != null) {
+            f.cancel(false);
+        }
     }
 
-    public synchronized void TimeoutExpired(boolean timeoutExpired) {
-        this.timeoutExpired = timeoutExpired;
-        notifyAll();
-    }
-
-    @Override
-    public synchronized void processICMPEchoReplay(ICMPEchoPacket packet) {
-        logger.log(Level.FINE, "Have gotten an ICMPEchoReplay, checking the identifier ({1}) ...", new Object[]{packet.getIdentifier()});
-        if (packet.getIdentifier() == this.identifier) {
-            logger.fine("The identifier belongs to us!");
-            icmpEchoReplayPacket = packet;
-            notifyAll();
-        } else {
-            logger.log(Level.FINE, "The identifier ({0}) is strange (our is {1})", new Object[]{packet.getIdentifier(), this.identifier});
+    /**
+     * @return null if the replay has not come within the timeout or
+     * the command is stopped.
+     */
+    private ICMPEchoPacket waitICMPReplay() {
+        Future<ICMPEchoPacket> f = replay;
+        if (!go) {
+            f.cancel(false);
         }
+        try {
+            return f.get();
+        } catch (ExecutionException | CancellationException e) {
+            logger.log(Level.FINE, "No ICMP echo replay: {0}", e.getMessage());
+        } catch (InterruptedException ie) {
+            go = false;
+            f.cancel(false);
+            logger.log(Level.SEVERE, "Unexpected exception.", ie);
+            Thread.currentThread().interrupt();
+        } finally {
+            replay = null;
+        }
+        return null;
     }
 
-    private synchronized void waitICMPReplay() {
-        while (icmpEchoReplayPacket == null && go && !timeoutExpired) {
-            try {
-                wait();
-            } catch (InterruptedException ie) {
-                logger.log(Level.SEVERE, "Unexpected exception.", ie);                
-                Thread.currentThread().interrupt();
-            }
+    /**
+     * Writes the summary the way iputils ping does, with the median and
+     * the 99th percentile of the round trip times.
+     */
+    private void writeStatistics(IP4Address dest, int transmitted, Histogram rtts, long time) {
+        long received = rtts.getCount();
+        writer.printf("\n--- %s ping statistics ---\n", dest);
+        writer.printf("%d packets transmitted, %d received, %d%% packet loss, time %dms\n",
+                transmitted, received, transmitted == 0 ? 0 : (transmitted - received) * 100 / transmitted,
+                TimeUnit.NANOSECONDS.toMillis(time));
+        if (received > 0) {
+            writer.printf("rtt min/avg/max/mdev = %.3f/%.3f/%.3f/%.3f ms\n",
+                    rtts.getMin() / 1e6, rtts.getMean() / 1e6, rtts.getMax() / 1e6, rtts.getStdDeviation() / 1e6);
+            writer.printf("rtt p50/p99 = %.3f/%.3f ms\n",
+                    rtts.getPercentile(50) / 1e6, rtts.getPercentile(99) / 1e6);
         }
-
-        timerTask.cancel();
+        writer.flush();
     }
 
-    private void writeBanner(IP4Address dest) {
-        writer.write("PING " + dest + "\nPress Ctrl+C то abort.\n");
+    private void writeBanner(IP4Address dest, int size) {
+        writer.write("PING " + dest + " " + size + "(" + (IP4Packet.HEADER_SIZE + ICMPEchoPacket.HEADER_SIZE + size)
+                + ") bytes of data.\nPress Ctrl+C то abort.\n");
     }
 
     @Override
@@ -0,0 +1,207 @@
+/*
+NET-Simulator -- Network simulator.
+Copyright (C) 2006 Maxim Tereshin <maxim-tereshin@yandex.ru>
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along
+with this program; if not, write to the Free Software Foundation,
+Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+*/
+
+package org.netsimulator.term;
+
+import org.apache.commons.cli.*;
+import org.netsimulator.net.Port;
+import org.netsimulator.net.SpanningTree;
+import org.netsimulator.net.Switch;
+import org.netsimulator.sim.EventScheduler;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Enables and disables the spanning tree of a switch, shows the root
+ * and the roles and states of the ports.
+ */
+public class SpanningTreeCLICommand extends AbstractCommand
+{
+    private static final Logger logger = 
+            Logger.getLogger(SpanningTreeCLICommand.class.getName());    
+
+    private static final String STATES[] =
+            { "disabled", "blocking", "listening", "learning", "forwarding" };
+
+    private PrintWriter writer;
+    private static final Options options = new Options();
+    private final Switch _switch_;
+    private final EventScheduler scheduler;
+
+    /**
+     * @param _switch_ the switch.
+     * @param scheduler to run the protocol timers of the switch.
+     */
+    public SpanningTreeCLICommand(Switch _switch_, EventScheduler scheduler)
+    {
+        this._switch_ = _switch_;
+        this.scheduler = scheduler;
+        
+        Option help = new Option("h", false, "display this help");
+        Option priority = OptionBuilder.withArgName("priority")
+                                       .hasArg()
+                                       .withDescription("bridge priority 0..65535 (32768 by default), the least makes the root")
+                                       .create("p");
+        options.addOption(help);
+        options.addOption(priority);
+    }
+
+
+    public String getName()
+    {
+        return "stp";
+    }
+
+    
+    public int go() throws IOException
+    {
+        CommandLineParser parser = new GnuParser();
+        CommandLine cmd = null;
+        try
+        {
+            cmd = parser.parse( options, argv);
+        }catch(MissingArgumentException mae)
+        {
+            writer.write("Error: Missing arguments\n");
+            return -1;
+        }catch(UnrecognizedOptionException uoe)
+        {
+            writer.write("Error: " + uoe.getMessage() + "\n");
+            return -1;
+        }catch(ParseException pe)
+        {
+            logger.log(Level.SEVERE, "Unexpected exception.", pe);
+            return -1;
+        }
+ 
+        if(cmd.hasOption("h"))
+        {
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printHelp(
+                    writer,
+                    80,
+                    "stp [-h] [-p <priority>] [on | off]",
+                    "Enables or disables the spanning tree protocol of the switch, without arguments shows the spanning tree. The ports are blocked till the tree is built.",
+                    options,
+                    3,
+                    2,
+                    null,
+                    false);
+            
+            return 0;
+        }
+
+        String args[] = cmd.getArgs();
+        if(args.length > 1 || (args.length == 1 && !args[0].equals("on") && !args[0].equals("off")))
+        {
+            writer.write("Error: Expected on or off\n");
+            return -1;
+        }
+
+        if(args.length == 1 && args[0].equals("off"))
+        {
+            _switch_.disableSpanningTree();
+            writer.write("Spanning tree disabled\n");
+            return 0;
+        }
+
+        if(cmd.hasOption("p") || args.length == 1)
+        {
+            SpanningTree tree = _switch_.getSpanningTree();
+            if(tree == null && args.length == 0)
+            {
+                writer.write("Error: The spanning tree is not enabled\n");
+                return -1;
+            }
+            if(tree == null)
+            {
+                tree = _switch_.enableSpanningTree(scheduler);
+            }
+            if(cmd.hasOption("p"))
+            {
+                try
+                {
+                    tree.setPriority(Integer.parseInt(cmd.getOptionValue("p")));
+                }catch(IllegalArgumentException iae)
+                {
+                    writer.write("Error: Bad priority "+cmd.getOptionValue("p")+"\n");
+                    return -1;
+                }
+            }
+            // the bridge identifier changes with the priority
+            _switch_.enableSpanningTree(scheduler);
+        }
+
+        printTree();
+        return 0;
+    }
+
+
+    private void printTree()
+    {
+        SpanningTree tree = _switch_.getSpanningTree();
+        if(tree == null)
+        {
+            writer.write("Spanning tree disabled\n");
+            return;
+        }
+        writer.write("Bridge "+SpanningTree.toString(tree.getBridgeId())+"\n");
+        writer.write("Root   "+SpanningTree.toString(tree.getRootId())+
+                (tree.isRoot() ? " (this bridge)" : ", cost "+tree.getRootPathCost()+", port "+tree.getRootPort())+"\n");
+        writer.write("port\trole\tstate\n");
+        for(Port port : _switch_.getPorts())
+        {
+            if(port.getMedia() != null)
+            {
+                writer.write(port.getIndex()+"\t"+tree.getRole(port.getIndex()).toString().toLowerCase()+
+                        "\t"+STATES[port.getState()]+"\n");
+            }
+        }
+    }
+
+    
+    @Override
+    public void setOutputWriter(Writer writer)
+    {
+        this.writer = new PrintWriter(writer);
+    }
+    
+
+    @Override
+    public void stop()
+    {
+    }
+    
+    @Override
+    public void run() {
+        try {
+            go();
+        } catch (IOException ex) {
+            writer.write("Error: "+ex.getMessage()+"\n");
+            logger.log(Level.SEVERE, "Unexpected exception.", ex);
+        } finally {
+            writer.flush();
+            fireExecutionCompleted(0);
+        }
+    }        
+}
@@ -197,6 +197,16 @@ public abstract class TextScreen extends JPanel {
                     next();
                 }
                 break;
+            case '\b':
+                // erases the previous character, as ping -f expects
+                if (x_cur > 1) {
+                    x_cur--;
+                } else if (y_cur > 1) {
+                    y_cur--;
+                    x_cur = width;
+                }
+                blankChar();
+                break;
             default:
                 screen[y_cur - 1][x_cur - 1] = ch;
                 next();
@@ -0,0 +1,283 @@
+/*
+NET-Simulator -- Network simulator.
+Copyright (C) 2006 Maxim Tereshin <maxim-tereshin@yandex.ru>
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along
+with this program; if not, write to the Free Software Foundation,
+Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+*/
+
+package org.netsimulator.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hierarchical timing wheel. It is a shared expiry service for entries
+ * which must be aged out (ARP cache, MAC addresses table), every entry
+ * has its own deadline. Scheduling and cancelling is O(1), nothing is
+ * ever scanned except the timeouts which are due.
+ * <p>
+ * There are {@link #LEVELS} wheels of {@link #SLOTS} slots each. A timeout
+ * is put into the wheel according to how far its deadline is, and it
+ * cascades down to the finer wheels as time goes by.
+ * <p>
+ * It is thread safe. Expired timeouts are fired by the thread which
+ * advances the wheel, outside of the wheel lock, so they may reschedule
+ * themselves.
+ */
+public class TimingWheel {
+
+    private static final Logger logger = Logger.getLogger(TimingWheel.class.getName());
+
+    public static final long DEFAULT_TICK = 100; // ms
+    static final int BITS = 6;
+    public static final int SLOTS = 1 << BITS;
+    public static final int LEVELS = 4;
+    private static final int MASK = SLOTS - 1;
+    private static final long MAX_TICKS = (1L << (BITS * LEVELS)) - 1;
+
+    private final long tickNanos;
+    private final Timeout[] buckets = new Timeout[SLOTS * LEVELS];
+    private long current;
+    private int size;
+    private volatile long origin;
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> ticker;
+
+    private static class DefaultHolder {
+        static final TimingWheel INSTANCE = new TimingWheel(DEFAULT_TICK, TimeUnit.MILLISECONDS);
+        static {
+            INSTANCE.start();
+        }
+    }
+
+    /**
+     * An entry of the wheel. Subclass it to get notified on expiry,
+     * the same instance may be scheduled again and again.
+     */
+    public static abstract class Timeout {
+        private long deadline;
+        private int bucket = -1;
+        private Timeout prev;
+        private Timeout next;
+
+        /**
+         * Invoked once the deadline has come.
+         */
+        protected abstract void expire();
+    }
+
+    /**
+     * Creates a wheel which is not ticking yet.
+     * @param tick the wheel resolution.
+     * @param unit unit of the tick.
+     */
+    public TimingWheel(long tick, TimeUnit unit) {
+        if (tick <= 0) {
+            throw new IllegalArgumentException("The tick must be positive");
+        }
+        this.tickNanos = unit.toNanos(tick);
+    }
+
+    /**
+     * @return the wheel shared by all the devices of the simulator.
+     */
+    public static TimingWheel getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Starts a thread advancing the wheel along with the wall clock.
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        origin = System.nanoTime();
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new ConfigurableThreadFactory("TimingWheel-").newThread(r);
+            t.setDaemon(true);
+            return t;
+        });
+        ticker = executor.scheduleAtFixedRate(this::catchUp, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            ticker.cancel(false);
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    private void catchUp() {
+        try {
+            advance((System.nanoTime() - origin) / tickNanos - getCurrentTick());
+        } catch (RuntimeException e) {
+            logger.log(Level.SEVERE, "Unexpected exception.", e);
+        }
+    }
+
+    /**
+     * Schedules the timeout, if it is already scheduled it's moved
+     * to the new deadline.
+     * @param timeout to schedule.
+     * @param delay since now.
+     * @param unit unit of the delay.
+     */
+    public synchronized void schedule(Timeout timeout, long delay, TimeUnit unit) {
+        if (timeout.bucket >= 0) {
+            unlink(timeout);
+            size--;
+        }
+        long ticks = (unit.toNanos(delay) + tickNanos - 1) / tickNanos;
+        timeout.deadline = current + Math.max(1, Math.min(ticks, MAX_TICKS));
+        place(timeout);
+        size++;
+    }
+
+    /**
+     * @param timeout to cancel.
+     * @return false if it was not scheduled.
+     */
+    public synchronized boolean cancel(Timeout timeout) {
+        if (timeout.bucket < 0) {
+            return false;
+        }
+        unlink(timeout);
+        size--;
+        return true;
+    }
+
+    /**
+     * @param timeout to check.
+     * @return true if the timeout is waiting for its deadline. A timeout
+     * being expired is not scheduled any more.
+     */
+    public synchronized boolean isScheduled(Timeout timeout) {
+        return timeout.bucket >= 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized long getCurrentTick() {
+        return current;
+    }
+
+    public long getTick(TimeUnit unit) {
+        return unit.convert(tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Moves the wheel forward firing the timeouts which are due.
+     * @param ticks number of ticks to advance.
+     */
+    public void advance(long ticks) {
+        for (long i = 0; i < ticks; i++) {
+            List<Timeout> expired;
+            synchronized (this) {
+                current++;
+                int top = 0;
+                while (top + 1 < LEVELS && (current & ((1L << (BITS * (top + 1))) - 1)) == 0) {
+                    top++;
+                }
+                for (int level = top; level > 0; level--) {
+                    cascade(level, (int) ((current >>> (BITS * level)) & MASK));
+                }
+                expired = drain((int) (current & MASK));
+            }
+            for (Timeout timeout : expired) {
+                try {
+                    timeout.expire();
+                } catch (RuntimeException e) {
+                    logger.log(Level.SEVERE, "Unexpected exception while expiring a timeout.", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Puts the timeout into the finest wheel its deadline fits in. It gets
+     * there into the slot the deadline digit points to, the slot is reached
+     * (and cascaded down) before the deadline.
+     */
+    private void place(Timeout timeout) {
+        long diff = timeout.deadline - current;
+        int level = 0;
+        while (level + 1 < LEVELS && diff >= (1L << (BITS * (level + 1)))) {
+            level++;
+        }
+        int bucket = level * SLOTS + (int) ((timeout.deadline >>> (BITS * level)) & MASK);
+        timeout.bucket = bucket;
+        timeout.prev = null;
+        timeout.next = buckets[bucket];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        buckets[bucket] = timeout;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.prev == null) {
+            buckets[timeout.bucket] = timeout.next;
+        } else {
+            timeout.prev.next = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+    }
+
+    private void cascade(int level, int slot) {
+        int bucket = level * SLOTS + slot;
+        Timeout timeout = buckets[bucket];
+        buckets[bucket] = null;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            place(timeout);
+            timeout = next;
+        }
+    }
+
+    private List<Timeout> drain(int slot) {
+        Timeout timeout = buckets[slot];
+        if (timeout == null) {
+            return Collections.emptyList();
+        }
+        buckets[slot] = null;
+        List<Timeout> expired = new ArrayList<>();
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = -1;
+            expired.add(timeout);
+            size--;
+            timeout = next;
+        }
+        return expired;
+    }
+}
@@ -0,0 +1,75 @@
+package org.netsimulator.gui;
+
+import org.junit.Test;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ShapeIndexTest {
+
+    private static boolean overlap(Rectangle a, Rectangle b) {
+        return a.x <= b.x + b.width && b.x <= a.x + a.width
+                && a.y <= b.y + b.height && b.y <= a.y + a.height;
+    }
+
+    @Test
+    public void queriesAgreeWithScanAfterMoves() {
+        ShapeIndex<Rectangle> index = new ShapeIndex<Rectangle>(r -> new Rectangle(r));
+        Random random = new Random(2006);
+        List<Rectangle> shapes = new ArrayList<Rectangle>();
+        for (int i = 0; i != 2000; i++) {
+            Rectangle shape = new Rectangle(random.nextInt(4000) - 500, random.nextInt(4000) - 500,
+                    random.nextInt(200), random.nextInt(200));
+            shapes.add(shape);
+            index.add(shape);
+        }
+        for (int i = 0; i != 500; i++) {
+            Rectangle shape = shapes.get(random.nextInt(shapes.size()));
+            shape.setLocation(random.nextInt(4000) - 500, random.nextInt(4000) - 500);
+            index.moved(shape);
+        }
+
+        for (int i = 0; i != 1000; i++) {
+            Rectangle area = new Rectangle(random.nextInt(4000) - 500, random.nextInt(4000) - 500,
+                    random.nextInt(3), random.nextInt(3));
+            List<Rectangle> expected = new ArrayList<Rectangle>();
+            for (Rectangle shape : shapes) {
+                if (overlap(shape, area)) {
+                    expected.add(shape);
+                }
+            }
+            List<Rectangle> found = index.query(area);
+            assertEquals(expected.size(), found.size());
+            for (int j = 0; j != found.size(); j++) {
+                assertTrue(expected.get(j) == found.get(j));
+            }
+        }
+    }
+
+    @Test
+    public void equalShapesAreKeptApartAndExtrasAreOrdered() {
+        ShapeIndex<Rectangle> index = new ShapeIndex<Rectangle>(r -> new Rectangle(r));
+        Rectangle a = new Rectangle(10, 10, 5, 5);
+        Rectangle far = new Rectangle(1000, 1000, 5, 5);
+        Rectangle b = new Rectangle(10, 10, 5, 5);
+        index.add(a);
+        index.add(far);
+        index.add(b);
+
+        List<Rectangle> found = index.query(new Rectangle(12, 12, 0, 0), Collections.singletonList(far));
+        assertEquals(3, found.size());
+        assertTrue(found.get(0) == a && found.get(1) == far && found.get(2) == b);
+
+        index.remove(b);
+        found = index.query(new Rectangle(12, 12, 0, 0));
+        assertEquals(1, found.size());
+        assertTrue(found.get(0) == a);
+        assertEquals(2, index.size());
+    }
+}
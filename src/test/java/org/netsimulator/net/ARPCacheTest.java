@@ -0,0 +1,99 @@
+package org.netsimulator.net;
+
+import org.junit.Test;
+import org.netsimulator.util.TimingWheel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ARPCacheTest {
+
+    @Test
+    public void concurrentPutsAndGetsAreNotLost() throws InterruptedException {
+        TimingWheel wheel = new TimingWheel(1, TimeUnit.MILLISECONDS);
+        ARPCache cache = new ARPCache(60, wheel);
+        int threads = 4;
+        int perThread = 2000;
+        AtomicInteger misses = new AtomicInteger();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t != threads; t++) {
+            int base = t * perThread;
+            workers.add(new Thread(() -> {
+                for (int i = base; i != base + perThread; i++) {
+                    cache.put(new IP4Address(i), new MACAddress(i));
+                    if (!new MACAddress(i).equals(cache.get(i))) {
+                        misses.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(0, misses.get());
+        assertEquals(threads * perThread, cache.getAddresses().size());
+        assertEquals(threads * perThread, wheel.size());
+        for (int i = 0; i != threads * perThread; i++) {
+            assertEquals(new MACAddress(i), cache.get(new IP4Address(i)));
+        }
+    }
+
+    @Test
+    public void expiredEntriesAreMissedAndPurged() {
+        TimingWheel wheel = new TimingWheel(1, TimeUnit.MILLISECONDS);
+        ARPCache cache = new ARPCache(0, wheel);
+        cache.put(new IP4Address(1), new MACAddress(1));
+
+        assertNull(cache.get(1));
+        assertTrue(cache.getAddresses().isEmpty());
+        wheel.advance(1);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void clearReleasesWheelSlots() {
+        TimingWheel wheel = new TimingWheel(1, TimeUnit.MILLISECONDS);
+        ARPCache cache = new ARPCache(60, wheel);
+        for (int i = 0; i != 100; i++) {
+            cache.put(new IP4Address(i), new MACAddress(i));
+        }
+        cache.clear();
+        assertEquals(0, wheel.size());
+        assertNull(cache.get(7));
+
+        cache.put(new IP4Address(7), new MACAddress(3));
+        assertEquals(new MACAddress(3), cache.get(7));
+    }
+
+    @Test
+    public void expiredAddressesAreResolvedAgain() throws InterruptedException {
+        TimingWheel wheel = new TimingWheel(1, TimeUnit.MILLISECONDS);
+        ARPCache cache = new ARPCache(1, wheel);
+        for (int i = 0; i != 100; i++) {
+            cache.put(new IP4Address(i), new MACAddress(i));
+        }
+        Thread.sleep(1100);
+        wheel.advance(1100);
+        assertEquals(0, wheel.size());
+        assertTrue(cache.getAddresses().isEmpty());
+
+        for (int i = 0; i != 100; i++) {
+            cache.put(new IP4Address(i), new MACAddress(i + 1));
+        }
+        assertEquals(100, wheel.size());
+        assertEquals(100, cache.getAddresses().size());
+        for (int i = 0; i != 100; i++) {
+            assertEquals(new MACAddress(i + 1), cache.get(i));
+        }
+    }
+}
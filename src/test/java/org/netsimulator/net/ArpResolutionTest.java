@@ -0,0 +1,74 @@
+package org.netsimulator.net;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.netsimulator.sim.EventScheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ArpResolutionTest {
+
+    private EventScheduler scheduler;
+    private IP4Router r1;
+    private IP4Router r2;
+    private EthernetInterface eth1;
+
+    @Before
+    public void setUp() throws Exception {
+        TwoRouters net = new TwoRouters();
+        scheduler = net.scheduler;
+        r1 = net.r1;
+        r2 = net.r2;
+        eth1 = net.eth1;
+    }
+
+    private static ICMPEchoPacket echo(int seq, String destination) throws AddressException {
+        return new ICMPEchoPacket(Protocols.ICMPEcho, 1, seq, 64, 64,
+                null, new IP4Address(destination), 0, null);
+    }
+
+    @Test
+    public void packetsWaitingForArpAreFlushedOnReplay() throws AddressException {
+        List<ICMPEchoPacket> replies = new ArrayList<>();
+        r1.addICMPEchoReplayListener(replies::add);
+
+        for (int i = 0; i != 3; i++) {
+            r1.routePacket(echo(i, "10.0.0.2"));
+        }
+        scheduler.run();
+
+        assertEquals(3, replies.size());
+        assertEquals(0, eth1.getStatistics().getTXDroped());
+    }
+
+    @Test
+    public void packetsAndBytesAreCounted() throws AddressException {
+        for (int i = 0; i != 3; i++) {
+            r1.routePacket(echo(i, "10.0.0.2"));
+        }
+        scheduler.run();
+
+        // ARP request and replay, both padded to the minimal frame, and
+        // three 64 byte echoes each way
+        DeviceCounters.Snapshot stats = eth1.getStatistics();
+        assertEquals(5, stats.getTXPackets());
+        assertEquals(2 * 60 + 3 * 78, stats.getTXBytes());
+        assertEquals(5, stats.getRXPackets());
+        assertEquals(2 * 60 + 3 * 78, stats.getRXBytes());
+    }
+
+    @Test
+    public void unresolvedPacketsAreDroppedAndCounted() throws AddressException {
+        int n = EthernetInterface.ARP_PENDING_QUEUE_SIZE + 10;
+        for (int i = 0; i != n; i++) {
+            r1.routePacket(echo(i, "10.0.0.99"));
+        }
+        assertEquals(10, eth1.getStatistics().getTXDroped());
+
+        scheduler.run();
+        assertEquals(n, eth1.getStatistics().getTXDroped());
+    }
+}
@@ -0,0 +1,98 @@
+package org.netsimulator.net;
+
+import org.junit.Test;
+import org.netsimulator.sim.EventScheduler;
+import org.netsimulator.util.TimingWheel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ICMPEchoCorrelatorTest {
+
+    private static ICMPEchoPacket replay(int identifier, int sequenceNumber) throws AddressException {
+        return new ICMPEchoPacket(Protocols.ICMPEchoReply, identifier, sequenceNumber, 64,
+                ICMPEchoPacket.DEFAULT_TTL, null, new IP4Address("10.0.0.1"), 0, null);
+    }
+
+    @Test
+    public void replaysCompleteTheirOwnRequests() throws Exception {
+        ICMPEchoCorrelator correlator = new ICMPEchoCorrelator(new TimingWheel(1, TimeUnit.MILLISECONDS));
+        int first = correlator.nextIdentifier();
+        int second = correlator.nextIdentifier();
+        CompletableFuture<ICMPEchoPacket> a = correlator.expect(first, 1, 0, TimeUnit.SECONDS);
+        CompletableFuture<ICMPEchoPacket> b = correlator.expect(second, 1, 0, TimeUnit.SECONDS);
+        assertEquals(2, correlator.getPendingCount());
+
+        assertFalse(correlator.complete(replay(first, 2)));
+        assertTrue(correlator.complete(replay(second, 1)));
+        assertFalse(a.isDone());
+        assertEquals(second, b.get().getIdentifier());
+        assertFalse(correlator.complete(replay(second, 1)));
+
+        a.cancel(false);
+        assertEquals(0, correlator.getPendingCount());
+    }
+
+    @Test
+    public void unansweredRequestTimesOut() throws Exception {
+        TimingWheel wheel = new TimingWheel(1, TimeUnit.MILLISECONDS);
+        ICMPEchoCorrelator correlator = new ICMPEchoCorrelator(wheel);
+        CompletableFuture<ICMPEchoPacket> lost = correlator.expect(7, 1, 10, TimeUnit.MILLISECONDS);
+        CompletableFuture<ICMPEchoPacket> answered = correlator.expect(7, 2, 10, TimeUnit.MILLISECONDS);
+        correlator.complete(replay(7, 2));
+        assertEquals(1, wheel.size());
+
+        wheel.advance(10);
+        assertEquals(0, correlator.getPendingCount());
+        assertTrue(answered.isDone() && !answered.isCompletedExceptionally());
+        try {
+            lost.get();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+            return;
+        }
+        throw new AssertionError("the request has not timed out");
+    }
+
+    @Test
+    public void concurrentPingsOfRouterDoNotCollide() throws Exception {
+        TwoRouters net = new TwoRouters();
+        EventScheduler scheduler = net.scheduler;
+        IP4Router r1 = net.r1;
+        List<ICMPEchoPacket> uncorrelated = new ArrayList<>();
+        r1.addICMPEchoReplayListener(uncorrelated::add);
+
+        // resolves the address, the replay is not awaited
+        r1.routePacket(new ICMPEchoPacket(Protocols.ICMPEcho, 0xFFFF, 0, 64,
+                ICMPEchoPacket.DEFAULT_TTL, null, new IP4Address("10.0.0.2"), 0, null));
+        scheduler.run();
+        assertEquals(1, uncorrelated.size());
+
+        ICMPEchoCorrelator correlator = r1.getICMPEchoCorrelator();
+        List<CompletableFuture<ICMPEchoPacket>> replays = new ArrayList<>();
+        for (int ping = 0; ping != 50; ping++) {
+            int identifier = correlator.nextIdentifier();
+            for (int seq = 0; seq != 4; seq++) {
+                replays.add(correlator.expect(identifier, seq, 0, TimeUnit.SECONDS));
+                r1.routePacket(new ICMPEchoPacket(Protocols.ICMPEcho, identifier, seq, 64,
+                        ICMPEchoPacket.DEFAULT_TTL, null, new IP4Address("10.0.0.2"), 0, null));
+            }
+        }
+        scheduler.run();
+
+        for (int i = 0; i != replays.size(); i++) {
+            assertTrue(replays.get(i).isDone());
+            assertEquals(i % 4, replays.get(i).get().getSequenceNumber());
+        }
+        assertEquals(0, correlator.getPendingCount());
+        assertEquals(1, uncorrelated.size());
+    }
+}
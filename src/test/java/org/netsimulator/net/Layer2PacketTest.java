@@ -0,0 +1,132 @@
+package org.netsimulator.net;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class Layer2PacketTest {
+
+    private static final MACAddress SRC = new MACAddress(0x0A0B0C0D0E0FL);
+    private static final MACAddress DST = new MACAddress(0xF0E0D0C0B0A0L);
+
+    private static Layer2Packet roundTrip(Layer2Packet packet) {
+        ByteBuffer buffer = ByteBuffer.allocate(Layer2Packet.MAX_SIZE);
+        int size = packet.encode(buffer);
+        assertEquals(packet.getSize(), size);
+        assertEquals(size, buffer.position());
+        buffer.flip();
+        Layer2Packet decoded = Layer2Packet.decode(buffer);
+        assertEquals(size, buffer.position());
+        assertEquals(SRC, decoded.getSourceAddress());
+        assertEquals(DST, decoded.getDestinationAddress());
+        assertEquals(packet.getEtherType(), decoded.getEtherType());
+        return decoded;
+    }
+
+    @Test
+    public void echoSurvivesRoundTrip() throws AddressException {
+        ICMPEchoPacket echo = new ICMPEchoPacket(Protocols.ICMPEcho, 7, 300, 84, 63,
+                new IP4Address("10.0.0.1"), new IP4Address("10.0.0.2"), 123456789L, null);
+        Layer2Packet decoded = roundTrip(new Layer2Packet(SRC, DST, Protocols.IP, echo));
+
+        assertEquals(Layer2Packet.HEADER_SIZE + 84, decoded.getSize());
+        ICMPEchoPacket copy = (ICMPEchoPacket) decoded.getData();
+        assertEquals(Protocols.ICMPEcho, copy.getType());
+        assertEquals(7, copy.getIdentifier());
+        assertEquals(300, copy.getSequenceNumber());
+        assertEquals(84, copy.getTotalLength());
+        assertEquals(63, copy.getTTL());
+        assertEquals(Protocols.ICMP, copy.getProtocol());
+        assertEquals(new IP4Address("10.0.0.1"), copy.getSourceAddress());
+        assertEquals(new IP4Address("10.0.0.2"), copy.getDestinationAddress());
+        assertEquals(123456789L, copy.getTimestamp());
+    }
+
+    @Test
+    public void datagramSurvivesRoundTrip() throws AddressException {
+        UDPPacket datagram = new UDPPacket(40000, 5001, 70000, 512, 63,
+                new IP4Address("10.0.0.1"), new IP4Address("10.0.0.2"), 987654321L, null);
+        UDPPacket copy = (UDPPacket) roundTrip(new Layer2Packet(SRC, DST, Protocols.IP, datagram)).getData();
+
+        assertEquals(40000, copy.getSourcePort());
+        assertEquals(5001, copy.getDestinationPort());
+        assertEquals(70000, copy.getSequenceNumber());
+        assertEquals(987654321L, copy.getTimestamp());
+        assertEquals(512, copy.getTotalLength());
+        assertEquals(Protocols.UDP, copy.getProtocol());
+        assertEquals(new IP4Address("10.0.0.1"), copy.getSourceAddress());
+    }
+
+    @Test
+    public void bpduSurvivesRoundTrip() throws AddressException {
+        BPDUPacket bpdu = new BPDUPacket(BPDUPacket.TOPOLOGY_CHANGE, 0x8000020000000100L, 38,
+                0x8000020000000300L, 0x8002, 256, 20 * 256, 2 * 256, 15 * 256);
+        Layer2Packet decoded = roundTrip(new Layer2Packet(SRC, DST, bpdu.getSize(), bpdu));
+        BPDUPacket copy = (BPDUPacket) decoded.getData();
+
+        assertEquals(BPDUPacket.CONFIG, copy.getType());
+        assertEquals(BPDUPacket.TOPOLOGY_CHANGE, copy.getFlags());
+        assertEquals(0x8000020000000100L, copy.getRootId());
+        assertEquals(38, copy.getRootPathCost());
+        assertEquals(0x8000020000000300L, copy.getBridgeId());
+        assertEquals(0x8002, copy.getPortId());
+        assertEquals(256, copy.getMessageAge());
+        assertEquals(20 * 256, copy.getMaxAge());
+        assertEquals(2 * 256, copy.getHelloTime());
+        assertEquals(15 * 256, copy.getForwardDelay());
+
+        BPDUPacket tcn = new BPDUPacket();
+        copy = (BPDUPacket) roundTrip(new Layer2Packet(SRC, DST, tcn.getSize(), tcn)).getData();
+        assertEquals(BPDUPacket.TOPOLOGY_CHANGE_NOTIFICATION, copy.getType());
+    }
+
+    @Test
+    public void shortPacketsArePaddedAndClamped() throws AddressException {
+        // the total length is less than the headers take
+        IP4Packet packet = new IP4Packet(4, 1, Protocols.UDP, null, new IP4Address("10.0.0.2"), null);
+        assertEquals(IP4Packet.HEADER_SIZE, packet.getSize());
+        assertEquals(IP4Packet.HEADER_SIZE, packet.toBytesArray().length);
+
+        Layer2Packet frame = new Layer2Packet(SRC, DST, Protocols.IP, packet);
+        assertEquals(Layer2Packet.HEADER_SIZE + Layer2Packet.MIN_DATA_SIZE, frame.toBytesArray().length);
+        IP4Packet copy = (IP4Packet) roundTrip(frame).getData();
+        assertEquals(Protocols.UDP, copy.getProtocol());
+        assertNull(copy.getSourceAddress());
+    }
+
+    @Test
+    public void arpRequestAndReplaySurviveRoundTrip() throws AddressException {
+        ARPPacket request = new ARPPacket(SRC, new IP4Address("10.0.0.2"), ARPPacket.REQUEST);
+        ARPPacket copy = (ARPPacket) roundTrip(new Layer2Packet(SRC, DST, Protocols.ARP, request)).getData();
+        assertEquals(ARPPacket.REQUEST, copy.getOperation());
+        assertEquals(SRC, copy.getSourceMacAddress());
+        assertEquals(new IP4Address("10.0.0.2"), copy.getAddressToResolve());
+
+        request.setOperation(ARPPacket.REPLAY);
+        request.setResolvedAddress(DST);
+        copy = (ARPPacket) roundTrip(new Layer2Packet(SRC, DST, Protocols.ARP, request)).getData();
+        assertEquals(ARPPacket.REPLAY, copy.getOperation());
+        assertEquals(SRC, copy.getSourceMacAddress());
+        assertEquals(DST, copy.getResolvedAddress());
+        assertEquals(new IP4Address("10.0.0.2"), copy.getAddressToResolve());
+    }
+
+    @Test
+    public void brokenChecksumIsRejected() throws AddressException {
+        ICMPEchoPacket echo = new ICMPEchoPacket(Protocols.ICMPEcho, 1, 1, 64, 64,
+                null, new IP4Address("10.0.0.2"), 0, null);
+        ByteBuffer buffer = ByteBuffer.wrap(new Layer2Packet(SRC, DST, Protocols.IP, echo).toBytesArray());
+        buffer.put(Layer2Packet.HEADER_SIZE + 8, (byte) 1); // TTL
+        try {
+            Layer2Packet.decode(buffer);
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("checksum"));
+            return;
+        }
+        throw new AssertionError("decoded a broken packet");
+    }
+}
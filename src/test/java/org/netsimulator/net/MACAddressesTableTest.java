@@ -0,0 +1,108 @@
+package org.netsimulator.net;
+
+import org.junit.Test;
+import org.netsimulator.util.TimingWheel;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MACAddressesTableTest {
+
+    @Test
+    public void putGetAndRemoveAgreeWithHashMap() {
+        TimingWheel wheel = new TimingWheel(1, TimeUnit.MILLISECONDS);
+        MACAddressesTable table = new MACAddressesTable(10, wheel);
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(2006);
+
+        for (int i = 0; i != 20000; i++) {
+            long mac = random.nextInt(5000) & 0xFFFFFFFFFFFFL;
+            switch (random.nextInt(3)) {
+                case 0:
+                case 1:
+                    int port = random.nextInt(48);
+                    table.put(mac, port);
+                    expected.put(mac, port);
+                    break;
+                default:
+                    assertEquals(expected.remove(mac) != null, table.remove(mac));
+            }
+        }
+
+        assertEquals(expected.size(), table.size());
+        assertEquals(expected.size(), wheel.size());
+        for (long mac = 0; mac != 5000; mac++) {
+            Integer port = expected.get(mac);
+            assertEquals(port == null ? -1 : port, table.get(mac));
+        }
+        assertEquals(expected.size(), table.getMappedAddresses().size());
+    }
+
+    @Test
+    public void expiredEntriesAreRemoved() {
+        TimingWheel wheel = new TimingWheel(1, TimeUnit.MILLISECONDS);
+        MACAddressesTable table = new MACAddressesTable(0, wheel);
+        for (int i = 0; i != 1000; i++) {
+            table.put(new MACAddress(i), i % 16);
+        }
+        assertEquals(1000, table.size());
+
+        wheel.advance(1);
+        assertEquals(0, table.size());
+        assertEquals(0, wheel.size());
+        assertTrue(table.getMappedAddresses().isEmpty());
+        assertEquals(-1, table.get(new MACAddress(1)));
+    }
+
+    @Test
+    public void clearReleasesWheelSlots() {
+        TimingWheel wheel = new TimingWheel(1, TimeUnit.MILLISECONDS);
+        MACAddressesTable table = new MACAddressesTable(10, wheel);
+        for (int i = 0; i != 100; i++) {
+            table.put(new MACAddress(i), 1);
+        }
+        table.clear();
+        assertEquals(0, table.size());
+        assertEquals(0, wheel.size());
+
+        table.put(new MACAddress(7), 3);
+        assertEquals(3, table.get(new MACAddress(7)));
+    }
+
+    @Test
+    public void clearBetweenDrainAndExpiryIsHarmless() {
+        TimingWheel wheel = new TimingWheel(1, TimeUnit.MILLISECONDS);
+        MACAddressesTable table = new MACAddressesTable(0, wheel);
+        table.put(new MACAddress(1), 1);
+        // expires first in the same tick, after the entry has been drained
+        wheel.schedule(new TimingWheel.Timeout() {
+            @Override
+            protected void expire() {
+                table.clear();
+                table.put(new MACAddress(2), 2);
+            }
+        }, 1, TimeUnit.MILLISECONDS);
+
+        wheel.advance(1);
+        assertEquals(1, table.size());
+        assertEquals(2, table.get(new MACAddress(2)));
+        assertEquals(1, wheel.size());
+
+        wheel.schedule(new TimingWheel.Timeout() {
+            @Override
+            protected void expire() {
+                table.clear();
+            }
+        }, 1, TimeUnit.MILLISECONDS);
+        wheel.advance(1);
+        assertEquals(0, table.size());
+        table.put(new MACAddress(3), 3);
+        assertEquals(3, table.get(new MACAddress(3)));
+        assertEquals(1, table.size());
+    }
+}
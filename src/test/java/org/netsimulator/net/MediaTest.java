@@ -0,0 +1,100 @@
+package org.netsimulator.net;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.netsimulator.sim.EventScheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class MediaTest {
+
+    private EventScheduler scheduler;
+    private Media media;
+    private EthernetInterface eth1;
+    private EthernetInterface eth2;
+    private final List<Long> arrivals = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        TwoRouters net = new TwoRouters();
+        scheduler = net.scheduler;
+        eth1 = net.eth1;
+        eth2 = net.eth2;
+        media = net.media;
+        eth2.addTransferPacketListener(new TransferPacketListener() {
+            @Override
+            public void packetTransfered(Packet packet) {
+            }
+
+            @Override
+            public void packetTransmitted(Packet packet) {
+            }
+
+            @Override
+            public void packetReceived(Packet packet) {
+                arrivals.add(scheduler.getTime());
+            }
+        });
+    }
+
+    /**
+     * @return a 1000 bytes frame.
+     */
+    private Layer2Packet frame() throws AddressException {
+        IP4Packet packet = new IP4Packet(1000 - Layer2Packet.HEADER_SIZE, 64, Protocols.UDP,
+                null, new IP4Address("10.0.0.2"), null);
+        return new Layer2Packet(eth1.getMACAddress(), eth2.getMACAddress(), Protocols.IP, packet);
+    }
+
+    @Test
+    public void framesAreSerializedOneAfterAnother() throws AddressException {
+        media.setBandwidth(8000000); // a 1000 bytes frame takes 1 ms
+        media.setDelay(TimeUnit.MICROSECONDS.toNanos(500));
+        for (int i = 0; i != 3; i++) {
+            eth1.transmitPacket(frame());
+        }
+        assertEquals(2, media.getQueuedPacketsCount(eth1));
+        scheduler.run();
+
+        List<Long> expected = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            expected.add(TimeUnit.MICROSECONDS.toNanos(i * 1000 + 500));
+        }
+        assertEquals(expected, arrivals);
+        assertEquals(0, media.getQueuedPacketsCount(eth1));
+    }
+
+    @Test
+    public void overflowingFramesAreDropped() throws AddressException {
+        media.setBandwidth(8000000);
+        media.setQueueSize(2);
+        for (int i = 0; i != 5; i++) {
+            eth1.transmitPacket(frame());
+        }
+        scheduler.run();
+
+        // one is on the wire, two are queued
+        assertEquals(3, arrivals.size());
+        DeviceCounters.Snapshot stats = eth1.getStatistics();
+        assertEquals(3, stats.getTXPackets());
+        assertEquals(2, stats.getTXDroped());
+    }
+
+    @Test
+    public void unlimitedBandwidthDeliversAfterDelay() throws AddressException {
+        media.setDelay(100);
+        for (int i = 0; i != 5; i++) {
+            eth1.transmitPacket(frame());
+        }
+        scheduler.run();
+
+        assertEquals(5, arrivals.size());
+        for (long arrival : arrivals) {
+            assertEquals(100, arrival);
+        }
+    }
+}
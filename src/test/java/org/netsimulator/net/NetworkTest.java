@@ -0,0 +1,126 @@
+package org.netsimulator.net;
+
+import org.junit.Test;
+import org.netsimulator.sim.EventScheduler;
+import org.netsimulator.sim.ParallelSimulator;
+import org.netsimulator.util.IdGenerator;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class NetworkTest {
+
+    private static final long DELAY = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * A chain of routers, the link k connects the router k (10.0.k.1) and
+     * the router k+1 (10.0.k.2). Every router forwards to the right by
+     * the default route and back to the left by the route to the first link.
+     */
+    private static Network chain(int routers, long delay) throws Exception {
+        IdGenerator idGenerator = new IdGenerator();
+        Network network = new Network(idGenerator, new EventScheduler());
+        IP4Router[] chain = new IP4Router[routers];
+        for (int i = 0; i != routers; i++) {
+            chain[i] = new IP4Router(idGenerator, 2);
+            network.addDevice("R" + i, chain[i]);
+        }
+        for (int k = 0; k != routers - 1; k++) {
+            EthernetInterface left = (EthernetInterface) chain[k].getInterface(1);
+            EthernetInterface right = (EthernetInterface) chain[k + 1].getInterface(0);
+            Media media = new Media(idGenerator.getNextId(), network.getScheduler());
+            media.setDelay(delay);
+            media.connectToDevice(left);
+            media.connectToDevice(right);
+            network.addMedia(media);
+            TwoRouters.configure(left, link(k, 1));
+            TwoRouters.configure(right, link(k, 2));
+
+            chain[k].getRoutingTable().addRoute(new IP4Address(0), new IP4Address(0),
+                    link(k, 2), 0, left);
+            if (k > 0) {
+                chain[k + 1].getRoutingTable().addRoute(link(0, 0), new IP4Address(0xFFFFFF00),
+                        link(k, 1), 0, right);
+            }
+        }
+        return network;
+    }
+
+    private static IP4Address link(int k, int host) {
+        return new IP4Address(0x0A000000 | (k << 8) | host);
+    }
+
+    /**
+     * Pings the end of the chain from the first router, and the right
+     * neighbour from every router.
+     * @return round trip times of the replies.
+     */
+    private static List<Long> ping(Network network, int routers) throws Exception {
+        List<Long> rtts = new CopyOnWriteArrayList<>();
+        for (int i = 0; i != routers - 1; i++) {
+            IP4Router router = (IP4Router) network.getDevice("R" + i);
+            EventScheduler scheduler = network.getScheduler(router);
+            router.addICMPEchoReplayListener(packet ->
+                    rtts.add(scheduler.getTime() - packet.getTimestamp()));
+            send(router, scheduler, link(i, 2));
+            if (i == 0) {
+                send(router, scheduler, link(routers - 2, 2));
+            }
+        }
+        network.getSimulator().run();
+        return rtts;
+    }
+
+    private static void send(IP4Router router, EventScheduler scheduler, IP4Address destination) {
+        scheduler.schedule(0, () -> {
+            try {
+                router.routePacket(new ICMPEchoPacket(Protocols.ICMPEcho, 1, 1, 64,
+                        ICMPEchoPacket.DEFAULT_TTL, null, destination, scheduler.getTime(), null));
+            } catch (AddressException ae) {
+                throw new IllegalStateException(ae);
+            }
+        });
+    }
+
+    @Test
+    public void partitionedNetworkBehavesAsSequential() throws Exception {
+        int routers = 32;
+        Network sequential = chain(routers, DELAY);
+        Network parallel = chain(routers, DELAY);
+        ParallelSimulator simulator = parallel.partition(4);
+
+        assertEquals(4, simulator.getRegions().size());
+        assertEquals(DELAY, simulator.getLookahead());
+        Set<EventScheduler> used = new HashSet<>();
+        for (NetworkDeviceHolder device : parallel.getDevices().values()) {
+            used.add(parallel.getScheduler(device));
+        }
+        assertEquals(4, used.size());
+
+        List<Long> expected = ping(sequential, routers);
+        List<Long> actual = ping(parallel, routers);
+        assertEquals(routers, expected.size());
+        Collections.sort(expected);
+        Collections.sort(actual);
+        assertEquals(expected, actual);
+        assertEquals(sequential.getSimulator().getTime(), simulator.getTime());
+    }
+
+    @Test
+    public void linksWithoutDelayAreNotCut() throws Exception {
+        Network network = chain(8, 0);
+        ParallelSimulator simulator = network.partition(4);
+
+        assertEquals(1, simulator.getRegions().size());
+        assertEquals(Long.MAX_VALUE, simulator.getLookahead());
+        assertSame(network.getScheduler(), network.getScheduler(network.getDevice("R7")));
+        assertEquals(8, ping(network, 8).size());
+    }
+}
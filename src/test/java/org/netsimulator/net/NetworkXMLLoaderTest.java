@@ -0,0 +1,37 @@
+package org.netsimulator.net;
+
+import org.junit.Test;
+import org.netsimulator.sim.EventScheduler;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NetworkXMLLoaderTest {
+
+    @Test
+    public void loadedNetworkRoutesPackets() throws Exception {
+        EventScheduler scheduler = new EventScheduler();
+        Network network = new NetworkXMLLoader(scheduler).load(new File("xml/Example_switch.xml"));
+        try {
+            assertTrue(network.getDevice("R0") instanceof IP4Router);
+            assertTrue(network.getMedias().size() > 0);
+
+            IP4Router r0 = (IP4Router) network.getDevice("R0");
+            assertEquals(8, Network.getNetworkDevices(r0).size());
+
+            List<ICMPEchoPacket> replies = new ArrayList<>();
+            r0.addICMPEchoReplayListener(replies::add);
+            r0.routePacket(new ICMPEchoPacket(Protocols.ICMPEcho, 1, 0, 64, 64,
+                    null, new IP4Address("10.2.0.1"), 0, null));
+            scheduler.run();
+
+            assertEquals(1, replies.size());
+        } finally {
+            network.dispose();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.netsimulator.net;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.netsimulator.sim.EventScheduler;
+import org.netsimulator.util.TimingWheel;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class PcapWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static int etherType(ByteBuffer in, int frame) {
+        return (in.get(frame + 12) & 0xFF) << 8 | in.get(frame + 13) & 0xFF;
+    }
+
+    @Test
+    public void pingIsWrittenAsEthernetFrames() throws Exception {
+        TwoRouters net = new TwoRouters();
+        EventScheduler scheduler = net.scheduler;
+        IP4Router r1 = net.r1;
+        EthernetInterface eth1 = net.eth1;
+
+        File file = folder.newFile("eth1.pcap");
+        PcapWriter pcap = new PcapWriter(file, scheduler, false);
+        eth1.addTransferPacketListener(pcap);
+        r1.routePacket(new ICMPEchoPacket(Protocols.ICMPEcho, 1, 1, 64, 64,
+                null, new IP4Address("10.0.0.2"), 0, null));
+        scheduler.run();
+        pcap.close();
+
+        // ARP requests and replays of both sides, echo request and replay
+        assertEquals(6, pcap.getPacketsCount());
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        assertEquals(PcapWriter.MAGIC, in.getInt());
+        in.position(20);
+        assertEquals(PcapWriter.LINKTYPE_ETHERNET, in.getInt());
+
+        int arp = 0;
+        int ip = 0;
+        for (int i = 0; i != 6; i++) {
+            in.position(in.position() + 8);
+            int length = in.getInt();
+            assertEquals(length, in.getInt());
+            int frame = in.position();
+            if (etherType(in, frame) == 0x0800) {
+                assertEquals(78, length);
+                // a valid header sums up to zero
+                assertEquals(0, IP4Packet.checksum(in, frame + 14, frame + 34));
+                ip++;
+            } else {
+                assertEquals(0x0806, etherType(in, frame));
+                assertEquals(60, length);
+                arp++;
+            }
+            in.position(frame + length);
+        }
+        assertEquals(4, arp);
+        assertEquals(2, ip);
+        assertEquals(0, in.remaining());
+    }
+
+    @Test
+    public void runningCaptureIsFlushedPeriodically() throws Exception {
+        TimingWheel wheel = new TimingWheel(1, TimeUnit.MILLISECONDS);
+        File file = folder.newFile("running.pcap");
+        PcapWriter pcap = new PcapWriter(file, new EventScheduler(), true, wheel);
+        pcap.packetTransfered(new Layer2Packet(new MACAddress(1), MACAddress.BROADCAST, Protocols.ARP,
+                new ARPPacket(new MACAddress(1), new IP4Address("10.0.0.2"), ARPPacket.REQUEST)));
+        assertEquals(0, file.length());
+
+        wheel.advance(PcapWriter.FLUSH_INTERVAL);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (file.length() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(PcapWriter.FILE_HEADER_SIZE + PcapWriter.RECORD_HEADER_SIZE + 60, file.length());
+        assertEquals(1, wheel.size());
+        pcap.close();
+        assertEquals(0, wheel.size());
+    }
+}
@@ -29,6 +29,10 @@ package org.netsimulator.net;
 import junit.framework.TestCase;
 import org.netsimulator.util.IdGenerator;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 /**
  *
  * @author maks
@@ -219,5 +223,99 @@ public class RoutingTableTest extends TestCase
 
     }
 
+
+    /**
+     * The trie must give the same answer as the scan of the rows
+     * in the order of their priority.
+     */
+    public void testRouteMatchesLinearScan() throws NotAllowedAddressException
+    {
+        RoutingTable table = new RoutingTable();
+        EthernetInterface eth0 = 
+                new EthernetInterface( new IdGenerator(1), new MACAddress(1), "eth0" );
+        Random random = new Random(20061231);
+
+        for( int i = 0; i != 2000; i++ )
+        {
+            int length = random.nextInt(33);
+            int netmask = length == 0 ? 0 : -1 << (32 - length);
+            table.addRoute( new RoutingTableRow(
+                    new IP4Address(random.nextInt() & netmask),
+                    new IP4Address(netmask),
+                    null,
+                    random.nextInt(4),
+                    eth0 ) );
+        }
+
+        /* Non contiguous netmask */
+        table.addRoute( new RoutingTableRow(
+                new IP4Address(0x0A000001),
+                new IP4Address(0xFF0000FF),
+                null,
+                1,
+                eth0 ) );
+
+        for( int i = 0; i != 20000; i++ )
+        {
+            IP4Address dst = new IP4Address( i % 2 == 0 ? random.nextInt() : 0x0A000001 | (random.nextInt() & 0x00FFFF00) );
+            RoutingTableRow expected = null;
+            for( RoutingTableRow row : table.getRows() )
+            {
+                if( row.match( dst ) )
+                {
+                    expected = row;
+                    break;
+                }
+            }
+            assertSame( expected, table.route( dst ) );
+        }
+    }
+
+
+    public void testBatchIsAppliedOnCommit() throws AddressException, NotAllowedAddressException
+    {
+        RoutingTable bulk = new RoutingTable();
+        RoutingTable single = new RoutingTable();
+        EthernetInterface eth0 = 
+                new EthernetInterface( new IdGenerator(1), new MACAddress(1), "eth0" );
+        List<RoutingTableRow> rows = new ArrayList<RoutingTableRow>();
+        for( int i = 0; i != 1000; i++ )
+        {
+            RoutingTableRow row = new RoutingTableRow(
+                    new IP4Address(0x0A000000 | (i << 8)),
+                    new IP4Address(0xFFFFFF00),
+                    null,
+                    i % 3,
+                    eth0 );
+            rows.add( row );
+            single.addRoute( row );
+        }
+        rows.add( rows.get(0) );
+
+        assertEquals( 1000, bulk.addRoutes( rows ) );
+        assertEquals( single.getRows(), bulk.getRows() );
+        assertEquals( 0, bulk.addRoutes( rows ) );
+
+        RoutingTable.Batch batch = bulk.edit()
+                .add( new IP4Address("192.168.0.0"), new IP4Address("255.255.0.0"), null, 1, eth0 )
+                .delete( new IP4Address("10.0.1.0"), new IP4Address("255.255.255.0"), null, eth0 )
+                .delete( rows.get(2) )
+                .delete( new IP4Address("192.168.0.0"), new IP4Address("255.255.0.0"), null, 2, eth0 );
+        assertEquals( 1000, bulk.getRows().size() );
+        assertEquals( 3, batch.commit() );
+        assertEquals( 999, bulk.getRows().size() );
+        assertEquals( new IP4Address("192.168.0.0"), bulk.route( new IP4Address("192.168.1.1") ).getTarget() );
+        assertNull( bulk.route( new IP4Address("10.0.1.1") ) );
+
+        assertEquals( 998, bulk.deleteRoutes( rows ) );
+        assertEquals( 1, bulk.getRows().size() );
+        try
+        {
+            batch.commit();
+            fail( "the batch was committed twice" );
+        }catch( IllegalStateException ise )
+        {
+        }
+    }
     
 }
@@ -0,0 +1,116 @@
+package org.netsimulator.net;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.netsimulator.sim.EventScheduler;
+import org.netsimulator.util.IdGenerator;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SpanningTreeTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private IdGenerator idGenerator;
+    private EventScheduler scheduler;
+    private Switch[] switches;
+
+    /**
+     * A triangle of switches, port 0 and 1 link the neighbours, port 2
+     * is left for a host.
+     */
+    @Before
+    public void setUp() throws Exception {
+        idGenerator = new IdGenerator();
+        scheduler = new EventScheduler();
+        switches = new Switch[3];
+        for (int i = 0; i != switches.length; i++) {
+            switches[i] = new Switch(idGenerator, 3);
+        }
+        for (int i = 0; i != switches.length; i++) {
+            link(switches[i].getPort(0), switches[(i + 1) % switches.length].getPort(1));
+        }
+    }
+
+    private void link(Port a, Port b) throws TooManyConnectionsException {
+        Media media = new Media(idGenerator.getNextId(), scheduler);
+        media.connectToDevice(a);
+        media.connectToDevice(b);
+    }
+
+    private void enable() {
+        for (Switch sw : switches) {
+            sw.enableSpanningTree(scheduler).setTimers(SECOND / 10, 5 * SECOND, SECOND / 2);
+        }
+        scheduler.runUntil(5 * SECOND);
+    }
+
+    private int countPorts(int state) {
+        int count = 0;
+        for (Switch sw : switches) {
+            for (int p = 0; p != 2; p++) {
+                if (sw.getPort(p).getState() == state) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void lowestBridgeIsRootAndLoopIsBroken() {
+        enable();
+
+        long root = switches[0].getSpanningTree().getBridgeId();
+        for (Switch sw : switches) {
+            assertEquals(root, sw.getSpanningTree().getRootId());
+        }
+        assertTrue(switches[0].getSpanningTree().isRoot());
+        assertFalse(switches[1].getSpanningTree().isRoot());
+        assertEquals(1, countPorts(Port.BLOCKING));
+        assertEquals(5, countPorts(Port.FORWARDING));
+        assertEquals(Port.FORWARDING, switches[1].getPort(2).getState());
+    }
+
+    @Test
+    public void broadcastIsNotLooped() throws Exception {
+        enable();
+
+        AtomicInteger received = new AtomicInteger();
+        Hub host = new Hub(idGenerator, 1);
+        link(host.getPort(0), switches[2].getPort(2));
+        host.getPort(0).addTransferPacketListener(new TransferPacketListener() {
+            public void packetTransfered(Packet packet) {
+            }
+
+            public void packetTransmitted(Packet packet) {
+            }
+
+            public void packetReceived(Packet packet) {
+                if (!(((Layer2Packet) packet).getData() instanceof BPDUPacket)) {
+                    received.incrementAndGet();
+                }
+            }
+        });
+        switches[1].transportPacket(switches[1].getPort(2),
+                new Layer2Packet(new MACAddress(0x020000000001L), MACAddress.BROADCAST, 0, null));
+        scheduler.runUntil(scheduler.getTime() + SECOND);
+
+        assertEquals(1, received.get());
+    }
+
+    @Test
+    public void disabledTreeForwardsEverywhere() {
+        enable();
+        for (Switch sw : switches) {
+            sw.disableSpanningTree();
+        }
+
+        assertEquals(6, countPorts(Port.FORWARDING));
+    }
+}
@@ -0,0 +1,63 @@
+package org.netsimulator.net;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.netsimulator.sim.EventScheduler;
+import org.netsimulator.util.IdGenerator;
+
+import static org.junit.Assert.assertEquals;
+
+public class SwitchTest {
+
+    private static final MACAddress A = new MACAddress(0x020000000001L);
+    private static final MACAddress B = new MACAddress(0x020000000002L);
+
+    private IdGenerator idGenerator;
+    private Switch sw;
+
+    @Before
+    public void setUp() throws Exception {
+        idGenerator = new IdGenerator();
+        // the way the loaders build it
+        sw = new Switch(idGenerator, 0, idGenerator.getNextId());
+        for (int i = 0; i != 4; i++) {
+            Port port = new Port(idGenerator, idGenerator.getNextId());
+            sw.addPort(port);
+            Media media = new Media(idGenerator.getNextId(), new EventScheduler());
+            media.connectToDevice(port);
+        }
+    }
+
+    private long transmitted(int port) {
+        return sw.getPort(port).getStatistics().getTXPackets();
+    }
+
+    @Test
+    public void learnedAddressIsSwitchedToItsPort() throws AddressException {
+        for (int i = 0; i != 4; i++) {
+            assertEquals(i, sw.getPort(i).getIndex());
+        }
+
+        sw.transportPacket(sw.getPort(2), new Layer2Packet(B, A, 0, null));
+        assertEquals(2, sw.getMACAddressesTable().get(B));
+        assertEquals(1, transmitted(0));
+        assertEquals(0, transmitted(2));
+
+        sw.transportPacket(sw.getPort(0), new Layer2Packet(A, B, 0, null));
+        assertEquals(0, sw.getMACAddressesTable().get(A));
+        assertEquals(1, transmitted(2));
+        assertEquals(1, transmitted(1));
+        assertEquals(1, transmitted(3));
+    }
+
+    @Test
+    public void frameFromForeignPortIsDropped() throws AddressException {
+        Switch other = new Switch(idGenerator, 4);
+        sw.transportPacket(other.getPort(1), new Layer2Packet(A, MACAddress.BROADCAST, 0, null));
+
+        assertEquals(-1, sw.getMACAddressesTable().get(A));
+        for (int i = 0; i != 4; i++) {
+            assertEquals(0, transmitted(i));
+        }
+    }
+}
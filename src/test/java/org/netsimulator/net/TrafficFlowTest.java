@@ -0,0 +1,106 @@
+package org.netsimulator.net;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.netsimulator.sim.EventScheduler;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TrafficFlowTest {
+
+    private static final long DELAY = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private EventScheduler scheduler;
+    private Media media;
+    private IP4Router sender;
+    private IP4Router receiver;
+
+    @Before
+    public void setUp() throws Exception {
+        TwoRouters net = new TwoRouters();
+        scheduler = net.scheduler;
+        sender = net.r1;
+        receiver = net.r2;
+        media = net.media;
+        media.setDelay(DELAY);
+    }
+
+    private TrafficFlow flow() throws AddressException {
+        TrafficFlow flow = new TrafficFlow(sender, new IP4Address("10.0.0.2"), scheduler);
+        flow.setRate(10000);
+        flow.setCount(1000);
+        flow.setPacketSize(200);
+        return flow;
+    }
+
+    @Test
+    public void constantUDPFlowIsReceivedEvenlySpaced() throws AddressException {
+        TrafficFlow flow = flow();
+        TrafficSink sink = new TrafficSink(flow, receiver, scheduler);
+        sink.open();
+        flow.start();
+        scheduler.run();
+
+        assertEquals(1000, flow.getSent());
+        assertEquals(1000, sink.getReceived());
+        assertEquals(0, sink.getLost());
+        assertEquals(200 * 1000, sink.getBytes());
+        assertEquals(DELAY, sink.getMinLatency());
+        // the first datagram waits for the ARP replay
+        assertEquals(3 * DELAY, sink.getMaxLatency());
+        // 1000 packets are sent in 99.9 ms
+        assertEquals(1000 * 200 * 8e9 / (TimeUnit.MICROSECONDS.toNanos(99900) + DELAY),
+                sink.getThroughput(), 1);
+    }
+
+    @Test
+    public void icmpFlowIsMeasuredByReplies() throws AddressException {
+        TrafficFlow flow = flow();
+        flow.setProtocol(TrafficFlow.Protocol.ICMP);
+        flow.setPattern(TrafficFlow.Pattern.POISSON);
+        flow.setSeed(2006);
+        TrafficSink sink = new TrafficSink(flow);
+        sink.open();
+        flow.start();
+        scheduler.run();
+
+        assertEquals(1000, sink.getReceived());
+        assertEquals(2 * DELAY, sink.getMinLatency());
+        assertEquals(0.0, sink.getLoss(), 0);
+    }
+
+    @Test
+    public void burstsOverflowSlowLink() throws AddressException {
+        media.setBandwidth(8000000); // 200 bytes take 200 us, 5000 pps at most
+        media.setQueueSize(10);
+        TrafficFlow flow = flow();
+        flow.setPattern(TrafficFlow.Pattern.BURST);
+        flow.setBurstSize(50);
+        flow.setDuration(TimeUnit.MILLISECONDS.toNanos(50));
+        TrafficSink sink = new TrafficSink(flow, receiver, scheduler);
+        sink.open();
+        flow.start();
+        scheduler.run();
+
+        assertEquals(500, flow.getSent());
+        assertTrue(sink.getLost() > 0);
+        assertEquals(flow.getSent(), sink.getReceived() + sink.getLost());
+        assertEquals(sink.getLost(), ((EthernetInterface) sender.getInterface(0)).getStatistics().getTXDroped());
+    }
+
+    @Test
+    public void datagramsToClosedPortAreDropped() throws AddressException {
+        TrafficFlow flow = flow();
+        flow.setCount(10);
+        TrafficSink sink = new TrafficSink(flow, receiver, scheduler);
+        flow.start();
+        scheduler.run();
+
+        assertEquals(10, flow.getSent());
+        assertEquals(0, sink.getReceived());
+        assertEquals(1.0, sink.getLoss(), 0);
+    }
+}
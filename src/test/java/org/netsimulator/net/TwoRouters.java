@@ -0,0 +1,44 @@
+package org.netsimulator.net;
+
+import org.netsimulator.sim.EventScheduler;
+import org.netsimulator.util.IdGenerator;
+
+/**
+ * Test fixture: two routers with one interface each, 10.0.0.1/24 and
+ * 10.0.0.2/24, on one media driven by a fresh scheduler.
+ */
+final class TwoRouters {
+
+    final EventScheduler scheduler = new EventScheduler();
+    final IP4Router r1;
+    final IP4Router r2;
+    final EthernetInterface eth1;
+    final EthernetInterface eth2;
+    final Media media;
+
+    TwoRouters() throws Exception {
+        IdGenerator idGenerator = new IdGenerator();
+        r1 = new IP4Router(idGenerator, 1);
+        r2 = new IP4Router(idGenerator, 1);
+        eth1 = (EthernetInterface) r1.getInterface(0);
+        eth2 = (EthernetInterface) r2.getInterface(0);
+        media = new Media(idGenerator.getNextId(), scheduler);
+        media.connectToDevice(eth1);
+        media.connectToDevice(eth2);
+        configure(eth1, "10.0.0.1");
+        configure(eth2, "10.0.0.2");
+    }
+
+    /**
+     * Brings the interface up with the address in a /24 network.
+     */
+    static void configure(EthernetInterface eth, String address) throws Exception {
+        configure(eth, new IP4Address(address));
+    }
+
+    static void configure(EthernetInterface eth, IP4Address address) throws Exception {
+        eth.setInetAddress(address);
+        eth.setNetmaskAddress(new IP4Address(0xFFFFFF00));
+        eth.setStatus(Interface.UP);
+    }
+}
@@ -0,0 +1,75 @@
+package org.netsimulator.sim;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class EventSchedulerTest {
+
+    @Test
+    public void eventsAreFiredInTimeOrder() {
+        EventScheduler scheduler = new EventScheduler();
+        List<Integer> fired = new ArrayList<>();
+        scheduler.schedule(30, () -> fired.add(3));
+        scheduler.schedule(10, () -> fired.add(1));
+        scheduler.schedule(20, () -> fired.add(2));
+
+        assertEquals(3, scheduler.run());
+        assertEquals(3, fired.size());
+        assertEquals(1, (int) fired.get(0));
+        assertEquals(2, (int) fired.get(1));
+        assertEquals(3, (int) fired.get(2));
+        assertEquals(30, scheduler.getTime());
+    }
+
+    @Test
+    public void simultaneousEventsKeepSchedulingOrder() {
+        EventScheduler scheduler = new EventScheduler();
+        List<Integer> fired = new ArrayList<>();
+        for (int i = 0; i != 100; i++) {
+            final int n = i;
+            scheduler.schedule(5, () -> fired.add(n));
+        }
+        scheduler.run();
+        for (int i = 0; i != 100; i++) {
+            assertEquals(i, (int) fired.get(i));
+        }
+    }
+
+    @Test
+    public void chainedEventsDoNotGrowStack() {
+        EventScheduler scheduler = new EventScheduler();
+        int[] hops = new int[1];
+        Runnable hop = new Runnable() {
+            @Override
+            public void run() {
+                if (++hops[0] < 100000) {
+                    scheduler.schedule(1, this);
+                }
+            }
+        };
+        scheduler.schedule(1, hop);
+        scheduler.run();
+        assertEquals(100000, hops[0]);
+        assertEquals(100000, scheduler.getTime());
+    }
+
+    @Test
+    public void runUntilStopsAtTime() {
+        EventScheduler scheduler = new EventScheduler();
+        List<Integer> fired = new ArrayList<>();
+        scheduler.schedule(10, () -> fired.add(1));
+        scheduler.schedule(50, () -> fired.add(2));
+
+        assertEquals(1, scheduler.runUntil(20));
+        assertEquals(20, scheduler.getTime());
+        assertEquals(50, scheduler.getNextEventTime());
+        assertEquals(1, scheduler.runUntil(100));
+        assertFalse(scheduler.runNext());
+        assertEquals(Long.MAX_VALUE, scheduler.getNextEventTime());
+    }
+}
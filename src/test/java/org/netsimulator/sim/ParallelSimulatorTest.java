@@ -0,0 +1,102 @@
+package org.netsimulator.sim;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class ParallelSimulatorTest {
+
+    private static final long LOOKAHEAD = 10;
+
+    /**
+     * Bounces a message between the regions, every region also has
+     * its own events in between. Each event checks it is fired on time
+     * and counts itself.
+     */
+    private static final class Bouncer {
+        final List<EventScheduler> regions;
+        final AtomicInteger late = new AtomicInteger();
+        final AtomicInteger fired = new AtomicInteger();
+
+        Bouncer(List<EventScheduler> regions) {
+            this.regions = regions;
+        }
+
+        void bounce(int from, int hops) {
+            EventScheduler src = regions.get(from);
+            int to = (from + 1) % regions.size();
+            long time = src.getTime() + LOOKAHEAD + from;
+            regions.get(to).scheduleAt(time, () -> {
+                check(to, time);
+                if (hops > 1) {
+                    bounce(to, hops - 1);
+                }
+            });
+        }
+
+        void tick(int region, long time, int ticks) {
+            regions.get(region).scheduleAt(time, () -> {
+                check(region, time);
+                if (ticks > 1) {
+                    tick(region, time + 3, ticks - 1);
+                }
+            });
+        }
+
+        private void check(int region, long time) {
+            if (regions.get(region).getTime() != time) {
+                late.incrementAndGet();
+            }
+            fired.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void regionsRunInVirtualTimeOrder() {
+        List<EventScheduler> regions = Arrays.asList(
+                new EventScheduler(), new EventScheduler(), new EventScheduler(), new EventScheduler());
+        Bouncer bouncer = new Bouncer(regions);
+        for (int i = 0; i != regions.size(); i++) {
+            bouncer.tick(i, i, 1000);
+            bouncer.bounce(i, 500);
+        }
+
+        ParallelSimulator simulator = new ParallelSimulator(regions, LOOKAHEAD);
+        long fired = simulator.run();
+
+        assertEquals(0, bouncer.late.get());
+        assertEquals(4 * 1000 + 4 * 500, bouncer.fired.get());
+        assertEquals(bouncer.fired.get(), fired);
+        for (EventScheduler region : regions) {
+            assertEquals(simulator.getTime(), region.getTime());
+            assertEquals(0, region.getPendingEventsCount());
+        }
+    }
+
+    @Test
+    public void runUntilStopsAtTheTime() {
+        List<EventScheduler> regions = Arrays.asList(new EventScheduler(), new EventScheduler());
+        List<Long> times = new ArrayList<>();
+        regions.get(0).scheduleAt(5, () -> regions.get(1).scheduleAt(5 + LOOKAHEAD, () -> times.add(5 + LOOKAHEAD)));
+        regions.get(1).scheduleAt(100, () -> times.add(100L));
+
+        ParallelSimulator simulator = new ParallelSimulator(regions, LOOKAHEAD);
+        assertEquals(2, simulator.runUntil(50));
+        assertEquals(Arrays.asList(5 + LOOKAHEAD), times);
+        assertEquals(50, regions.get(0).getTime());
+        assertEquals(50, regions.get(1).getTime());
+
+        assertEquals(1, simulator.run());
+        assertEquals(100, simulator.getTime());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void lookaheadMustBePositive() {
+        new ParallelSimulator(Arrays.asList(new EventScheduler(), new EventScheduler()), 0);
+    }
+}
@@ -0,0 +1,61 @@
+package org.netsimulator.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+
+    @Test
+    public void bucketsCoverEveryValue() {
+        for (long value : new long[]{0, 1, 31, 32, 33, 63, 64, 1000, 123456789, Long.MAX_VALUE}) {
+            int index = Histogram.index(value);
+            assertTrue(value <= Histogram.highestValue(index));
+            assertTrue(index == 0 || value > Histogram.highestValue(index - 1));
+        }
+        assertEquals(Long.MAX_VALUE, Histogram.highestValue(Histogram.index(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void percentilesAreWithinBucketPrecision() {
+        Histogram histogram = new Histogram();
+        Random random = new Random(2006);
+        long values[] = new long[100000];
+        for (int i = 0; i != values.length; i++) {
+            values[i] = (long) (1e6 * Math.exp(random.nextGaussian()));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        assertEquals(values.length, histogram.getCount());
+        assertEquals(values[0], histogram.getMin());
+        assertEquals(values[values.length - 1], histogram.getMax());
+        assertEquals(values[values.length - 1], histogram.getPercentile(100));
+        for (double p : new double[]{1, 50, 90, 99, 99.9}) {
+            long expected = values[(int) Math.ceil(p / 100 * values.length) - 1];
+            long actual = histogram.getPercentile(p);
+            assertTrue(p + ": " + expected + " vs " + actual,
+                    actual >= expected && actual <= expected + expected / Histogram.SUB_BUCKETS);
+        }
+    }
+
+    @Test
+    public void meanAndDeviationAreExact() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getPercentile(50));
+        for (long value : new long[]{2, 4, 4, 4, 5, 5, 7, 9}) {
+            histogram.record(value);
+        }
+        assertEquals(5.0, histogram.getMean(), 1e-9);
+        assertEquals(2.0, histogram.getStdDeviation(), 1e-9);
+        assertEquals(4, histogram.getPercentile(50));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMin());
+    }
+}
@@ -0,0 +1,78 @@
+package org.netsimulator.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimingWheelTest {
+
+    private static class Recorder extends TimingWheel.Timeout {
+        private final TimingWheel wheel;
+        long expiredAt = -1;
+        int expired;
+
+        Recorder(TimingWheel wheel) {
+            this.wheel = wheel;
+        }
+
+        @Override
+        protected void expire() {
+            expiredAt = wheel.getCurrentTick();
+            expired++;
+        }
+    }
+
+    @Test
+    public void timeoutsExpireExactlyAtTheirDeadline() {
+        TimingWheel wheel = new TimingWheel(1, TimeUnit.MILLISECONDS);
+        Random random = new Random(2006);
+        Recorder[] recorders = new Recorder[5000];
+        long[] deadlines = new long[recorders.length];
+
+        wheel.advance(4000); // start not at a wheel boundary
+        for (int i = 0; i != recorders.length; i++) {
+            recorders[i] = new Recorder(wheel);
+            long delay = 1 + random.nextInt(i % 2 == 0 ? 100 : 300000);
+            deadlines[i] = wheel.getCurrentTick() + delay;
+            wheel.schedule(recorders[i], delay, TimeUnit.MILLISECONDS);
+        }
+        assertEquals(recorders.length, wheel.size());
+
+        wheel.advance(300001);
+        for (int i = 0; i != recorders.length; i++) {
+            assertEquals(1, recorders[i].expired);
+            assertEquals(deadlines[i], recorders[i].expiredAt);
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void cancelledTimeoutDoesNotExpire() {
+        TimingWheel wheel = new TimingWheel(1, TimeUnit.MILLISECONDS);
+        Recorder recorder = new Recorder(wheel);
+        wheel.schedule(recorder, 10, TimeUnit.MILLISECONDS);
+
+        assertTrue(wheel.cancel(recorder));
+        assertFalse(wheel.cancel(recorder));
+        wheel.advance(100);
+        assertEquals(0, recorder.expired);
+    }
+
+    @Test
+    public void rescheduledTimeoutMovesToNewDeadline() {
+        TimingWheel wheel = new TimingWheel(1, TimeUnit.MILLISECONDS);
+        Recorder recorder = new Recorder(wheel);
+        wheel.schedule(recorder, 10, TimeUnit.MILLISECONDS);
+        wheel.schedule(recorder, 5000, TimeUnit.MILLISECONDS);
+
+        assertEquals(1, wheel.size());
+        wheel.advance(6000);
+        assertEquals(1, recorder.expired);
+        assertEquals(5000, recorder.expiredAt);
+    }
+}